@@ -104,6 +104,8 @@ android {
 }
 
 dependencies {
+    implementation(project(":verifier"))
+
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("androidx.biometric:biometric:1.1.0")
     implementation("androidx.preference:preference:1.2.0")
@@ -537,8 +537,13 @@ public class AttestationActivity extends AppCompatActivity {
                     .setMessage(getString(R.string.action_clear_auditor) + "?")
                     .setPositiveButton(R.string.clear, (dialogInterface, i) -> {
                         executor.submit(() -> {
-                            AttestationProtocol.clearAuditor(this);
-                            runOnUiThread(() -> snackbar.setText(R.string.clear_auditor_pairings_success).show());
+                            try {
+                                AttestationProtocol.clearAuditor(this);
+                                runOnUiThread(() -> snackbar.setText(R.string.clear_auditor_pairings_success).show());
+                            } catch (final IOException e) {
+                                Log.e(TAG, "clearAuditor", e);
+                                runOnUiThread(() -> snackbar.setText(R.string.clear_auditor_pairings_failure).show());
+                            }
                         });
                     })
                     .setNegativeButton(R.string.cancel, null)
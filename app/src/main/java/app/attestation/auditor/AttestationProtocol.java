@@ -22,23 +22,17 @@ import android.view.accessibility.AccessibilityManager;
 import androidx.biometric.BiometricManager;
 import androidx.preference.PreferenceManager;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Bytes;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
@@ -46,47 +40,63 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.ProviderException;
-import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.Signature;
-import java.security.SignatureException;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.security.spec.ECGenParameterSpec;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
 import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.Inflater;
 
 import javax.security.auth.x500.X500Principal;
 
 import app.attestation.auditor.attestation.Attestation;
-import app.attestation.auditor.attestation.AttestationApplicationId;
-import app.attestation.auditor.attestation.AttestationPackageInfo;
-import app.attestation.auditor.attestation.AuthorizationList;
-import app.attestation.auditor.attestation.RootOfTrust;
+import app.attestation.auditor.verifier.AttestationSerializer;
+import app.attestation.auditor.verifier.AttestationVerifier;
+import app.attestation.auditor.verifier.CertificateCache;
+import app.attestation.auditor.verifier.ChainCodec;
+import app.attestation.auditor.verifier.CryptoBackend;
+import app.attestation.auditor.verifier.CryptoBackendSelector;
+import app.attestation.auditor.verifier.FilePairingStore;
+import app.attestation.auditor.verifier.TrustAnchors;
+import app.attestation.auditor.verifier.Verification;
+import app.attestation.auditor.verifier.VerificationHistory;
+import app.attestation.auditor.verifier.Verified;
 
 import static android.security.keystore.KeyProperties.DIGEST_SHA256;
 
 import static androidx.biometric.BiometricManager.Authenticators.BIOMETRIC_WEAK;
 import static androidx.biometric.BiometricManager.BIOMETRIC_SUCCESS;
 
+import static app.attestation.auditor.verifier.AttestationVerifier.AUDITOR_APP_VARIANT_PLAY;
+import static app.attestation.auditor.verifier.AttestationVerifier.AUDITOR_APP_VARIANT_RELEASE;
+import static app.attestation.auditor.verifier.AttestationVerifier.CHALLENGE_LENGTH;
+import static app.attestation.auditor.verifier.AttestationVerifier.DEVELOPER_PREVIEW_OS_VERSION;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ACCESSIBILITY;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ADB_ENABLED;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_DENY_NEW_USB;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_DEVICE_ADMIN;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_NONE;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_SYSTEM_USER;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_USER_PROFILE_SECURE;
+import static app.attestation.auditor.verifier.AttestationVerifier.PREFER_STRONGBOX;
+import static app.attestation.auditor.verifier.AttestationVerifier.PROTOCOL_VERSION;
+import static app.attestation.auditor.verifier.AttestationVerifier.PROTOCOL_VERSION_MINIMUM;
+import static app.attestation.auditor.verifier.AttestationVerifier.SIGNATURE_ALGORITHM;
+import static app.attestation.auditor.verifier.AttestationVerifier.getFingerprint;
+
 class AttestationProtocol {
     private static final String TAG = "AttestationProtocol";
 
-    // Developer previews set osVersion to 0 as a placeholder value.
-    private static final int DEVELOPER_PREVIEW_OS_VERSION = 0;
-
     // Settings.Global.ADD_USERS_WHEN_LOCKED is a private API
     private static final String ADD_USERS_WHEN_LOCKED = "add_users_when_locked";
 
@@ -99,180 +109,50 @@ class AttestationProtocol {
 
     // Global preferences
     private static final String KEY_CHALLENGE_INDEX = "challenge_index";
-
-    // Per-Auditee preferences
-    private static final String PREFERENCES_DEVICE_PREFIX = "device-";
-    private static final String KEY_PINNED_CERTIFICATE = "pinned_certificate_";
-    private static final String KEY_PINNED_CERTIFICATE_LENGTH = "pinned_certificate_length";
-    private static final String KEY_PINNED_VERIFIED_BOOT_KEY = "pinned_verified_boot_key";
-    private static final String KEY_PINNED_OS_VERSION = "pinned_os_version";
-    private static final String KEY_PINNED_OS_PATCH_LEVEL = "pinned_os_patch_level";
-    private static final String KEY_PINNED_VENDOR_PATCH_LEVEL = "pinned_vendor_patch_level";
-    private static final String KEY_PINNED_BOOT_PATCH_LEVEL = "pinned_boot_patch_level";
-    private static final String KEY_PINNED_APP_VERSION = "pinned_app_version";
-    private static final String KEY_PINNED_APP_VARIANT = "pinned_app_variant";
-    private static final String KEY_PINNED_SECURITY_LEVEL = "pinned_security_level";
-    private static final String KEY_VERIFIED_TIME_FIRST = "verified_time_first";
-    private static final String KEY_VERIFIED_TIME_LAST = "verified_time_last";
-
-    private static final int CHALLENGE_LENGTH = 32;
+    // Selected crypto backend and the OS build and app version it was measured on
+    private static final String KEY_CRYPTO_BACKEND = "crypto_backend";
+    private static final String KEY_CRYPTO_BACKEND_BUILD = "crypto_backend_build";
+    // Set once no legacy per-Auditee SharedPreferences files are left to migrate
+    private static final String KEY_PAIRINGS_MIGRATED = "pairings_migrated";
+
+    // Pinning data for all paired Auditees and their deduplicated certificates, in the app files
+    // directory
+    private static final String PAIRINGS_FILE = "pairings.bin";
+    private static final String PINNED_CERTIFICATES_FILE = "pinned_certificates.bin";
+    // Segments of the verification history of paired Auditees, in the app files directory
+    private static final String HISTORY_DIRECTORY = "history";
+
+    static final byte CHALLENGE_MESSAGE_LENGTH = AttestationVerifier.CHALLENGE_MESSAGE_LENGTH;
     static final String EC_CURVE = "secp256r1";
-    private static final String SIGNATURE_ALGORITHM = "SHA256WithECDSA";
     static final String KEY_DIGEST = DIGEST_SHA256;
-    private static final HashFunction FINGERPRINT_HASH_FUNCTION = Hashing.sha256();
-    private static final int FINGERPRINT_LENGTH = FINGERPRINT_HASH_FUNCTION.bits() / 8;
 
-    private static final boolean PREFER_STRONGBOX = true;
     private static final boolean USE_ATTEST_KEY = true;
-    private static final boolean ALLOW_ATTEST_KEY_DOWNGRADE = true;
-
-    // Challenge message:
-    //
-    // byte maxVersion = PROTOCOL_VERSION
-    // byte[] challenge index (length: CHALLENGE_LENGTH)
-    // byte[] challenge (length: CHALLENGE_LENGTH)
-    //
-    // The challenge index is randomly generated by Auditor and used for all future challenge
-    // messages from that Auditor. It's used on the Auditee as an index to choose the correct
-    // persistent key to satisfy the Auditor, rather than only supporting pairing with one. In
-    // theory, the Auditor could authenticate to the Auditee, but this app already provides a
-    // better way to do that by doing the same process in reverse for a supported device.
-    //
-    // The challenge is randomly generated by the Auditor and serves the security function of
-    // enforcing that the results are fresh. It's returned inside the attestation certificate
-    // which has a signature from the device's provisioned key (not usable by the OS) and the
-    // outer signature from the hardware-backed key generated for the initial pairing.
-    //
-    // Attestation message:
-    //
-    // For backwards compatibility the Auditor device sends its maximum supported version, and
-    // the Auditee uses the highest version it supports.
-    //
-    // Compression is done with raw DEFLATE (no zlib wrapper) with a preset dictionary generated from
-    // sample certificates.
-    //
-    // signed message {
-    // byte version = min(maxVersion, PROTOCOL_VERSION)
-    // short compressedChainLength
-    // byte[] compressedChain { [short encodedCertificateLength, byte[] encodedCertificate] }
-    // byte[] fingerprint (length: FINGERPRINT_LENGTH)
-    // int osEnforcedFlags
-    // }
-    // byte[] signature (rest of message)
-    //
-    // Protocol version changes:
-    //
-    // n/a
-    //
-    // For each audit, the Auditee generates a fresh hardware-backed key with key attestation
-    // using the provided challenge. It reports back the certificate chain to be verified by the
-    // Auditor. The public key certificate of the generated key is signed by a key provisioned on
-    // the device (not usable by the OS) chaining up to an intermediate and the Google root. The
-    // certificate contains the key attestation metadata including the important fields with the
-    // lock state, verified boot state, the verified boot public key fingerprint and the OS
-    // version / patch level:
-    //
-    // https://developer.android.com/training/articles/security-key-attestation.html#certificate_schema
-    //
-    // The Auditee keeps the first hardware-backed key generated for a challenge index and uses it
-    // to sign all future attestations. The fingerprint of the persistent key is included in the
-    // attestation message for the Auditor to find the corresponding pinning data. Other keys are
-    // never actually used, only generated for fresh key attestation data.
-    //
-    // The OS can use the persistent generated hardware-backed key for signing but cannot obtain
-    // the private key. The key isn't be usable if verified boot fails or the OS is downgraded and
-    // the keys are protected against replay attacks via the Replay Protected Memory Block.
-    // Devices launching with Android P or later can provide a StrongBox Keymaster to support
-    // storing the keys in a dedicated hardware security module to substantially reduce the attack
-    // surface for obtaining the keys. StrongBox is paired with the TEE and the TEE corroborates
-    // the validity of the keys and attestation. The Pixel 3 and 3 XL are the first devices with a
-    // StrongBox implementation via the Titan M security chip.
-    //
-    // https://android-developers.googleblog.com/2018/10/building-titan-better-security-through.html
-    //
-    // The attestation message also includes osEnforcedFlags with data obtained at the OS level,
-    // which is vulnerable to tampering by an attacker with control over the OS. However, the OS
-    // did get verified by verified boot so without a verified boot bypass they would need to keep
-    // exploiting it after booting. The bootloader / TEE verified OS version / OS patch level are
-    // a useful mitigation as they reveal that the OS isn't upgraded even if an attacker has root.
-    //
-    // The Auditor saves the initial certificate chain, using the initial certificate to verify
-    // the outer signature and the rest of the chain for pinning the expected chain. It enforces
-    // downgrade protection for the OS version/patch (bootloader/TEE enforced) and app version (OS
-    // enforced) by keeping them updated.
-    private static final byte PROTOCOL_VERSION = 4;
-    private static final byte PROTOCOL_VERSION_MINIMUM = 4;
-    // can become longer in the future, but this is the minimum length
-    static final byte CHALLENGE_MESSAGE_LENGTH = 1 + CHALLENGE_LENGTH * 2;
-    private static final int MAX_ENCODED_CHAIN_LENGTH = 5000;
-    private static final int MAX_MESSAGE_SIZE = 2953;
-
-    private static final int OS_ENFORCED_FLAGS_NONE = 0;
-    private static final int OS_ENFORCED_FLAGS_USER_PROFILE_SECURE = 1;
-    private static final int OS_ENFORCED_FLAGS_ACCESSIBILITY = 1 << 1;
-    private static final int OS_ENFORCED_FLAGS_DEVICE_ADMIN = 1 << 2;
-    private static final int OS_ENFORCED_FLAGS_ADB_ENABLED = 1 << 3;
-    private static final int OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED = 1 << 4;
-    private static final int OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS = 1 << 5;
-    private static final int OS_ENFORCED_FLAGS_DENY_NEW_USB = 1 << 6;
-    private static final int OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM = 1 << 7;
-    private static final int OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED = 1 << 8;
-    private static final int OS_ENFORCED_FLAGS_SYSTEM_USER = 1 << 9;
-    private static final int OS_ENFORCED_FLAGS_ALL =
-            OS_ENFORCED_FLAGS_USER_PROFILE_SECURE |
-            OS_ENFORCED_FLAGS_ACCESSIBILITY |
-            OS_ENFORCED_FLAGS_DEVICE_ADMIN |
-            OS_ENFORCED_FLAGS_ADB_ENABLED |
-            OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED |
-            OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS |
-            OS_ENFORCED_FLAGS_DENY_NEW_USB |
-            OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM |
-            OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED |
-            OS_ENFORCED_FLAGS_SYSTEM_USER;
-
-    private static final String AUDITOR_APP_PACKAGE_NAME_RELEASE = "app.attestation.auditor";
-    private static final String AUDITOR_APP_PACKAGE_NAME_PLAY = "app.attestation.auditor.play";
-    private static final String AUDITOR_APP_PACKAGE_NAME_DEBUG = "app.attestation.auditor.debug";
-    private static final String AUDITOR_APP_SIGNATURE_DIGEST_RELEASE =
-            "990E04F0864B19F14F84E0E432F7A393F297AB105A22C1E1B10B442A4A62C42C";
-    private static final String AUDITOR_APP_SIGNATURE_DIGEST_PLAY =
-            "075335BD7B54C965222B5284D2A1FDEF1198AE45EC7B09A4934287A0E3A243C7";
-    private static final String AUDITOR_APP_SIGNATURE_DIGEST_DEBUG =
-            "17727D8B61D55A864936B1A7B4A2554A15151F32EBCF44CDAA6E6C3258231890";
-    private static final byte AUDITOR_APP_VARIANT_RELEASE = 0;
-    private static final byte AUDITOR_APP_VARIANT_PLAY = 1;
-    private static final byte AUDITOR_APP_VARIANT_DEBUG = 2;
-    private static final int AUDITOR_APP_MINIMUM_VERSION = 47;
-    private static final int OS_VERSION_MINIMUM = 80000;
-    private static final int OS_PATCH_LEVEL_MINIMUM = 201801;
-    private static final int VENDOR_PATCH_LEVEL_MINIMUM = 201808;
-    private static final int BOOT_PATCH_LEVEL_MINIMUM = 201809;
 
     // Split displayed fingerprint into groups of 4 characters
     private static final int FINGERPRINT_SPLIT_INTERVAL = 4;
 
-    private static class DeviceInfo {
-        final int name;
-        final int attestationVersion;
-        final int keymasterVersion;
-        final boolean rollbackResistant;
-        final boolean perUserEncryption;
-        // enforce using StrongBox for new pairings
-        final boolean enforceStrongBox;
-        final int osName;
-
-        DeviceInfo(final int name, final int attestationVersion, final int keymasterVersion,
-                final boolean rollbackResistant, final boolean perUserEncryption,
-                final boolean enforceStrongBox, final int osName) {
-            this.name = name;
-            this.attestationVersion = attestationVersion;
-            this.keymasterVersion = keymasterVersion;
-            this.rollbackResistant = rollbackResistant;
-            this.perUserEncryption = perUserEncryption;
-            this.enforceStrongBox = enforceStrongBox;
-            this.osName = osName;
-        }
-    }
+    // Key attestation roots, parsed on first use and shared for the lifetime of the process
+    private static List<X509Certificate> googleRoots;
+    private static TrustAnchors trustAnchors;
+    // Fastest conforming crypto backend on this device, measured on the roots once for each OS
+    // build and app version
+    private static CryptoBackend cryptoBackend;
+    private static final List<CryptoBackend> CRYPTO_BACKENDS =
+            ImmutableList.of(CryptoBackend.JCA, CryptoBackend.BOUNCY_CASTLE);
+    private static final int CRYPTO_BACKEND_SELECTION_ROUNDS = 5;
+    // Certificate chain codec with the deflate dictionary, also created on first use
+    private static ChainCodec chainCodec;
+    private static AttestationSerializer attestationSerializer;
+    // Pinning data of paired Auditees, opened and migrated on first use
+    private static FilePairingStore pairingStore;
+    private static VerificationHistory verificationHistory;
+    // Intermediate and root certificates interned across verifications
+    private static final CertificateCache certificateCache = new CertificateCache();
+    // Shared by all verifications, so that its per-Auditee locks serialize updates of the pinning
+    // data and a policy bundle update applies to every later verification
+    private static AttestationVerifier verifier;
+    // Sanity check of the Auditee, which must not depend on opening the pinning data or history
+    private static AttestationVerifier statelessVerifier;
 
     private static final boolean isStrongBoxSupported = ImmutableSet.of(
             "Pixel 3",
@@ -299,270 +179,6 @@ class AttestationProtocol {
             "Pixel 6 Pro",
             "Pixel 6a").contains(Build.MODEL);
 
-    private static final ImmutableSet<Integer> extraPatchLevelMissing = ImmutableSet.of(
-            R.string.device_sm_a705fn,
-            R.string.device_sm_g970f,
-            R.string.device_sm_g975f,
-            R.string.device_sm_n970f,
-            R.string.device_sm_n970u,
-            R.string.device_sm_n975u,
-            R.string.device_sm_t510);
-
-    private static final ImmutableMap<String, String> fingerprintsMigration = ImmutableMap
-            .<String, String>builder()
-            // GrapheneOS Pixel 3
-            .put("0F9A9CC8ADE73064A54A35C5509E77994E3AA37B6FB889DD53AF82C3C570C5CF", // v2
-                    "213AA4392BF7CABB9676C2680E134FB5FD3E5937D7E607B4EB907CB0A9D9E400") // v1
-            // GrapheneOS Pixel 3 XL
-            .put("06DD526EE9B1CB92AA19D9835B68B4FF1A48A3AD31D813F27C9A7D6C271E9451", // v2
-                    "60D551860CC7FD32A9DC65FB3BCEB87A5E5C1F88928026F454A234D69B385580") // v1
-            // Stock OS Pixel 3 and Pixel 3 XL
-            .put("61FDA12B32ED84214A9CF13D1AFFB7AA80BD8A268A861ED4BB7A15170F1AB00C", // v2
-                    "B799391AFAE3B35522D1EDC5C70A3746B097BDD1CABD59F72BB049705C7A03EF") // v1
-            .build();
-
-    private static final ImmutableMap<String, DeviceInfo> fingerprintsCustomOS = ImmutableMap
-            .<String, DeviceInfo>builder()
-            // GrapheneOS
-            .put("B094E48B27C6E15661223CEFF539CF35E481DEB4E3250331E973AC2C15CAD6CD",
-                    new DeviceInfo(R.string.device_pixel_2, 2, 3, true, true, false, R.string.os_graphene))
-            .put("B6851E9B9C0EBB7185420BD0E79D20A84CB15AB0B018505EFFAA4A72B9D9DAC7",
-                    new DeviceInfo(R.string.device_pixel_2_xl, 2, 3, true, true, false, R.string.os_graphene))
-            .put("213AA4392BF7CABB9676C2680E134FB5FD3E5937D7E607B4EB907CB0A9D9E400", // v1
-                    new DeviceInfo(R.string.device_pixel_3, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("0F9A9CC8ADE73064A54A35C5509E77994E3AA37B6FB889DD53AF82C3C570C5CF", // v2
-                    new DeviceInfo(R.string.device_pixel_3, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("60D551860CC7FD32A9DC65FB3BCEB87A5E5C1F88928026F454A234D69B385580", // v1
-                    new DeviceInfo(R.string.device_pixel_3_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("06DD526EE9B1CB92AA19D9835B68B4FF1A48A3AD31D813F27C9A7D6C271E9451", // v2
-                    new DeviceInfo(R.string.device_pixel_3_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("8FF8B9B4F831114963669E04EA4F849F33F3744686A0B33B833682746645ABC8",
-                    new DeviceInfo(R.string.device_pixel_3a, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("91943FAA75DCB6392AE87DA18CA57D072BFFB80BC30F8FAFC7FFE13D76C5736E",
-                    new DeviceInfo(R.string.device_pixel_3a_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("80EF268700EE42686F779A47B4A155FE1FFC2EEDF836B4803CAAB8FA61439746",
-                    new DeviceInfo(R.string.device_pixel_4, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("3F15FDCB82847FED97427CE00563B8F9FF34627070DE5FDB17ACA7849AB98CC8",
-                    new DeviceInfo(R.string.device_pixel_4_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("9F2454A1657B1B5AD7F2336B39A2611F7A40B2E0DDFD0D6553A359605928DF29",
-                    new DeviceInfo(R.string.device_pixel_4a, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("DCEC2D053D3EC4F1C9BE414AA07E4D7D7CBD12040AD2F8831C994A83A0536866",
-                    new DeviceInfo(R.string.device_pixel_4a_5g, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("36A99EAB7907E4FB12A70E3C41C456BCBE46C13413FBFE2436ADEE2B2B61120F",
-                    new DeviceInfo(R.string.device_pixel_5, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("0ABDDEDA03B6CE10548C95E0BEA196FAA539866F929BCDF7ECA84B4203952514",
-                    new DeviceInfo(R.string.device_pixel_5a, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("F0A890375D1405E62EBFD87E8D3F475F948EF031BBF9DDD516D5F600A23677E8",
-                    new DeviceInfo(R.string.device_pixel_6, 100, 100, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("439B76524D94C40652CE1BF0D8243773C634D2F99BA3160D8D02AA5E29FF925C",
-                    new DeviceInfo(R.string.device_pixel_6_pro, 100, 100, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("08C860350A9600692D10C8512F7B8E80707757468E8FBFEEA2A870C0A83D6031",
-                    new DeviceInfo(R.string.device_pixel_6a, 100, 100, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("3EFE5392BE3AC38AFB894D13DE639E521675E62571A8A9B3EF9FC8C44FD17FA1",
-                    new DeviceInfo(R.string.device_pixel_7, 200, 200, false /* uses new API */, true, false, R.string.os_graphene))
-            .put("BC1C0DD95664604382BB888412026422742EB333071EA0B2D19036217D49182F",
-                    new DeviceInfo(R.string.device_pixel_7_pro, 200, 200, false /* uses new API */, true, false, R.string.os_graphene))
-            .build();
-    private static final ImmutableMap<String, DeviceInfo> fingerprintsStock = ImmutableMap
-            .<String, DeviceInfo>builder()
-            .put("5341E6B2646979A70E57653007A1F310169421EC9BDD9F1A5648F75ADE005AF1",
-                    new DeviceInfo(R.string.device_huawei, 2, 3, false, true, false, R.string.os_stock))
-            .put("7E2E8CC82A77CA74554457E5DF3A3ED82E7032B3182D17FE17919BC6E989FF09",
-                    new DeviceInfo(R.string.device_huawei_honor_7a_pro, 2, 3, false, true, false, R.string.os_stock))
-            .put("DFC2920C81E136FDD2A510478FDA137B262DC51D449EDD7D0BDB554745725CFE",
-                    new DeviceInfo(R.string.device_nokia, 2, 3, true, true, false, R.string.os_stock))
-            .put("4D790FA0A5FE81D6B352B90AFE430684D9BC817518CD24C50E6343395F7C51F2",
-                    new DeviceInfo(R.string.device_nokia_3_1, 2, 3, false, false, false, R.string.os_stock))
-            .put("893A17FD918235DB2865F7F6439EB0134A45B766AA452E0675BAC6CFB5A773AA",
-                    new DeviceInfo(R.string.device_nokia_7_1, 2, 3, true, true, false, R.string.os_stock))
-            .put("6101853DFF451FAE5B137DF914D5E6C15C659337F2C405AC50B513A159071958",
-                    new DeviceInfo(R.string.device_oneplus_6_a6003, 2, 3, true, true, false, R.string.os_stock))
-            .put("1B90B7D1449D697FB2732A7D2DFA405D587254593F5137F7B6E64F7A0CE03BFD",
-                    new DeviceInfo(R.string.device_oneplus_6t_a6013, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("4B9201B11685BE6710E2B2BA8482F444E237E0C8A3D1F7F447FE29C37CECC559",
-                    new DeviceInfo(R.string.device_oneplus_7_pro_gm1913, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("1962B0538579FFCE9AC9F507C46AFE3B92055BAC7146462283C85C500BE78D82",
-                    new DeviceInfo(R.string.device_pixel_2, 2, 3, true, true, false, R.string.os_stock))
-            .put("171616EAEF26009FC46DC6D89F3D24217E926C81A67CE65D2E3A9DC27040C7AB",
-                    new DeviceInfo(R.string.device_pixel_2_xl, 2, 3, true, true, false, R.string.os_stock))
-            .put("B799391AFAE3B35522D1EDC5C70A3746B097BDD1CABD59F72BB049705C7A03EF", // v1
-                    new DeviceInfo(R.string.device_pixel_3_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("61FDA12B32ED84214A9CF13D1AFFB7AA80BD8A268A861ED4BB7A15170F1AB00C", // v2
-                    new DeviceInfo(R.string.device_pixel_3_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("E75B86C52C7496255A95FB1E2B1C044BFA9D5FE34DD1E4EEBD752EEF0EA89875",
-                    new DeviceInfo(R.string.device_pixel_3a_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("AE6316B4753C61F5855B95B9B98484AF784F2E83648D0FCC8107FCA752CAEA34",
-                    new DeviceInfo(R.string.device_pixel_4_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("879CD3F18EA76E244D4D4AC3BCB9C337C13B4667190B19035AFE2536550050F1",
-                    new DeviceInfo(R.string.device_pixel_4a, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("88265D85BA9E1E2F6036A259D880D2741031ACA445840137395B6D541C0FC7FC",
-                    new DeviceInfo(R.string.device_pixel_5_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("1DD694CE00BF131AD61CEB576B7DCC41CF7F9B2C418F4C12B2B8F3E9A1EA911D",
-                    new DeviceInfo(R.string.device_pixel_5a, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("0F6E75C80183B5DEC074B0054D4271E99389EBE4B136B0819DE1F150BA0FF9D7",
-                    new DeviceInfo(R.string.device_pixel_6, 100, 100, false /* uses new API */, true, true, R.string.os_stock))
-            .put("42ED1BCA352FABD428F34E8FCEE62776F4CB2C66E06F82E5A59FF4495267BFC2",
-                    new DeviceInfo(R.string.device_pixel_6_pro, 100, 100, false /* uses new API */, true, true, R.string.os_stock))
-            .put("9AC4174153D45E4545B0F49E22FE63273999B6AC1CB6949C3A9F03EC8807EEE9",
-                    new DeviceInfo(R.string.device_pixel_6a, 100, 100, false /* uses new API */, true, true, R.string.os_stock))
-            .put("8B2C4CD539F5075E8E7CF212ADB3DB0413FBD77D321199C73D5A473C51F2E10D",
-                    new DeviceInfo(R.string.device_pixel_7, 200, 200, false /* uses new API */, true, false, R.string.os_stock))
-            .put("26AC4C60BEB1E378357CAD0C3061347AF8DF6FBABBB0D8CEA2445855EE01E368",
-                    new DeviceInfo(R.string.device_pixel_7_pro, 200, 200, false /* uses new API */, true, false, R.string.os_stock))
-            .put("72376CAACF11726D4922585732429FB97D0D1DD69F0D2E0770B9E61D14ADDE65",
-                    new DeviceInfo(R.string.device_sm_a705fn, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("33D9484FD512E610BCF00C502827F3D55A415088F276C6506657215E622FA770",
-                    new DeviceInfo(R.string.device_sm_g960f, 1, 2, false, false, false, R.string.os_stock))
-            .put("266869F7CF2FB56008EFC4BE8946C8F84190577F9CA688F59C72DD585E696488",
-                    new DeviceInfo(R.string.device_sm_g960_na, 1, 2, false, false, false, R.string.os_stock))
-            .put("12E8460A7BAF709F3B6CF41C7E5A37C6EB4D11CB36CF7F61F7793C8DCDC3C2E4",
-                    new DeviceInfo(R.string.device_sm_g9600, 1, 2, false, false, false, R.string.os_stock))
-            .put("D1C53B7A931909EC37F1939B14621C6E4FD19BF9079D195F86B3CEA47CD1F92D",
-                    new DeviceInfo(R.string.device_sm_g965f, 1, 2, false, false, false, R.string.os_stock))
-            .put("A4A544C2CFBAEAA88C12360C2E4B44C29722FC8DBB81392A6C1FAEDB7BF63010",
-                    new DeviceInfo(R.string.device_sm_g965_msm, 1, 2, false, false, false, R.string.os_stock))
-            .put("9D77474FA4FEA6F0B28636222FBCEE2BB1E6FF9856C736C85B8EA6E3467F2BBA",
-                    new DeviceInfo(R.string.device_sm_g970f, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("08B2B5C6EC8F54C00C505756E1EF516BB4537B2F02D640410D287A43FCF92E3F",
-                    new DeviceInfo(R.string.device_sm_g975f, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("F0FC0AF47D3FE4F27D79CF629AD6AC42AA1EEDE0A29C0AE109A91BBD1E7CD76D",
-                    new DeviceInfo(R.string.device_sm_j260a, 1, 2, false, false, false, R.string.os_stock))
-            .put("410102030405060708090001020304050607080900010203040506070809005A",
-                    new DeviceInfo(R.string.device_sm_j260f, 1, 2, false, false, false, R.string.os_stock))
-            .put("D6B902D9E77DFC0FB3627FFEFA6D05405932EBB3A6ED077874B5E2A0CCBDB632",
-                    new DeviceInfo(R.string.device_sm_j260t1, 1, 2, false, false, false, R.string.os_stock))
-            .put("4558C1AFB30D1B46CB93F85462BC7D7FCF70B0103B9DBB0FE96DD828F43F29FC",
-                    new DeviceInfo(R.string.device_sm_j337a, 1, 2, false, false, false, R.string.os_stock))
-            .put("45E3AB5D61A03915AE10BF0465B186CB5D9A2FB6A46BEFAA76E4483BBA5A358D",
-                    new DeviceInfo(R.string.device_sm_j337t, 1, 2, false, false, false, R.string.os_stock))
-            .put("D95279A8F2E832FD68D919DBF33CFE159D5A1179686DB0BD2D7BBBF2382C4DD3",
-                    new DeviceInfo(R.string.device_sm_j720f, 1, 2, false, false, false, R.string.os_stock))
-            .put("BB053A5F64D3E3F17C4611340FF2BBE2F605B832A9FA412B2C87F2A163ECE2FB",
-                    new DeviceInfo(R.string.device_sm_j737t1, 1, 2, false, false, false, R.string.os_stock))
-            .put("4E0570011025D01386D057B2B382969F804DCD19E001344535CF0CFDB8AD7CFE",
-                    new DeviceInfo(R.string.device_sm_m205f, 1, 2, false, false, false, R.string.os_stock))
-            .put("2A7E4954C9F703F3AC805AC660EA1727B981DB39B1E0F41E4013FA2586D3DF7F",
-                    new DeviceInfo(R.string.device_sm_n960f, 1, 2, false, false, false, R.string.os_stock))
-            .put("173ACFA8AE9EDE7BBD998F45A49231F3A4BDDF0779345732E309446B46B5641B",
-                    new DeviceInfo(R.string.device_sm_n960u, 1, 2, false, false, false, R.string.os_stock))
-            .put("E94BC43B97F98CD10C22CD9D8469DBE621116ECFA624FE291A1D53CF3CD685D1",
-                    new DeviceInfo(R.string.device_sm_n970f, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("466011C44BBF883DB38CF96617ED35C796CE2552C5357F9230258329E943DB70",
-                    new DeviceInfo(R.string.device_sm_n970u, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("52946676088007755EB586B3E3F3E8D3821BE5DF73513E6C13640507976420E6",
-                    new DeviceInfo(R.string.device_sm_n975u, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("F3688C02D9676DEDB6909CADE364C271901FD66EA4F691AEB8B8921195E469C5",
-                    new DeviceInfo(R.string.device_sm_s367vl, 1, 2, false, false, false, R.string.os_stock))
-            .put("106592D051E54388C6E601DFD61D59EB1674A8B93216C65C5B3E1830B73D3B82",
-                    new DeviceInfo(R.string.device_sm_t510, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("87790149AED63553B768456AAB6DAAD5678CD87BDEB2BF3649467085349C34E0",
-                    new DeviceInfo(R.string.device_sm_t835, 1, 2, false, false, false, R.string.os_stock))
-            .put("4285AD64745CC79B4499817F264DC16BF2AF5163AF6C328964F39E61EC84693E",
-                    new DeviceInfo(R.string.device_sony_xperia_xa2, 2, 3, true, true, false, R.string.os_stock))
-            .put("54A9F21E9CFAD3A2D028517EF333A658302417DB7FB75E0A109A019646CC5F39",
-                    new DeviceInfo(R.string.device_sony_xperia_xz1, 2, 3, true, true, false, R.string.os_stock))
-            .put("BC3B5E121974113939B8A2FE758F9B923F1D195F038D2FD1C04929F886E83BB5",
-                    new DeviceInfo(R.string.device_sony_xperia_xz2, 2, 3, false, true, false, R.string.os_stock))
-            .put("94B8B4E3260B4BF8211A02CF2F3DE257A127CFFB2E4047D5580A752A5E253DE0",
-                    new DeviceInfo(R.string.device_sony_xperia_xz2_compact, 2, 3, true, true, false, R.string.os_stock))
-            .put("728800FEBB119ADD74519618AFEDB715E1C39FE08A4DE37D249BF54ACF1CE00F",
-                    new DeviceInfo(R.string.device_blackberry_key2, 2, 3, true, true, false, R.string.os_stock))
-            .put("1194659B40EA291245E54A3C4EC4AA5B7077BD244D65C7DD8C0A2DBB9DB1FB35",
-                    new DeviceInfo(R.string.device_bq_aquaris_x2_pro, 2, 3, true, false, false, R.string.os_stock))
-            .put("A9C6758D509600D0EB94FA8D2BF6EE7A6A6097F0CCEF94A755DDE065AA1AA1B0",
-                    new DeviceInfo(R.string.device_xiaomi_mi_a2, 2, 3, true, false, false, R.string.os_stock))
-            .put("6FA710B639848C9D47378937A1AFB1B6A52DDA738BEB6657E2AE70A15B40541A",
-                    new DeviceInfo(R.string.device_xiaomi_mi_a2_lite, 2, 3, true, false, false, R.string.os_stock))
-            .put("84BC8445A29B5444A2D1629C9774C8626DAFF3574D865EC5067A78FAEC96B013",
-                    new DeviceInfo(R.string.device_xiaomi_mi_9, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("1CC39488D2F85DEE0A8E0903CDC4124CFDF2BE2531ED6060B678057ED2CB89B4",
-                    new DeviceInfo(R.string.device_htc, 2, 3, true, false, false, R.string.os_stock))
-            .put("80BAB060807CFFA45D4747DF1AD706FEE3AE3F645F80CF14871DDBE27E14C30B",
-                    new DeviceInfo(R.string.device_moto_g7, 3, 4, false /* uses new API */, true, false, R.string.os_stock))
-            .put("C2224571C9CD5C89200A7311B1E37AA9CF751E2E19753E8D3702BCA00BE1D42C",
-                    new DeviceInfo(R.string.device_motorola_one_vision, 2, 3, false, true, false, R.string.os_stock))
-            .put("1F6D98D1B0E1F1CE1C872BD36C668F9DFDBE0D47594789E1540DF4E6198F657D",
-                    new DeviceInfo(R.string.device_vivo_1807, 2, 3, true, false, false, R.string.os_stock))
-            .put("C55635636999E9D0A0588D24402256B7F9F3AEE07B4F7E4E003F09FF0190AFAE",
-                    new DeviceInfo(R.string.device_revvl_2, 2, 3, false, false, false, R.string.os_stock))
-            .put("341C50D577DC5F3D5B46E8BFA22C22D1E5FC7D86D4D860E70B89222A7CBFC893",
-                    new DeviceInfo(R.string.device_oppo_cph1831, 2, 3, true, false, false, R.string.os_stock))
-            .put("41BF0A26BB3AFDCCCC40F7B685083522EB5BF1C492F0EC4847F351265313CB07",
-                    new DeviceInfo(R.string.device_oppo_cph1903, 2, 3, true, false, false, R.string.os_stock))
-            .put("7E19E217072BE6CB7A4C6F673FD3FB62DC51B3E204E7475838747947A3920DD8",
-                    new DeviceInfo(R.string.device_oppo_cph1909, 2, 3, false, false, false, R.string.os_stock))
-            .put("0D5F986943D0CE0D4F9783C27EEBE175BE359927DB8B6546B667279A81133C3C",
-                    new DeviceInfo(R.string.device_lg_q710al, 2, 3, false, false, false, R.string.os_stock))
-            .put("D20078F2AF2A7D3ECA3064018CB8BD47FBCA6EE61ABB41BA909D3C529CB802F4",
-                    new DeviceInfo(R.string.device_lm_q720, 3, 4, false /* uses new API */, false, false, R.string.os_stock))
-            .put("54EC644C21FD8229E3B0066513337A8E2C8EF3098A3F974B6A1CFE456A683DAE",
-                    new DeviceInfo(R.string.device_rmx1941, 2, 3, false, true, false, R.string.os_stock))
-            .build();
-
-    private static final ImmutableMap<String, DeviceInfo> fingerprintsStrongBoxCustomOS = ImmutableMap
-            .<String, DeviceInfo>builder()
-            // GrapheneOS
-            .put("0F9A9CC8ADE73064A54A35C5509E77994E3AA37B6FB889DD53AF82C3C570C5CF",
-                    new DeviceInfo(R.string.device_pixel_3, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("06DD526EE9B1CB92AA19D9835B68B4FF1A48A3AD31D813F27C9A7D6C271E9451",
-                    new DeviceInfo(R.string.device_pixel_3_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("73D6C63A07610404FE16A4E07DD24E41A70D331E9D3EF7BBA2D087E4761EB63A",
-                    new DeviceInfo(R.string.device_pixel_3a, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("3F36E3482E1FF82986576552CB4FD08AF09F8B09D3832314341E04C42D2919A4",
-                    new DeviceInfo(R.string.device_pixel_3a_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("80EF268700EE42686F779A47B4A155FE1FFC2EEDF836B4803CAAB8FA61439746",
-                    new DeviceInfo(R.string.device_pixel_4, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("3F15FDCB82847FED97427CE00563B8F9FF34627070DE5FDB17ACA7849AB98CC8",
-                    new DeviceInfo(R.string.device_pixel_4_xl, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("9F2454A1657B1B5AD7F2336B39A2611F7A40B2E0DDFD0D6553A359605928DF29",
-                    new DeviceInfo(R.string.device_pixel_4a, 3, 4, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("DCEC2D053D3EC4F1C9BE414AA07E4D7D7CBD12040AD2F8831C994A83A0536866",
-                    new DeviceInfo(R.string.device_pixel_4a_5g, 4, 41, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("36A99EAB7907E4FB12A70E3C41C456BCBE46C13413FBFE2436ADEE2B2B61120F",
-                    new DeviceInfo(R.string.device_pixel_5, 4, 41, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("0ABDDEDA03B6CE10548C95E0BEA196FAA539866F929BCDF7ECA84B4203952514",
-                    new DeviceInfo(R.string.device_pixel_5a, 4, 41, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("F0A890375D1405E62EBFD87E8D3F475F948EF031BBF9DDD516D5F600A23677E8",
-                    new DeviceInfo(R.string.device_pixel_6, 100, 100, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("439B76524D94C40652CE1BF0D8243773C634D2F99BA3160D8D02AA5E29FF925C",
-                    new DeviceInfo(R.string.device_pixel_6_pro, 100, 100, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("08C860350A9600692D10C8512F7B8E80707757468E8FBFEEA2A870C0A83D6031",
-                    new DeviceInfo(R.string.device_pixel_6a, 100, 100, false /* uses new API */, true, true, R.string.os_graphene))
-            .put("3EFE5392BE3AC38AFB894D13DE639E521675E62571A8A9B3EF9FC8C44FD17FA1",
-                    new DeviceInfo(R.string.device_pixel_7, 100, 100, false /* uses new API */, true, false, R.string.os_graphene))
-            .put("BC1C0DD95664604382BB888412026422742EB333071EA0B2D19036217D49182F",
-                    new DeviceInfo(R.string.device_pixel_7_pro, 100, 100, false /* uses new API */, true, false, R.string.os_graphene))
-            .build();
-    private static final ImmutableMap<String, DeviceInfo> fingerprintsStrongBoxStock = ImmutableMap
-            .<String, DeviceInfo>builder()
-            .put("61FDA12B32ED84214A9CF13D1AFFB7AA80BD8A268A861ED4BB7A15170F1AB00C",
-                    new DeviceInfo(R.string.device_pixel_3_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("8CA89AF1A6DAA74B00810849356DE929CFC4498EF36AF964757BDE8A113BF46D",
-                    new DeviceInfo(R.string.device_pixel_3a_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("AE6316B4753C61F5855B95B9B98484AF784F2E83648D0FCC8107FCA752CAEA34",
-                    new DeviceInfo(R.string.device_pixel_4_generic, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("879CD3F18EA76E244D4D4AC3BCB9C337C13B4667190B19035AFE2536550050F1",
-                    new DeviceInfo(R.string.device_pixel_4a, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("88265D85BA9E1E2F6036A259D880D2741031ACA445840137395B6D541C0FC7FC",
-                    new DeviceInfo(R.string.device_pixel_5_generic, 4, 41, false /* uses new API */, true, true, R.string.os_stock))
-            .put("1DD694CE00BF131AD61CEB576B7DCC41CF7F9B2C418F4C12B2B8F3E9A1EA911D",
-                    new DeviceInfo(R.string.device_pixel_5a, 4, 41, false /* uses new API */, true, true, R.string.os_stock))
-            .put("0F6E75C80183B5DEC074B0054D4271E99389EBE4B136B0819DE1F150BA0FF9D7",
-                    new DeviceInfo(R.string.device_pixel_6, 100, 100, false /* uses new API */, true, true, R.string.os_stock))
-            .put("42ED1BCA352FABD428F34E8FCEE62776F4CB2C66E06F82E5A59FF4495267BFC2",
-                    new DeviceInfo(R.string.device_pixel_6_pro, 100, 100, false /* uses new API */, true, true, R.string.os_stock))
-            .put("9AC4174153D45E4545B0F49E22FE63273999B6AC1CB6949C3A9F03EC8807EEE9",
-                    new DeviceInfo(R.string.device_pixel_6a, 100, 100, false /* uses new API */, true, true, R.string.os_stock))
-            .put("8B2C4CD539F5075E8E7CF212ADB3DB0413FBD77D321199C73D5A473C51F2E10D",
-                    new DeviceInfo(R.string.device_pixel_7, 100, 100, false /* uses new API */, true, false, R.string.os_stock))
-            .put("26AC4C60BEB1E378357CAD0C3061347AF8DF6FBABBB0D8CEA2445855EE01E368",
-                    new DeviceInfo(R.string.device_pixel_7_pro, 100, 100, false /* uses new API */, true, false, R.string.os_stock))
-            .put("3D3DEB132A89551D0A700D230BABAE4E3E80E3C7926ACDD7BAEDF9B57AD316D0",
-                    new DeviceInfo(R.string.device_sm_n970u, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .put("9AC63842137D92C119A1B1BE2C9270B9EBB6083BBE6350B7823571942B5869F0",
-                    new DeviceInfo(R.string.device_sm_n975u, 3, 4, false /* uses new API */, true, true, R.string.os_stock))
-            .build();
-
     private static byte[] getChallengeIndex(final Context context) {
         final SharedPreferences global = PreferenceManager.getDefaultSharedPreferences(context);
         final String challengeIndexSerialized = global.getString(KEY_CHALLENGE_INDEX, null);
@@ -588,356 +204,153 @@ class AttestationProtocol {
         return Bytes.concat(new byte[]{PROTOCOL_VERSION}, getChallengeIndex(context), getChallenge());
     }
 
-    private static byte[] getFingerprint(final Certificate certificate)
-            throws CertificateEncodingException {
-        return FINGERPRINT_HASH_FUNCTION.hashBytes(certificate.getEncoded()).asBytes();
-    }
-
-    private static class Verified {
-        final int device;
-        final String verifiedBootKey;
-        final byte[] verifiedBootHash;
-        final int osName;
-        final int osVersion;
-        final int osPatchLevel;
-        final int vendorPatchLevel;
-        final int bootPatchLevel;
-        final int appVersion;
-        final byte appVariant;
-        final int securityLevel;
-        final boolean attestKey;
-        final boolean perUserEncryption;
-        final boolean enforceStrongBox;
-
-        Verified(final int device, final String verifiedBootKey, final byte[] verifiedBootHash,
-                final int osName, final int osVersion, final int osPatchLevel,
-                final int vendorPatchLevel, final int bootPatchLevel, final int appVersion, final byte appVariant,
-                final int securityLevel, final boolean attestKey, final boolean perUserEncryption,
-                final boolean enforceStrongBox) {
-            this.device = device;
-            this.verifiedBootKey = verifiedBootKey;
-            this.verifiedBootHash = verifiedBootHash;
-            this.osName = osName;
-            this.osVersion = osVersion;
-            this.osPatchLevel = osPatchLevel;
-            this.vendorPatchLevel = vendorPatchLevel;
-            this.bootPatchLevel = bootPatchLevel;
-            this.appVersion = appVersion;
-            this.appVariant = appVariant;
-            this.securityLevel = securityLevel;
-            this.attestKey = attestKey;
-            this.perUserEncryption = perUserEncryption;
-            this.enforceStrongBox = enforceStrongBox;
-        }
-    }
-
-    private static X509Certificate generateCertificate(final InputStream in)
-            throws CertificateException {
-        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
-    }
-
     private static X509Certificate generateCertificate(final Resources resources, final int id)
             throws CertificateException, IOException {
         try (final InputStream stream = resources.openRawResource(id)) {
-            return generateCertificate(stream);
+            return AttestationVerifier.generateCertificate(stream);
         }
     }
 
-    private static Verified verifyStateless(final Certificate[] certificates,
-            final byte[] challenge, final boolean hasPersistentKey, final Certificate root0,
-            final Certificate root1, final Certificate root2) throws GeneralSecurityException {
-
-        verifyCertificateSignatures(certificates, hasPersistentKey);
-
-        // check that the root certificate is a valid key attestation root
-        if (!Arrays.equals(root0.getEncoded(), certificates[certificates.length - 1].getEncoded()) &&
-                !Arrays.equals(root1.getEncoded(), certificates[certificates.length - 1].getEncoded()) &&
-                !Arrays.equals(root2.getEncoded(), certificates[certificates.length - 1].getEncoded())) {
-            throw new GeneralSecurityException("root certificate is not a valid key attestation root");
-        }
-
-        final Attestation attestation = new Attestation((X509Certificate) certificates[0]);
-
-        final int attestationSecurityLevel = attestation.getAttestationSecurityLevel();
-
-        // enforce hardware-based attestation
-        if (attestationSecurityLevel != Attestation.KM_SECURITY_LEVEL_TRUSTED_ENVIRONMENT &&
-                attestationSecurityLevel != Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
-            throw new GeneralSecurityException("attestation security level is not valid");
-        }
-        if (attestation.getKeymasterSecurityLevel() != attestationSecurityLevel) {
-            throw new GeneralSecurityException("keymaster security level does not match attestation security level");
-        }
-
-        // prevent replay attacks
-        if (!Arrays.equals(attestation.getAttestationChallenge(), challenge)) {
-            throw new GeneralSecurityException("challenge mismatch");
-        }
-
-        // enforce communicating with the Auditor app via OS level security
-        final AuthorizationList softwareEnforced = attestation.getSoftwareEnforced();
-        final AttestationApplicationId attestationApplicationId = softwareEnforced.getAttestationApplicationId();
-        final List<AttestationPackageInfo> infos = attestationApplicationId.getAttestationPackageInfos();
-        if (infos.size() != 1) {
-            throw new GeneralSecurityException("invalid number of attestation packages");
-        }
-        final AttestationPackageInfo info = infos.get(0);
-        final List<byte[]> signatureDigests = attestationApplicationId.getSignatureDigests();
-        if (signatureDigests.size() != 1) {
-            throw new GeneralSecurityException("invalid number of Auditor app signatures");
-        }
-        final String signatureDigest = BaseEncoding.base16().encode(signatureDigests.get(0));
-        final byte appVariant;
-        if (AUDITOR_APP_PACKAGE_NAME_RELEASE.equals(info.getPackageName())) {
-            if (!AUDITOR_APP_SIGNATURE_DIGEST_RELEASE.equals(signatureDigest)) {
-                throw new GeneralSecurityException("invalid Auditor app signing key");
-            }
-            appVariant = AUDITOR_APP_VARIANT_RELEASE;
-        } else if (AUDITOR_APP_PACKAGE_NAME_PLAY.equals(info.getPackageName())) {
-            if (!AUDITOR_APP_SIGNATURE_DIGEST_PLAY.equals(signatureDigest)) {
-                throw new GeneralSecurityException("invalid Auditor app signing key");
+    private static synchronized ChainCodec getChainCodec(final Resources resources)
+            throws IOException {
+        if (chainCodec == null) {
+            try (final InputStream stream = resources.openRawResource(R.raw.deflate_dictionary_3)) {
+                chainCodec = new ChainCodec(ByteStreams.toByteArray(stream),
+                        Runtime.getRuntime().availableProcessors(), certificateCache);
             }
-            appVariant = AUDITOR_APP_VARIANT_PLAY;
-        } else if (AUDITOR_APP_PACKAGE_NAME_DEBUG.equals(info.getPackageName())) {
-            if (!BuildConfig.DEBUG) {
-                throw new GeneralSecurityException("Auditor debug builds are only trusted by other Auditor debug builds");
-            }
-            if (!AUDITOR_APP_SIGNATURE_DIGEST_DEBUG.equals(signatureDigest)) {
-                throw new GeneralSecurityException("invalid Auditor app signing key");
-            }
-            appVariant = AUDITOR_APP_VARIANT_DEBUG;
-        } else {
-            throw new GeneralSecurityException("invalid Auditor app package name: " + info.getPackageName());
         }
-        final int appVersion = Math.toIntExact(info.getVersion()); // int for compatibility
-        if (appVersion < AUDITOR_APP_MINIMUM_VERSION) {
-            throw new GeneralSecurityException("Auditor app is too old: " + appVersion);
-        }
-
-        final AuthorizationList teeEnforced = attestation.getTeeEnforced();
+        return chainCodec;
+    }
 
-        // verified boot security checks
-        final RootOfTrust rootOfTrust = teeEnforced.getRootOfTrust();
-        if (rootOfTrust == null) {
-            throw new GeneralSecurityException("missing root of trust");
+    private static synchronized AttestationSerializer getAttestationSerializer(
+            final Resources resources) throws IOException {
+        if (attestationSerializer == null) {
+            attestationSerializer = new AttestationSerializer(getChainCodec(resources));
         }
-        if (!rootOfTrust.isDeviceLocked()) {
-            throw new GeneralSecurityException("device is not locked");
-        }
-        final int verifiedBootState = rootOfTrust.getVerifiedBootState();
-        final String verifiedBootKey = BaseEncoding.base16().encode(rootOfTrust.getVerifiedBootKey());
-        final DeviceInfo device;
-        if (verifiedBootState == RootOfTrust.KM_VERIFIED_BOOT_SELF_SIGNED) {
-            if (attestationSecurityLevel == Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
-                device = fingerprintsStrongBoxCustomOS.get(verifiedBootKey);
-            } else {
-                device = fingerprintsCustomOS.get(verifiedBootKey);
-            }
-        } else if (verifiedBootState == RootOfTrust.KM_VERIFIED_BOOT_VERIFIED) {
-            if (attestationSecurityLevel == Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
-                device = fingerprintsStrongBoxStock.get(verifiedBootKey);
-            } else {
-                device = fingerprintsStock.get(verifiedBootKey);
+        return attestationSerializer;
+    }
+
+    private static synchronized FilePairingStore getPairingStore(final Context context)
+            throws IOException {
+        if (pairingStore == null) {
+            final FilePairingStore store = openPairingStore(context);
+            final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+            if (!preferences.getBoolean(KEY_PAIRINGS_MIGRATED, false)
+                    && SharedPreferencesPairingStore.migrate(context, store)) {
+                preferences.edit().putBoolean(KEY_PAIRINGS_MIGRATED, true).apply();
             }
-        } else {
-            throw new GeneralSecurityException("verified boot state is not verified or self signed");
+            pairingStore = store;
         }
+        return pairingStore;
+    }
 
-        if (device == null) {
-            throw new GeneralSecurityException("invalid verified boot key fingerprint: " + verifiedBootKey);
-        }
+    private static FilePairingStore openPairingStore(final Context context) throws IOException {
+        return new FilePairingStore(
+                new File(context.getFilesDir(), PAIRINGS_FILE).toPath(),
+                new File(context.getFilesDir(), PINNED_CERTIFICATES_FILE).toPath());
+    }
 
-        // OS version sanity checks
-        final int osVersion = teeEnforced.getOsVersion();
-        if (osVersion == DEVELOPER_PREVIEW_OS_VERSION) {
-            if (!BuildConfig.DEBUG) {
-                throw new GeneralSecurityException("OS version is not a production release");
-            }
-        } else if (osVersion < OS_VERSION_MINIMUM) {
-            throw new GeneralSecurityException("OS version too old: " + osVersion);
-        }
-        final int osPatchLevel = teeEnforced.getOsPatchLevel();
-        if (osPatchLevel < OS_PATCH_LEVEL_MINIMUM) {
-            throw new GeneralSecurityException("OS patch level too old: " + osPatchLevel);
+    // Clears the store without migrating legacy pairings into it first, so that clearing does
+    // not depend on the number of pairings once the legacy files are gone
+    private static synchronized void clearPairingStore(final Context context) throws IOException {
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!preferences.getBoolean(KEY_PAIRINGS_MIGRATED, false)) {
+            // deleted before the store is cleared, since a later open would migrate them back
+            SharedPreferencesPairingStore.clear(context);
+            preferences.edit().putBoolean(KEY_PAIRINGS_MIGRATED, true).apply();
         }
-        final int vendorPatchLevel;
-        if (teeEnforced.getVendorPatchLevel() == null) {
-            vendorPatchLevel = 0;
-        } else {
-            vendorPatchLevel = teeEnforced.getVendorPatchLevel();
-            if (vendorPatchLevel < VENDOR_PATCH_LEVEL_MINIMUM && !extraPatchLevelMissing.contains(device.name)) {
-                throw new GeneralSecurityException("Vendor patch level too old: " + vendorPatchLevel);
-            }
-        }
-        final int bootPatchLevel;
-        if (teeEnforced.getBootPatchLevel() == null) {
-            bootPatchLevel = 0;
-        } else {
-            bootPatchLevel = teeEnforced.getBootPatchLevel();
-            if (bootPatchLevel < BOOT_PATCH_LEVEL_MINIMUM && !extraPatchLevelMissing.contains(device.name)) {
-                throw new GeneralSecurityException("Boot patch level too old: " + bootPatchLevel);
-            }
+        if (pairingStore == null) {
+            pairingStore = openPairingStore(context);
         }
+        pairingStore.clear();
+    }
 
-        // key sanity checks
-        if (!teeEnforced.getPurposes().equals(
-                ImmutableSet.of(AuthorizationList.KM_PURPOSE_SIGN, AuthorizationList.KM_PURPOSE_VERIFY))) {
-            throw new GeneralSecurityException("key has invalid purposes");
-        }
-        if (teeEnforced.getOrigin() != AuthorizationList.KM_ORIGIN_GENERATED) {
-            throw new GeneralSecurityException("key not origin generated");
-        }
-        if (teeEnforced.isAllApplications()) {
-            throw new GeneralSecurityException("expected key only usable by Auditor app");
-        }
-        if (device.rollbackResistant && !teeEnforced.isRollbackResistant()) {
-            throw new GeneralSecurityException("expected rollback resistant key");
+    private static synchronized VerificationHistory getVerificationHistory(final Context context)
+            throws IOException {
+        if (verificationHistory == null) {
+            verificationHistory = new VerificationHistory(
+                    new File(context.getFilesDir(), HISTORY_DIRECTORY).toPath());
         }
+        return verificationHistory;
+    }
 
-        // version sanity checks
-        final int attestationVersion = attestation.getAttestationVersion();
-        Log.d(TAG, "attestationVersion: " + attestationVersion);
-        if (attestationVersion < device.attestationVersion) {
-            throw new GeneralSecurityException("attestation version " + attestationVersion + " below " + device.attestationVersion);
-        }
-        final int keymasterVersion = attestation.getKeymasterVersion();
-        Log.d(TAG, "keymasterVersion: " + keymasterVersion);
-        if (keymasterVersion < device.keymasterVersion) {
-            throw new GeneralSecurityException("keymaster version " + keymasterVersion + " below " + device.keymasterVersion);
+    private static synchronized List<X509Certificate> getGoogleRoots(final Resources resources)
+            throws CertificateException, IOException {
+        if (googleRoots == null) {
+            googleRoots = ImmutableList.of(
+                    generateCertificate(resources, R.raw.google_root_0),
+                    generateCertificate(resources, R.raw.google_root_1),
+                    generateCertificate(resources, R.raw.google_root_2));
         }
+        return googleRoots;
+    }
 
-        final byte[] verifiedBootHash = rootOfTrust.getVerifiedBootHash();
-        if (attestationVersion >= 3 && verifiedBootHash == null) {
-            throw new GeneralSecurityException("verifiedBootHash expected for attestation version >= 3");
+    private static synchronized TrustAnchors getTrustAnchors(final Resources resources)
+            throws CertificateException, IOException {
+        if (trustAnchors == null) {
+            trustAnchors = new TrustAnchors(getGoogleRoots(resources));
         }
+        return trustAnchors;
+    }
 
-        boolean attestKey = false;
-        try {
-            final Attestation attestation1 = new Attestation((X509Certificate) certificates[1]);
-
-            if (attestation1.getAttestationSecurityLevel() != attestation.getAttestationSecurityLevel()) {
-                throw new GeneralSecurityException("attest key attestation security level does not match");
-            }
-
-            if (attestation1.getKeymasterSecurityLevel() != attestation.getKeymasterSecurityLevel()) {
-                throw new GeneralSecurityException("attest key keymaster security level does not match");
-            }
-
-            final AuthorizationList teeEnforced1 = attestation1.getTeeEnforced();
-
-            // verified boot security checks
-            final RootOfTrust rootOfTrust1 = teeEnforced1.getRootOfTrust();
-            if (rootOfTrust1 == null) {
-                throw new GeneralSecurityException("attest key missing root of trust");
-            }
-            if (rootOfTrust1.isDeviceLocked() != rootOfTrust.isDeviceLocked()) {
-                throw new GeneralSecurityException("attest key lock state does not match");
-            }
-            if (rootOfTrust1.getVerifiedBootState() != rootOfTrust.getVerifiedBootState()) {
-                throw new GeneralSecurityException("attest key verified boot state does not match");
-            }
-            if (!Arrays.equals(rootOfTrust1.getVerifiedBootKey(), rootOfTrust.getVerifiedBootKey())) {
-                throw new GeneralSecurityException("attest key verified boot key does not match");
-            }
-
-            // key sanity checks
-            if (!teeEnforced1.getPurposes().equals(ImmutableSet.of(AuthorizationList.KM_PURPOSE_ATTEST_KEY))) {
-                throw new GeneralSecurityException("attest key has invalid purposes");
-            }
-            if (teeEnforced1.getOrigin() != AuthorizationList.KM_ORIGIN_GENERATED) {
-                throw new GeneralSecurityException("attest key not origin generated");
-            }
-            if (teeEnforced1.isAllApplications()) {
-                throw new GeneralSecurityException("expected attest key only usable by Auditor app");
-            }
-            if (device.rollbackResistant && !teeEnforced1.isRollbackResistant()) {
-                throw new GeneralSecurityException("expected rollback resistant attest key");
-            }
-
-            if (!hasPersistentKey) {
-                if (!Arrays.equals(attestation1.getAttestationChallenge(), attestation.getAttestationChallenge())) {
-                    throw new GeneralSecurityException("attest key challenge does not match");
-                }
-
-                if (!attestation1.getSoftwareEnforced().getAttestationApplicationId().equals(attestationApplicationId)) {
-                    throw new GeneralSecurityException("attest key application does not match");
-                }
-
-                // version sanity checks
-                if (attestation1.getAttestationVersion() != attestation.getAttestationVersion()) {
-                    throw new GeneralSecurityException("attest key attestation version does not match");
-                }
-                if (attestation1.getKeymasterVersion() != attestation.getKeymasterVersion()) {
-                    throw new GeneralSecurityException("attest key keymaster version does not match");
-                }
-
-                // OS version sanity checks
-                if (!teeEnforced1.getOsVersion().equals(teeEnforced.getOsVersion())) {
-                    throw new GeneralSecurityException("attest key OS version does not match");
-                }
-                if (!teeEnforced1.getOsPatchLevel().equals(teeEnforced.getOsPatchLevel())) {
-                    throw new GeneralSecurityException("attest key OS patch level does not match");
-                }
-                if (!teeEnforced1.getVendorPatchLevel().equals(teeEnforced.getVendorPatchLevel())) {
-                    throw new GeneralSecurityException("attest key vendor patch level does not match");
-                }
-                if (!teeEnforced1.getBootPatchLevel().equals(teeEnforced.getBootPatchLevel())) {
-                    throw new GeneralSecurityException("attest key boot patch level does not match");
-                }
-
-                if (!Arrays.equals(rootOfTrust1.getVerifiedBootHash(), rootOfTrust.getVerifiedBootHash())) {
-                    throw new GeneralSecurityException("attest key verified boot hash does not match");
+    private static synchronized CryptoBackend getCryptoBackend(final Context context)
+            throws GeneralSecurityException, IOException {
+        if (cryptoBackend != null) {
+            return cryptoBackend;
+        }
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        final String build = Build.FINGERPRINT + "/" + BuildConfig.VERSION_CODE;
+        if (build.equals(preferences.getString(KEY_CRYPTO_BACKEND_BUILD, null))) {
+            final String name = preferences.getString(KEY_CRYPTO_BACKEND, null);
+            for (final CryptoBackend backend : CRYPTO_BACKENDS) {
+                if (backend.getName().equals(name)) {
+                    cryptoBackend = backend;
+                    return cryptoBackend;
                 }
             }
-
-            attestKey = true;
-        } catch (final Attestation.KeyDescriptionMissingException e) {}
-
-        for (int i = 2; i < certificates.length; i++) {
-            try {
-                new Attestation((X509Certificate) certificates[i]);
-            } catch (final Attestation.KeyDescriptionMissingException e) {
-                continue;
-            }
-            throw new GeneralSecurityException("only initial key and attest key should have attestation extension");
         }
 
-        return new Verified(device.name, verifiedBootKey, verifiedBootHash, device.osName,
-                osVersion, osPatchLevel, vendorPatchLevel, bootPatchLevel, appVersion, appVariant,
-                attestationSecurityLevel, attestKey, device.perUserEncryption,
-                device.enforceStrongBox);
+        // each self-signed root is a chain of its own, covering the RSA and EC roots
+        final ImmutableList.Builder<Certificate[]> chains = ImmutableList.builder();
+        for (final X509Certificate root : getGoogleRoots(context.getResources())) {
+            chains.add(new Certificate[] { root });
+        }
+        cryptoBackend = CryptoBackendSelector.selectFastest(CRYPTO_BACKENDS, chains.build(),
+                CRYPTO_BACKEND_SELECTION_ROUNDS);
+        Log.d(TAG, "selected crypto backend " + cryptoBackend.getName());
+        preferences.edit()
+                .putString(KEY_CRYPTO_BACKEND, cryptoBackend.getName())
+                .putString(KEY_CRYPTO_BACKEND_BUILD, build)
+                .apply();
+        return cryptoBackend;
     }
 
-    // Only checks expiry beyond the initial certificate for the initial pairing since the
-    // certificates are short lived when remote provisioning is in use and we prevent rotation by
-    // using the attest key feature to provide permanent pairing-specific certificate chains in
-    // order to pin them.
-    private static void verifyCertificateSignatures(final Certificate[] certChain, final boolean hasPersistentKey)
-            throws GeneralSecurityException {
-        for (int i = 1; i < certChain.length; ++i) {
-            try {
-                if (i == 1 || !hasPersistentKey) {
-                    ((X509Certificate) certChain[i - 1]).checkValidity();
-                }
-                certChain[i - 1].verify(certChain[i].getPublicKey());
-            } catch (InvalidKeyException | CertificateException | NoSuchAlgorithmException
-                    | NoSuchProviderException | SignatureException e) {
-                throw new GeneralSecurityException("Failed to verify certificate "
-                        + certChain[i - 1] + " with public key " + certChain[i].getPublicKey(), e);
-            }
+    private static synchronized AttestationVerifier getVerifier(final Context context)
+            throws GeneralSecurityException, IOException {
+        if (verifier == null) {
+            final Resources resources = context.getResources();
+            verifier = AttestationVerifier.builder(getTrustAnchors(resources))
+                    .chainCodec(getChainCodec(resources))
+                    .pairingStore(getPairingStore(context))
+                    .debug(BuildConfig.DEBUG)
+                    .certificateCache(certificateCache)
+                    .cryptoBackend(getCryptoBackend(context))
+                    .history(getVerificationHistory(context))
+                    .build();
         }
+        return verifier;
+    }
 
-        // Last cert is self-signed.
-        final int i = certChain.length - 1;
-        try {
-            if (i == 0 || !hasPersistentKey) {
-                ((X509Certificate) certChain[i]).checkValidity();
-            }
-            certChain[i].verify(certChain[i].getPublicKey());
-        } catch (CertificateException e) {
-            throw new GeneralSecurityException(
-                    "Root cert " + certChain[i] + " is not correctly self-signed", e);
+    private static synchronized AttestationVerifier getStatelessVerifier(final Context context)
+            throws GeneralSecurityException, IOException {
+        if (statelessVerifier == null) {
+            statelessVerifier = AttestationVerifier.builder(getTrustAnchors(context.getResources()))
+                    .debug(BuildConfig.DEBUG)
+                    .certificateCache(certificateCache)
+                    .cryptoBackend(getCryptoBackend(context))
+                    .build();
         }
+        return statelessVerifier;
     }
 
     private static String formatPatchLevel(final int patchLevel) {
@@ -975,8 +388,8 @@ class AttestationProtocol {
         }
         builder.append(context.getString(R.string.security_level, securityLevel));
 
-        builder.append(context.getString(R.string.device, context.getString(verified.device)));
-        builder.append(context.getString(R.string.os, context.getString(verified.osName)));
+        builder.append(context.getString(R.string.device, verified.device));
+        builder.append(context.getString(R.string.os, verified.osName));
 
         if (verified.osVersion == DEVELOPER_PREVIEW_OS_VERSION) {
             builder.append(context.getString(R.string.os_version,
@@ -1008,16 +421,6 @@ class AttestationProtocol {
         }
     }
 
-    private static void verifySignature(final PublicKey key, final ByteBuffer message,
-            final byte[] signature) throws GeneralSecurityException {
-        final Signature sig = Signature.getInstance(SIGNATURE_ALGORITHM);
-        sig.initVerify(key);
-        sig.update(message);
-        if (!sig.verify(signature)) {
-            throw new GeneralSecurityException("signature verification failed");
-        }
-    }
-
     static class VerificationResult {
         final boolean strong;
         final String teeEnforced;
@@ -1037,166 +440,24 @@ class AttestationProtocol {
         return value ? context.getString(R.string.yes) : context.getString(R.string.no);
     }
 
-    private static VerificationResult verify(final Context context, final byte[] fingerprint,
-            final byte[] challenge, final ByteBuffer signedMessage, final byte[] signature,
-            final Certificate[] attestationCertificates, final boolean userProfileSecure,
-            final boolean accessibility, final boolean deviceAdmin,
-            final boolean deviceAdminNonSystem, final boolean adbEnabled,
-            final boolean addUsersWhenLocked, final boolean enrolledBiometrics,
-            final boolean denyNewUsb, final boolean oemUnlockAllowed, final boolean systemUser)
-            throws GeneralSecurityException, IOException {
-        final String fingerprintHex = BaseEncoding.base16().encode(fingerprint);
-        final byte[] currentFingerprint = getFingerprint(attestationCertificates[0]);
-        final boolean hasPersistentKey = !Arrays.equals(currentFingerprint, fingerprint);
-
-        final SharedPreferences preferences =
-                context.getSharedPreferences(PREFERENCES_DEVICE_PREFIX + fingerprintHex,
-                        Context.MODE_PRIVATE);
-        if (hasPersistentKey && !preferences.contains(KEY_PINNED_CERTIFICATE_LENGTH)) {
-            throw new GeneralSecurityException(
-                    "Pairing data for this Auditee is missing. Cannot perform paired attestation.\n" +
-                    "\nEither the initial pairing was incomplete or the device is compromised.\n" +
-                    "\nIf the initial pairing was simply not completed, clear the pairing data on either the Auditee or the Auditor via the menu and try again.\n");
-        }
-
-        final Verified verified = verifyStateless(attestationCertificates, challenge, hasPersistentKey,
-                generateCertificate(context.getResources(), R.raw.google_root_0),
-                generateCertificate(context.getResources(), R.raw.google_root_1),
-                generateCertificate(context.getResources(), R.raw.google_root_2));
+    static VerificationResult verifySerialized(final Context context, final byte[] attestationResult,
+            final byte[] challengeMessage) throws DataFormatException, GeneralSecurityException, IOException {
+        final Verification verification = getVerifier(context)
+                .verifySerialized(attestationResult, challengeMessage);
+        final Verified verified = verification.verified;
 
         final StringBuilder teeEnforced = new StringBuilder();
-        final StringBuilder history = new StringBuilder();
-
-        boolean attestKeyMigration = false;
-        if (hasPersistentKey) {
-            final int chainOffset;
-            final int pinOffset;
-            if (attestationCertificates.length != preferences.getInt(KEY_PINNED_CERTIFICATE_LENGTH, 0)) {
-                if (attestationCertificates.length == 5 && preferences.getInt(KEY_PINNED_CERTIFICATE_LENGTH, 0) == 4) {
-                    // backwards compatible use of attest key without the security benefits for
-                    // forward compatibility with remote provisioning
-                    chainOffset = 1;
-                    pinOffset = 0;
-                    attestKeyMigration = true;
-                } else if (ALLOW_ATTEST_KEY_DOWNGRADE && attestationCertificates.length == 4 && preferences.getInt(KEY_PINNED_CERTIFICATE_LENGTH, 0) == 5) {
-                    // temporarily work around attest key breakage by allowing not using it
-                    chainOffset = 0;
-                    pinOffset = 1;
-                } else {
-                    throw new GeneralSecurityException("certificate chain length mismatch");
-                }
-            } else {
-                chainOffset = 0;
-                pinOffset = 0;
-            }
-            for (int i = 1 + chainOffset; i < attestationCertificates.length; i++) {
-                final byte[] b = BaseEncoding.base64().decode(preferences.getString(KEY_PINNED_CERTIFICATE + (i - chainOffset + pinOffset), ""));
-                if (!Arrays.equals(attestationCertificates[i].getEncoded(), b)) {
-                    throw new GeneralSecurityException("certificate chain mismatch");
-                }
-            }
-
-            final byte[] persistentCertificateEncoded = BaseEncoding.base64().decode(preferences.getString(KEY_PINNED_CERTIFICATE + "0", ""));
-            final Certificate persistentCertificate = generateCertificate(
-                    new ByteArrayInputStream(persistentCertificateEncoded));
-            if (!Arrays.equals(fingerprint, getFingerprint(persistentCertificate))) {
-                throw new GeneralSecurityException("corrupt Auditor pinning data");
-            }
-            verifySignature(persistentCertificate.getPublicKey(), signedMessage, signature);
-
-            final String pinnedVerifiedBootKey = preferences.getString(KEY_PINNED_VERIFIED_BOOT_KEY, null);
-            if (!verified.verifiedBootKey.equals(pinnedVerifiedBootKey)) {
-                final String legacyFingerprint = fingerprintsMigration.get(verified.verifiedBootKey);
-                if (legacyFingerprint != null && legacyFingerprint.equals(pinnedVerifiedBootKey)) {
-                    Log.d(TAG, "migration from legacy fingerprint " + legacyFingerprint + " to " + verified.verifiedBootKey);
-                } else {
-                    throw new GeneralSecurityException("pinned verified boot key mismatch");
-                }
-            }
-            if (verified.osVersion != DEVELOPER_PREVIEW_OS_VERSION &&
-                    verified.osVersion < preferences.getInt(KEY_PINNED_OS_VERSION, Integer.MAX_VALUE)) {
-                throw new GeneralSecurityException("OS version downgrade detected");
-            }
-            if (verified.osPatchLevel < preferences.getInt(KEY_PINNED_OS_PATCH_LEVEL, Integer.MAX_VALUE)) {
-                throw new GeneralSecurityException("OS patch level downgrade detected");
-            }
-            if (verified.vendorPatchLevel < preferences.getInt(KEY_PINNED_VENDOR_PATCH_LEVEL, 0)) {
-                throw new GeneralSecurityException("Vendor patch level downgrade detected");
-            }
-            if (verified.bootPatchLevel < preferences.getInt(KEY_PINNED_BOOT_PATCH_LEVEL, 0)) {
-                throw new GeneralSecurityException("Boot patch level downgrade detected");
-            }
-            final int pinnedAppVersion = preferences.getInt(KEY_PINNED_APP_VERSION, Integer.MAX_VALUE);
-            if (verified.appVersion < pinnedAppVersion) {
-                throw new GeneralSecurityException("App version downgraded");
-            }
-            final int pinnedAppVariant = preferences.getInt(KEY_PINNED_APP_VARIANT, 0);
-            if (verified.appVariant < pinnedAppVariant) {
-                throw new GeneralSecurityException("App version downgraded");
-            }
-            if (verified.securityLevel != preferences.getInt(KEY_PINNED_SECURITY_LEVEL, Attestation.KM_SECURITY_LEVEL_TRUSTED_ENVIRONMENT)) {
-                throw new GeneralSecurityException("Security level mismatch");
-            }
+        appendVerifiedInformation(context, teeEnforced, verified, verification.fingerprint,
+                verification.attestKeyMigration);
 
+        final StringBuilder history = new StringBuilder();
+        if (verification.pairing != null) {
             history.append(context.getString(R.string.first_verified,
-                    new Date(preferences.getLong(KEY_VERIFIED_TIME_FIRST, 0))));
+                    new Date(verification.pairing.verifiedTimeFirst)));
             history.append(context.getString(R.string.last_verified,
-                    new Date(preferences.getLong(KEY_VERIFIED_TIME_LAST, 0))));
-
-            final SharedPreferences.Editor editor = preferences.edit();
-            // handle migration to v2 verified boot key fingerprint
-            editor.putString(KEY_PINNED_VERIFIED_BOOT_KEY, verified.verifiedBootKey);
-            editor.putInt(KEY_PINNED_OS_VERSION, verified.osVersion);
-            editor.putInt(KEY_PINNED_OS_PATCH_LEVEL, verified.osPatchLevel);
-            if (verified.vendorPatchLevel != 0) {
-                editor.putInt(KEY_PINNED_VENDOR_PATCH_LEVEL, verified.vendorPatchLevel);
-            }
-            if (verified.bootPatchLevel != 0) {
-                editor.putInt(KEY_PINNED_BOOT_PATCH_LEVEL, verified.bootPatchLevel);
-            }
-            editor.putInt(KEY_PINNED_APP_VERSION, verified.appVersion);
-            editor.putInt(KEY_PINNED_APP_VARIANT, verified.appVariant);
-            editor.putInt(KEY_PINNED_SECURITY_LEVEL, verified.securityLevel); // new field
-            editor.putLong(KEY_VERIFIED_TIME_LAST, new Date().getTime());
-            editor.apply();
-        } else {
-            verifySignature(attestationCertificates[0].getPublicKey(), signedMessage, signature);
-
-            if (PREFER_STRONGBOX && verified.enforceStrongBox && verified.securityLevel != Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
-                throw new GeneralSecurityException("non-StrongBox security level for initial pairing with StrongBox device");
-            }
-
-            final SharedPreferences.Editor editor = preferences.edit();
-
-            editor.putInt(KEY_PINNED_CERTIFICATE_LENGTH, attestationCertificates.length);
-            for (int i = 0; i < attestationCertificates.length; i++) {
-                final String encoded = BaseEncoding.base64().encode(
-                        attestationCertificates[i].getEncoded());
-                editor.putString(KEY_PINNED_CERTIFICATE + i, encoded);
-            }
-
-            editor.putString(KEY_PINNED_VERIFIED_BOOT_KEY, verified.verifiedBootKey);
-            editor.putInt(KEY_PINNED_OS_VERSION, verified.osVersion);
-            editor.putInt(KEY_PINNED_OS_PATCH_LEVEL, verified.osPatchLevel);
-            if (verified.vendorPatchLevel != 0) {
-                editor.putInt(KEY_PINNED_VENDOR_PATCH_LEVEL, verified.vendorPatchLevel);
-            }
-            if (verified.bootPatchLevel != 0) {
-                editor.putInt(KEY_PINNED_BOOT_PATCH_LEVEL, verified.bootPatchLevel);
-            }
-            editor.putInt(KEY_PINNED_APP_VERSION, verified.appVersion);
-            editor.putInt(KEY_PINNED_APP_VARIANT, verified.appVariant);
-            editor.putInt(KEY_PINNED_SECURITY_LEVEL, verified.securityLevel);
-
-            final long now = new Date().getTime();
-            editor.putLong(KEY_VERIFIED_TIME_FIRST, now);
-            editor.putLong(KEY_VERIFIED_TIME_LAST, now);
-
-            editor.apply();
+                    new Date(verification.pairing.verifiedTimeLast)));
         }
 
-        appendVerifiedInformation(context, teeEnforced, verified, fingerprintHex, attestKeyMigration);
-
         final StringBuilder osEnforced = new StringBuilder();
         osEnforced.append(context.getString(R.string.auditor_app_version, verified.appVersion));
 
@@ -1211,16 +472,16 @@ class AttestationProtocol {
         osEnforced.append(context.getString(R.string.auditor_app_variant, appVariant));
 
         osEnforced.append(context.getString(R.string.user_profile_secure,
-                toYesNoString(context, userProfileSecure)));
+                toYesNoString(context, verification.userProfileSecure)));
         osEnforced.append(context.getString(R.string.enrolled_biometrics,
-                toYesNoString(context, enrolledBiometrics)));
+                toYesNoString(context, verification.enrolledBiometrics)));
         osEnforced.append(context.getString(R.string.accessibility,
-                toYesNoString(context, accessibility)));
+                toYesNoString(context, verification.accessibility)));
 
         final String deviceAdminState;
-        if (deviceAdminNonSystem) {
+        if (verification.deviceAdminNonSystem) {
             deviceAdminState = context.getString(R.string.device_admin_non_system);
-        } else if (deviceAdmin) {
+        } else if (verification.deviceAdmin) {
             deviceAdminState = context.getString(R.string.device_admin_system);
         } else {
             deviceAdminState = context.getString(R.string.no);
@@ -1228,128 +489,17 @@ class AttestationProtocol {
         osEnforced.append(context.getString(R.string.device_admin, deviceAdminState));
 
         osEnforced.append(context.getString(R.string.adb_enabled,
-                toYesNoString(context, adbEnabled)));
+                toYesNoString(context, verification.adbEnabled)));
         osEnforced.append(context.getString(R.string.add_users_when_locked,
-                toYesNoString(context, addUsersWhenLocked)));
+                toYesNoString(context, verification.addUsersWhenLocked)));
         osEnforced.append(context.getString(R.string.deny_new_usb,
-                toYesNoString(context, denyNewUsb)));
+                toYesNoString(context, verification.denyNewUsb)));
         osEnforced.append(context.getString(R.string.oem_unlock_allowed,
-                toYesNoString(context, oemUnlockAllowed)));
+                toYesNoString(context, verification.oemUnlockAllowed)));
         osEnforced.append(context.getString(R.string.system_user,
-                toYesNoString(context, systemUser)));
-
-        return new VerificationResult(hasPersistentKey, teeEnforced.toString(), osEnforced.toString(), history.toString());
-    }
-
-    private static Certificate[] decodeChain(final byte[] dictionary, final byte[] compressedChain)
-            throws DataFormatException, GeneralSecurityException {
-        final byte[] chain = new byte[MAX_ENCODED_CHAIN_LENGTH];
-        final Inflater inflater = new Inflater(true);
-        inflater.setInput(compressedChain);
-        inflater.setDictionary(dictionary);
-        final int chainLength = inflater.inflate(chain);
-        if (!inflater.finished()) {
-            throw new GeneralSecurityException("certificate chain is too large");
-        }
-        inflater.end();
-        Log.d(TAG, "encoded length: " + chainLength + ", compressed length: " + compressedChain.length);
-
-        final ByteBuffer chainDeserializer = ByteBuffer.wrap(chain, 0, chainLength);
-        final List<Certificate> certs = new ArrayList<>();
-        while (chainDeserializer.hasRemaining()) {
-            final short encodedLength = chainDeserializer.getShort();
-            final byte[] encoded = new byte[encodedLength];
-            chainDeserializer.get(encoded);
-            certs.add(generateCertificate(new ByteArrayInputStream(encoded)));
-        }
-        return certs.toArray(new Certificate[0]);
-    }
-
-    private static byte[] encodeChain(final byte[] dictionary, final Certificate[] certificates)
-            throws CertificateEncodingException, IOException {
-        final ByteBuffer chainSerializer = ByteBuffer.allocate(MAX_ENCODED_CHAIN_LENGTH);
-        for (Certificate certificate : certificates) {
-            final byte[] encoded = certificate.getEncoded();
-            if (encoded.length > Short.MAX_VALUE) {
-                throw new RuntimeException("encoded certificate too long");
-            }
-            chainSerializer.putShort((short) encoded.length);
-            chainSerializer.put(encoded);
-        }
-        chainSerializer.flip();
-        final byte[] chain = new byte[chainSerializer.remaining()];
-        chainSerializer.get(chain);
-
-        if (chain.length > MAX_ENCODED_CHAIN_LENGTH) {
-            throw new RuntimeException("encoded certificate chain too long");
-        }
-
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
-        deflater.setDictionary(dictionary);
-        final DeflaterOutputStream deflaterStream = new DeflaterOutputStream(byteStream, deflater);
-        deflaterStream.write(chain);
-        deflaterStream.finish();
-        final byte[] compressed = byteStream.toByteArray();
-        Log.d(TAG, "encoded length: " + chain.length + ", compressed length: " + compressed.length);
+                toYesNoString(context, verification.systemUser)));
 
-        return compressed;
-    }
-
-    static VerificationResult verifySerialized(final Context context, final byte[] attestationResult,
-            final byte[] challengeMessage) throws DataFormatException, GeneralSecurityException, IOException {
-        final ByteBuffer deserializer = ByteBuffer.wrap(attestationResult);
-        final byte version = deserializer.get();
-        if (version > PROTOCOL_VERSION) {
-            throw new GeneralSecurityException("invalid protocol version: " + version);
-        } else if (version < PROTOCOL_VERSION_MINIMUM) {
-            throw new GeneralSecurityException("Auditee protocol version too old: " + version);
-        }
-
-        final short compressedChainLength = deserializer.getShort();
-        final byte[] compressedChain = new byte[compressedChainLength];
-        deserializer.get(compressedChain);
-
-        final Certificate[] certificates;
-        final int dictionary = R.raw.deflate_dictionary_3;
-        try (final InputStream stream = context.getResources().openRawResource(dictionary)) {
-            certificates = decodeChain(ByteStreams.toByteArray(stream), compressedChain);
-        }
-
-        final byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
-        deserializer.get(fingerprint);
-
-        final int osEnforcedFlags = deserializer.getInt();
-        if ((osEnforcedFlags & ~OS_ENFORCED_FLAGS_ALL) != 0) {
-            Log.w(TAG, "unknown OS enforced flag set (flags: " + Integer.toBinaryString(osEnforcedFlags) + ")");
-        }
-        final boolean userProfileSecure = (osEnforcedFlags & OS_ENFORCED_FLAGS_USER_PROFILE_SECURE) != 0;
-        final boolean accessibility = (osEnforcedFlags & OS_ENFORCED_FLAGS_ACCESSIBILITY) != 0;
-        final boolean deviceAdmin = (osEnforcedFlags & OS_ENFORCED_FLAGS_DEVICE_ADMIN) != 0;
-        final boolean deviceAdminNonSystem = (osEnforcedFlags & OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM) != 0;
-        final boolean adbEnabled = (osEnforcedFlags & OS_ENFORCED_FLAGS_ADB_ENABLED) != 0;
-        final boolean addUsersWhenLocked = (osEnforcedFlags & OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED) != 0;
-        final boolean enrolledBiometrics = (osEnforcedFlags & OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS) != 0;
-        final boolean denyNewUsb = (osEnforcedFlags & OS_ENFORCED_FLAGS_DENY_NEW_USB) != 0;
-        final boolean oemUnlockAllowed = (osEnforcedFlags & OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED) != 0;
-        final boolean systemUser = (osEnforcedFlags & OS_ENFORCED_FLAGS_SYSTEM_USER) != 0;
-
-        if (deviceAdminNonSystem && !deviceAdmin) {
-            throw new GeneralSecurityException("invalid device administrator state");
-        }
-
-        final int signatureLength = deserializer.remaining();
-        final byte[] signature = new byte[signatureLength];
-        deserializer.get(signature);
-
-        deserializer.rewind();
-        deserializer.limit(deserializer.capacity() - signature.length);
-
-        final byte[] challenge = Arrays.copyOfRange(challengeMessage, 1 + CHALLENGE_LENGTH, 1 + CHALLENGE_LENGTH * 2);
-        return verify(context, fingerprint, challenge, deserializer.asReadOnlyBuffer(), signature,
-                certificates, userProfileSecure, accessibility, deviceAdmin, deviceAdminNonSystem,
-                adbEnabled, addUsersWhenLocked, enrolledBiometrics, denyNewUsb, oemUnlockAllowed,
-                systemUser);
+        return new VerificationResult(verification.strong, teeEnforced.toString(), osEnforced.toString(), history.toString());
     }
 
     static class AttestationResult {
@@ -1537,10 +687,8 @@ class AttestationProtocol {
             }
 
             // sanity check on the device being verified before sending it off to the verifying device
-            final Verified verified = verifyStateless(attestationCertificates, challenge, hasPersistentKey,
-                    generateCertificate(context.getResources(), R.raw.google_root_0),
-                    generateCertificate(context.getResources(), R.raw.google_root_1),
-                    generateCertificate(context.getResources(), R.raw.google_root_2));
+            final Verified verified = getStatelessVerifier(context)
+                    .verifyStateless(attestationCertificates, challenge, hasPersistentKey);
 
             // OS-enforced checks and information
 
@@ -1601,28 +749,6 @@ class AttestationProtocol {
 
             // Serialization
 
-            final ByteBuffer serializer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
-
-            serializer.put(version);
-
-            final byte[] compressed;
-            final int dictionary = R.raw.deflate_dictionary_3;
-            try (final InputStream stream = context.getResources().openRawResource(dictionary)) {
-                compressed = encodeChain(ByteStreams.toByteArray(stream), attestationCertificates);
-            }
-
-            if (compressed.length > Short.MAX_VALUE) {
-                throw new RuntimeException("compressed chain too long");
-            }
-
-            serializer.putShort((short) compressed.length);
-            serializer.put(compressed);
-
-            if (fingerprint.length != FINGERPRINT_LENGTH) {
-                throw new RuntimeException("fingerprint length mismatch");
-            }
-            serializer.put(fingerprint);
-
             int osEnforcedFlags = OS_ENFORCED_FLAGS_NONE;
             if (userProfileSecure) {
                 osEnforcedFlags |= OS_ENFORCED_FLAGS_USER_PROFILE_SECURE;
@@ -1654,21 +780,11 @@ class AttestationProtocol {
             if (systemUser) {
                 osEnforcedFlags |= OS_ENFORCED_FLAGS_SYSTEM_USER;
             }
-            serializer.putInt(osEnforcedFlags);
-
-            final ByteBuffer message = serializer.duplicate();
-            message.flip();
 
             final Signature sig = Signature.getInstance(SIGNATURE_ALGORITHM);
             sig.initSign((PrivateKey) keyStore.getKey(persistentKeystoreAlias, null));
-            sig.update(message);
-            final byte[] signature = sig.sign();
-
-            serializer.put(signature);
-
-            serializer.flip();
-            final byte[] serialized = new byte[serializer.remaining()];
-            serializer.get(serialized);
+            final byte[] serialized = getAttestationSerializer(context.getResources()).serialize(
+                    version, attestationCertificates, fingerprint, osEnforcedFlags, sig);
 
             return new AttestationResult(!hasPersistentKey, serialized);
         } catch (final GeneralSecurityException | IOException e) {
@@ -1726,17 +842,11 @@ class AttestationProtocol {
         deleteKey(keyStore, statePrefix + KEYSTORE_ALIAS_PERSISTENT_PREFIX + index);
     }
 
-    static void clearAuditor(final Context context) {
+    static void clearAuditor(final Context context) throws IOException {
         PreferenceManager.getDefaultSharedPreferences(context)
                 .edit().remove(KEY_CHALLENGE_INDEX).apply();
 
-        final File dir = new File(context.getFilesDir().getParent() + "/shared_prefs/");
-        for (final String file : dir.list()) {
-            if (file.startsWith(PREFERENCES_DEVICE_PREFIX)) {
-                final String name = file.replace(".xml", "");
-                Log.d(TAG, "delete SharedPreferences " + name);
-                context.deleteSharedPreferences(name);
-            }
-        }
+        clearPairingStore(context);
+        getVerificationHistory(context).clear();
     }
 }
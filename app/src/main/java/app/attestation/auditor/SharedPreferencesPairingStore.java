@@ -0,0 +1,189 @@
+package app.attestation.auditor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.File;
+import java.io.IOException;
+
+import app.attestation.auditor.attestation.Attestation;
+import app.attestation.auditor.verifier.Pairing;
+import app.attestation.auditor.verifier.PairingStore;
+
+// Pairings were stored in a SharedPreferences file per Auditee before moving to FilePairingStore
+// and this is only used to migrate them.
+class SharedPreferencesPairingStore implements PairingStore {
+    private static final String TAG = "SharedPreferencesPairingStore";
+
+    // Per-Auditee preferences
+    private static final String PREFERENCES_DEVICE_PREFIX = "device-";
+    private static final String KEY_PINNED_CERTIFICATE = "pinned_certificate_";
+    private static final String KEY_PINNED_CERTIFICATE_LENGTH = "pinned_certificate_length";
+    private static final String KEY_PINNED_CHAIN_DIGEST = "pinned_chain_digest";
+    private static final String KEY_PINNED_PERSISTENT_KEY = "pinned_persistent_key";
+    private static final String KEY_PINNED_VERIFIED_BOOT_KEY = "pinned_verified_boot_key";
+    private static final String KEY_PINNED_OS_VERSION = "pinned_os_version";
+    private static final String KEY_PINNED_OS_PATCH_LEVEL = "pinned_os_patch_level";
+    private static final String KEY_PINNED_VENDOR_PATCH_LEVEL = "pinned_vendor_patch_level";
+    private static final String KEY_PINNED_BOOT_PATCH_LEVEL = "pinned_boot_patch_level";
+    private static final String KEY_PINNED_APP_VERSION = "pinned_app_version";
+    private static final String KEY_PINNED_APP_VARIANT = "pinned_app_variant";
+    private static final String KEY_PINNED_SECURITY_LEVEL = "pinned_security_level";
+    private static final String KEY_VERIFIED_TIME_FIRST = "verified_time_first";
+    private static final String KEY_VERIFIED_TIME_LAST = "verified_time_last";
+
+    private final Context context;
+
+    SharedPreferencesPairingStore(final Context context) {
+        this.context = context;
+    }
+
+    private SharedPreferences getPreferences(final byte[] fingerprint) {
+        return context.getSharedPreferences(
+                PREFERENCES_DEVICE_PREFIX + BaseEncoding.base16().encode(fingerprint),
+                Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public Pairing load(final byte[] fingerprint) {
+        final SharedPreferences preferences = getPreferences(fingerprint);
+        if (!preferences.contains(KEY_PINNED_CERTIFICATE_LENGTH)) {
+            return null;
+        }
+
+        final byte[][] certificates = new byte[preferences.getInt(KEY_PINNED_CERTIFICATE_LENGTH, 0)][];
+        for (int i = 0; i < certificates.length; i++) {
+            certificates[i] = BaseEncoding.base64().decode(preferences.getString(KEY_PINNED_CERTIFICATE + i, ""));
+        }
+
+        return new Pairing(certificates,
+                decodeOptional(preferences.getString(KEY_PINNED_CHAIN_DIGEST, null)),
+                decodeOptional(preferences.getString(KEY_PINNED_PERSISTENT_KEY, null)),
+                preferences.getString(KEY_PINNED_VERIFIED_BOOT_KEY, null),
+                preferences.getInt(KEY_PINNED_OS_VERSION, Integer.MAX_VALUE),
+                preferences.getInt(KEY_PINNED_OS_PATCH_LEVEL, Integer.MAX_VALUE),
+                preferences.getInt(KEY_PINNED_VENDOR_PATCH_LEVEL, 0),
+                preferences.getInt(KEY_PINNED_BOOT_PATCH_LEVEL, 0),
+                preferences.getInt(KEY_PINNED_APP_VERSION, Integer.MAX_VALUE),
+                preferences.getInt(KEY_PINNED_APP_VARIANT, 0),
+                preferences.getInt(KEY_PINNED_SECURITY_LEVEL, Attestation.KM_SECURITY_LEVEL_TRUSTED_ENVIRONMENT),
+                preferences.getLong(KEY_VERIFIED_TIME_FIRST, 0),
+                preferences.getLong(KEY_VERIFIED_TIME_LAST, 0));
+    }
+
+    @Override
+    public void store(final byte[] fingerprint, final Pairing pairing) {
+        final SharedPreferences.Editor editor = getPreferences(fingerprint).edit();
+
+        editor.putInt(KEY_PINNED_CERTIFICATE_LENGTH, pairing.certificates.length);
+        for (int i = 0; i < pairing.certificates.length; i++) {
+            editor.putString(KEY_PINNED_CERTIFICATE + i, BaseEncoding.base64().encode(pairing.certificates[i]));
+        }
+        putPinned(editor, pairing);
+        editor.putLong(KEY_VERIFIED_TIME_FIRST, pairing.verifiedTimeFirst);
+
+        editor.apply();
+    }
+
+    @Override
+    public void update(final byte[] fingerprint, final Pairing pairing) {
+        final SharedPreferences preferences = getPreferences(fingerprint);
+        if (!preferences.contains(KEY_PINNED_CERTIFICATE_LENGTH)) {
+            return;
+        }
+        final SharedPreferences.Editor editor = preferences.edit();
+        putPinned(editor, pairing);
+        editor.apply();
+    }
+
+    /**
+     * Moves every per-Auditee preferences file into the target store one at a time, deleting each
+     * file once its pairing is stored so that an interrupted migration resumes where it stopped.
+     * A pairing that fails to migrate is logged and kept for the next attempt without holding
+     * back the others.
+     *
+     * @return true if no per-Auditee preferences files are left
+     */
+    static boolean migrate(final Context context, final PairingStore target) {
+        final String[] files = new File(context.getFilesDir().getParent() + "/shared_prefs/").list();
+        if (files == null) {
+            return true;
+        }
+        boolean complete = true;
+        final SharedPreferencesPairingStore source = new SharedPreferencesPairingStore(context);
+        for (final String file : files) {
+            if (!file.startsWith(PREFERENCES_DEVICE_PREFIX) || !file.endsWith(".xml")) {
+                continue;
+            }
+            final String name = file.substring(0, file.length() - ".xml".length());
+            final byte[] fingerprint;
+            try {
+                fingerprint = BaseEncoding.base16().decode(name.substring(PREFERENCES_DEVICE_PREFIX.length()));
+            } catch (final IllegalArgumentException e) {
+                // can never be loaded, so it would otherwise be left behind forever
+                Log.w(TAG, "deleting invalid pairing " + name);
+                context.deleteSharedPreferences(name);
+                continue;
+            }
+            try {
+                final Pairing pairing = source.load(fingerprint);
+                if (pairing != null) {
+                    target.store(fingerprint, pairing);
+                }
+            } catch (final IOException | RuntimeException e) {
+                // one bad pairing must not make the store unusable, so it is left for a later attempt
+                Log.w(TAG, "skipping pairing " + name + " that failed to migrate", e);
+                complete = false;
+                continue;
+            }
+            Log.d(TAG, "migrated " + name);
+            // also drops the parsed preferences from the in-memory cache
+            context.deleteSharedPreferences(name);
+        }
+        return complete;
+    }
+
+    /**
+     * Deletes the per-Auditee preferences files without migrating them.
+     */
+    static void clear(final Context context) {
+        final String[] files = new File(context.getFilesDir().getParent() + "/shared_prefs/").list();
+        if (files == null) {
+            return;
+        }
+        for (final String file : files) {
+            if (file.startsWith(PREFERENCES_DEVICE_PREFIX) && file.endsWith(".xml")) {
+                context.deleteSharedPreferences(file.substring(0, file.length() - ".xml".length()));
+            }
+        }
+    }
+
+    private static byte[] decodeOptional(final String encoded) {
+        return encoded != null ? BaseEncoding.base64().decode(encoded) : null;
+    }
+
+    private static void putPinned(final SharedPreferences.Editor editor, final Pairing pairing) {
+        if (pairing.chainDigest != null) {
+            editor.putString(KEY_PINNED_CHAIN_DIGEST, BaseEncoding.base64().encode(pairing.chainDigest));
+        }
+        if (pairing.persistentKey != null) {
+            editor.putString(KEY_PINNED_PERSISTENT_KEY, BaseEncoding.base64().encode(pairing.persistentKey));
+        }
+        editor.putString(KEY_PINNED_VERIFIED_BOOT_KEY, pairing.verifiedBootKey);
+        editor.putInt(KEY_PINNED_OS_VERSION, pairing.osVersion);
+        editor.putInt(KEY_PINNED_OS_PATCH_LEVEL, pairing.osPatchLevel);
+        if (pairing.vendorPatchLevel != 0) {
+            editor.putInt(KEY_PINNED_VENDOR_PATCH_LEVEL, pairing.vendorPatchLevel);
+        }
+        if (pairing.bootPatchLevel != 0) {
+            editor.putInt(KEY_PINNED_BOOT_PATCH_LEVEL, pairing.bootPatchLevel);
+        }
+        editor.putInt(KEY_PINNED_APP_VERSION, pairing.appVersion);
+        editor.putInt(KEY_PINNED_APP_VARIANT, pairing.appVariant);
+        editor.putInt(KEY_PINNED_SECURITY_LEVEL, pairing.securityLevel);
+        editor.putLong(KEY_VERIFIED_TIME_LAST, pairing.verifiedTimeLast);
+    }
+}
@@ -0,0 +1,37 @@
+plugins {
+    java
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(11))
+    }
+}
+
+sourceSets {
+    main {
+        resources {
+            srcDir(rootProject.file("samples/3"))
+        }
+    }
+}
+
+tasks.processResources {
+    from(rootProject.file("app/src/main/res/raw/deflate_dictionary_3.bin"))
+}
+
+dependencies {
+    implementation(project(":verifier"))
+    implementation("org.openjdk.jmh:jmh-core:1.36")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.36")
+}
+
+// ./gradlew :benchmark:jmh runs every benchmark, extra JMH options can be passed with
+// -Pjmh="<options>" such as -Pjmh="ChainCodec -f 1"
+tasks.register<JavaExec>("jmh") {
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args("-bm", "thrpt,sample", "-prof", "gc", "-rf", "json",
+            "-rff", layout.buildDirectory.file("jmh-result.json").get().asFile.path)
+    (findProperty("jmh") as String?)?.let { args(it.split(" ")) }
+}
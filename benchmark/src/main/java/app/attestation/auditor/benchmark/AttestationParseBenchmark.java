@@ -0,0 +1,52 @@
+package app.attestation.auditor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import app.attestation.auditor.attestation.Attestation;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class AttestationParseBenchmark {
+    @Param({Samples.CHAIN_TEE, Samples.CHAIN_STRONGBOX})
+    public String chain;
+
+    private X509Certificate certificate;
+
+    @Setup
+    public void setup() throws CertificateException, IOException {
+        certificate = (X509Certificate) Samples.chain(chain)[0];
+    }
+
+    @Benchmark
+    public Attestation attestation() throws CertificateParsingException {
+        return new Attestation(certificate);
+    }
+
+    @Benchmark
+    public Attestation attestationLazy() throws CertificateParsingException {
+        return new Attestation(certificate, true);
+    }
+
+    // lazy parsing with one field decoded, as done for each patch level check
+    @Benchmark
+    public Integer attestationLazyOsPatchLevel() throws CertificateParsingException {
+        return new Attestation(certificate, true).getTeeEnforced().getOsPatchLevel();
+    }
+}
@@ -0,0 +1,67 @@
+package app.attestation.auditor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+import app.attestation.auditor.verifier.AttestationSerializer;
+import app.attestation.auditor.verifier.AttestationVerifier;
+import app.attestation.auditor.verifier.ChainCodec;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class AttestationSerializerBenchmark {
+    @Param({Samples.CHAIN_TEE, Samples.CHAIN_STRONGBOX})
+    public String chain;
+
+    private ChainCodec codec;
+    private AttestationSerializer serializer;
+    private Certificate[] certificates;
+    private byte[] fingerprint;
+    private Signature signer;
+
+    @Setup
+    public void setup() throws GeneralSecurityException, IOException {
+        codec = new ChainCodec(Samples.dictionary());
+        serializer = new AttestationSerializer(codec);
+        certificates = Samples.chain(chain);
+        fingerprint = AttestationVerifier.getFingerprint(certificates[0]);
+
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        final PrivateKey privateKey = generator.generateKeyPair().getPrivate();
+        signer = Signature.getInstance(AttestationVerifier.SIGNATURE_ALGORITHM);
+        signer.initSign(privateKey);
+    }
+
+    @TearDown
+    public void tearDown() {
+        codec.close();
+    }
+
+    // signing resets the signature for the next message with the same key
+    @Benchmark
+    public byte[] serialize() throws GeneralSecurityException {
+        return serializer.serialize(AttestationVerifier.PROTOCOL_VERSION, certificates,
+                fingerprint, AttestationVerifier.OS_ENFORCED_FLAGS_USER_PROFILE_SECURE, signer);
+    }
+}
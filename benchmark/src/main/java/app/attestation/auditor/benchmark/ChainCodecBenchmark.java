@@ -0,0 +1,56 @@
+package app.attestation.auditor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import app.attestation.auditor.verifier.ChainCodec;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ChainCodecBenchmark {
+    @Param({Samples.CHAIN_TEE, Samples.CHAIN_STRONGBOX})
+    public String chain;
+
+    private ChainCodec codec;
+    private Certificate[] certificates;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws GeneralSecurityException, IOException {
+        codec = new ChainCodec(Samples.dictionary());
+        certificates = Samples.chain(chain);
+        compressed = codec.encode(certificates);
+    }
+
+    @TearDown
+    public void tearDown() {
+        codec.close();
+    }
+
+    @Benchmark
+    public Certificate[] decode() throws DataFormatException, GeneralSecurityException {
+        return codec.decode(compressed);
+    }
+
+    @Benchmark
+    public byte[] encode() throws GeneralSecurityException {
+        return codec.encode(certificates);
+    }
+}
@@ -0,0 +1,101 @@
+package app.attestation.auditor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import app.attestation.auditor.verifier.AttestationVerifier;
+import app.attestation.auditor.verifier.CryptoBackend;
+import app.attestation.auditor.verifier.CryptoBackendSelector;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CryptoBackendBenchmark {
+    @Param({"JCA", "BouncyCastle"})
+    public String backend;
+
+    @Param({Samples.CHAIN_TEE, Samples.CHAIN_STRONGBOX})
+    public String chain;
+
+    private CryptoBackend cryptoBackend;
+    private byte[][] encoded;
+    private X509Certificate[] certificates;
+    private KeyPair keyPair;
+    private byte[] message;
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws GeneralSecurityException, IOException {
+        if (CryptoBackend.JCA.getName().equals(backend)) {
+            cryptoBackend = CryptoBackend.JCA;
+        } else if (CryptoBackend.BOUNCY_CASTLE.getName().equals(backend)) {
+            cryptoBackend = CryptoBackend.BOUNCY_CASTLE;
+        } else {
+            throw new IllegalArgumentException("unknown backend " + backend);
+        }
+        if (!CryptoBackendSelector.isConformant(cryptoBackend, Arrays.asList(
+                Samples.chain(Samples.CHAIN_TEE), Samples.chain(Samples.CHAIN_STRONGBOX)))) {
+            throw new IllegalStateException(backend + " does not conform");
+        }
+
+        final Certificate[] chain = Samples.chain(this.chain);
+        encoded = new byte[chain.length][];
+        certificates = new X509Certificate[chain.length];
+        for (int i = 0; i < chain.length; i++) {
+            encoded[i] = chain[i].getEncoded();
+            certificates[i] = cryptoBackend.generateCertificate(encoded[i], 0, encoded[i].length);
+        }
+
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        keyPair = generator.generateKeyPair();
+        message = new byte[AttestationVerifier.MAX_MESSAGE_SIZE];
+        final Signature signer = Signature.getInstance(AttestationVerifier.SIGNATURE_ALGORITHM);
+        signer.initSign(keyPair.getPrivate());
+        signer.update(message);
+        signature = signer.sign();
+    }
+
+    @Benchmark
+    public void parseChain(final Blackhole blackhole) throws GeneralSecurityException {
+        for (final byte[] certificate : encoded) {
+            blackhole.consume(cryptoBackend.generateCertificate(certificate, 0, certificate.length));
+        }
+    }
+
+    // The root is self-signed, so it is checked against its own key.
+    @Benchmark
+    public void certificateSignatures() throws GeneralSecurityException {
+        for (int i = 0; i < certificates.length; i++) {
+            cryptoBackend.verifyCertificate(certificates[i],
+                    certificates[Math.min(i + 1, certificates.length - 1)].getPublicKey());
+        }
+    }
+
+    @Benchmark
+    public boolean messageSignature() throws GeneralSecurityException {
+        return cryptoBackend.verifySignature(keyPair.getPublic(), ByteBuffer.wrap(message), signature);
+    }
+}
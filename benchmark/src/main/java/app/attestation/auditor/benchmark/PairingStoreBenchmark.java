@@ -0,0 +1,99 @@
+package app.attestation.auditor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import app.attestation.auditor.verifier.FilePairingStore;
+import app.attestation.auditor.verifier.Pairing;
+
+/**
+ * Durable updates of the pinned fields after a verification, by one Auditee at a time and by many
+ * at once, where the writes share commits of the write-ahead log.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PairingStoreBenchmark {
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int DIGEST_LENGTH = 32;
+
+    @Param({"0", "1000000"})
+    public long commitWindowNanos;
+
+    private Path directory;
+    private FilePairingStore store;
+    private byte[][] certificates;
+    private final AtomicInteger nextDevice = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Device {
+        byte[] fingerprint;
+        long verifiedTime;
+
+        @Setup
+        public void setup(final PairingStoreBenchmark benchmark) throws IOException {
+            fingerprint = new byte[FINGERPRINT_LENGTH];
+            fingerprint[0] = (byte) benchmark.nextDevice.getAndIncrement();
+            benchmark.store.store(fingerprint, benchmark.pairing(verifiedTime));
+        }
+    }
+
+    @Setup
+    public void setup() throws GeneralSecurityException, IOException {
+        directory = Files.createTempDirectory("pairings");
+        store = new FilePairingStore(directory.resolve("pairings.bin"),
+                directory.resolve("pinned_certificates.bin"), commitWindowNanos);
+        final Certificate[] chain = Samples.chain(Samples.CHAIN_TEE);
+        certificates = new byte[chain.length][];
+        for (int i = 0; i < chain.length; i++) {
+            certificates[i] = chain[i].getEncoded();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (final Path path : (Iterable<Path>) paths::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private Pairing pairing(final long verifiedTimeLast) {
+        return new Pairing(certificates, new byte[DIGEST_LENGTH], null, "00", 140000,
+                202301, 0, 0, 45, 0, 1, 0, verifiedTimeLast);
+    }
+
+    @Benchmark
+    public void update(final Device device) throws IOException {
+        store.update(device.fingerprint, pairing(++device.verifiedTime));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void updateConcurrent(final Device device) throws IOException {
+        store.update(device.fingerprint, pairing(++device.verifiedTime));
+    }
+}
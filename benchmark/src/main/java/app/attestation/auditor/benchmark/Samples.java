@@ -0,0 +1,68 @@
+package app.attestation.auditor.benchmark;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
+
+import app.attestation.auditor.verifier.AttestationVerifier;
+
+/**
+ * Real attestation chains from samples/3 and the deflate dictionary, bundled as resources.
+ */
+class Samples {
+    // Chains are 4 certificates: the attestation certificate, 2 intermediates and a Google root.
+    private static final int CHAIN_LENGTH = 4;
+    private static final int ROOT_COUNT = 3;
+
+    static final String CHAIN_TEE = "tee";
+    static final String CHAIN_STRONGBOX = "strongbox";
+
+    private static InputStream open(final String name) throws IOException {
+        final InputStream stream = Samples.class.getResourceAsStream("/" + name);
+        if (stream == null) {
+            throw new IOException("missing sample " + name);
+        }
+        return stream;
+    }
+
+    private static Certificate load(final String name) throws CertificateException, IOException {
+        try (final InputStream stream = open(name)) {
+            return AttestationVerifier.generateCertificate(stream);
+        }
+    }
+
+    static Certificate[] chain(final String chain) throws CertificateException, IOException {
+        final String prefix;
+        if (CHAIN_TEE.equals(chain)) {
+            prefix = "0_";
+        } else if (CHAIN_STRONGBOX.equals(chain)) {
+            prefix = "1_strongbox-0_";
+        } else {
+            throw new IllegalArgumentException("unknown chain " + chain);
+        }
+        final Certificate[] certificates = new Certificate[CHAIN_LENGTH];
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            certificates[i] = load(prefix + "cert-" + i + ".der.x509");
+        }
+        return certificates;
+    }
+
+    static List<Certificate> roots() throws CertificateException, IOException {
+        final List<Certificate> roots = new ArrayList<>();
+        for (int i = 0; i < ROOT_COUNT; i++) {
+            roots.add(load("2_google_root_" + i + ".der.x509"));
+        }
+        return roots;
+    }
+
+    static byte[] dictionary() throws IOException {
+        try (final InputStream stream = open("deflate_dictionary_3.bin")) {
+            return ByteStreams.toByteArray(stream);
+        }
+    }
+}
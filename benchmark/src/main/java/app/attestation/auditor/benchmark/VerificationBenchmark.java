@@ -0,0 +1,100 @@
+package app.attestation.auditor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import app.attestation.auditor.attestation.Attestation;
+import app.attestation.auditor.verifier.AttestationVerifier;
+import app.attestation.auditor.verifier.ChainCodec;
+import app.attestation.auditor.verifier.TrustAnchors;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class VerificationBenchmark {
+    @Param({Samples.CHAIN_TEE, Samples.CHAIN_STRONGBOX})
+    public String chain;
+
+    private CertificateFactory certificateFactory;
+    private ChainCodec codec;
+    private TrustAnchors trustAnchors;
+    private AttestationVerifier verifier;
+    private byte[][] encoded;
+    private Certificate[] certificates;
+    private byte[] challenge;
+
+    @Setup
+    public void setup() throws GeneralSecurityException, IOException {
+        certificateFactory = CertificateFactory.getInstance("X.509");
+        codec = new ChainCodec(Samples.dictionary());
+        trustAnchors = new TrustAnchors(Samples.roots());
+        verifier = AttestationVerifier.builder(trustAnchors).chainCodec(codec).build();
+        final Certificate[] chain = Samples.chain(this.chain);
+        encoded = new byte[chain.length][];
+        for (int i = 0; i < chain.length; i++) {
+            encoded[i] = chain[i].getEncoded();
+        }
+        challenge = new Attestation((X509Certificate) chain[0]).getAttestationChallenge();
+    }
+
+    // generateCertificate returns cached instances which remember their last successful
+    // verification, so every invocation gets uncached instances from generateCertificates to
+    // measure the full cost of checking a chain.
+    @Setup(Level.Invocation)
+    public void decodeChain() throws CertificateException {
+        certificates = new Certificate[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            certificates[i] = certificateFactory.generateCertificates(
+                    new ByteArrayInputStream(encoded[i])).iterator().next();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        codec.close();
+    }
+
+    // Validity periods are only checked for the leaf as in paired verification, since the sample
+    // roots and intermediates expire before the attestation certificates do.
+    @Benchmark
+    public void certificateSignatures() throws GeneralSecurityException {
+        AttestationVerifier.verifyCertificateSignatures(certificates, true);
+    }
+
+    @Benchmark
+    public boolean trustAnchor() throws GeneralSecurityException {
+        return trustAnchors.contains(certificates[certificates.length - 1]);
+    }
+
+    // The samples come from Auditor version 45, which is below the current minimum, so this
+    // measures the stateless checks up to the rejection of the app version together with the
+    // cost of the resulting exception.
+    @Benchmark
+    public Object verifyStateless() {
+        try {
+            return verifier.verifyStateless(certificates, challenge, true);
+        } catch (final GeneralSecurityException e) {
+            return e;
+        }
+    }
+}
@@ -7,3 +7,5 @@ dependencyResolutionManagement {
 }
 rootProject.name = "Auditor"
 include(":app")
+include(":benchmark")
+include(":verifier")
@@ -0,0 +1,23 @@
+plugins {
+    `java-library`
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(11))
+    }
+}
+
+dependencies {
+    api("com.google.guava:guava:31.1-android")
+    api("org.bouncycastle:bcprov-jdk18on:1.73")
+}
+
+// ./gradlew :verifier:deviceDatabase regenerates the bundled device database after editing
+// devices.txt
+tasks.register<JavaExec>("deviceDatabase") {
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("app.attestation.auditor.verifier.DeviceDatabaseCompiler")
+    args(file("devices.txt").path,
+            file("src/main/resources/app/attestation/auditor/verifier/devices.bin").path)
+}
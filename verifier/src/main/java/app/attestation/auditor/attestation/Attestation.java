@@ -16,14 +16,10 @@
 
 package app.attestation.auditor.attestation;
 
-import androidx.annotation.NonNull;
-
 import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.BaseEncoding;
 
-import org.bouncycastle.asn1.ASN1Sequence;
-
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.Set;
@@ -68,7 +64,8 @@ public class Attestation {
     private final byte[] uniqueId;
     private final AuthorizationList softwareEnforced;
     private final AuthorizationList teeEnforced;
-    private final Set<String> unexpectedExtensionOids;
+    private final X509Certificate x509Cert;
+    private Set<String> unexpectedExtensionOids;
 
     /**
      * Constructs an {@code Attestation} object from the provided {@link X509Certificate},
@@ -81,21 +78,59 @@ public class Attestation {
      *     attestation extension can not be parsed.
      */
     public Attestation(X509Certificate x509Cert) throws CertificateParsingException {
-        ASN1Sequence seq = getAttestationSequence(x509Cert);
+        this(x509Cert, false);
+    }
+
+    /**
+     * Constructs an {@code Attestation} object with the authorization lists parsed lazily when
+     * {@code lazy} is true, so that only the fields that are read get decoded.
+     *
+     * @see AuthorizationList#AuthorizationList(org.bouncycastle.asn1.ASN1Encodable, boolean, boolean)
+     */
+    public Attestation(X509Certificate x509Cert, boolean lazy) throws CertificateParsingException {
+        this(x509Cert, getAttestationExtension(x509Cert), lazy);
+    }
+
+    private Attestation(X509Certificate x509Cert, byte[] attestationExtensionBytes, boolean lazy)
+            throws CertificateParsingException {
+        this.x509Cert = x509Cert;
+        // the extension value is an octet string wrapping the DER encoded KeyDescription, with
+        // the fields read in the order of the *_INDEX constants
+        DerReader seq = new DerReader(attestationExtensionBytes).readOctetStringContent().readSequence();
 
-        attestationVersion = Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(ATTESTATION_VERSION_INDEX));
-        attestationSecurityLevel = Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(ATTESTATION_SECURITY_LEVEL_INDEX));
-        keymasterVersion = Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(KEYMASTER_VERSION_INDEX));
-        keymasterSecurityLevel = Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(KEYMASTER_SECURITY_LEVEL_INDEX));
+        attestationVersion = seq.readInteger();
+        attestationSecurityLevel = seq.readInteger();
+        keymasterVersion = seq.readInteger();
+        keymasterSecurityLevel = seq.readInteger();
 
-        attestationChallenge =
-                Asn1Utils.getByteArrayFromAsn1(seq.getObjectAt(Attestation.ATTESTATION_CHALLENGE_INDEX));
+        attestationChallenge = seq.readOctetString();
 
-        uniqueId = Asn1Utils.getByteArrayFromAsn1(seq.getObjectAt(Attestation.UNIQUE_ID_INDEX));
+        uniqueId = seq.readOctetString();
 
-        softwareEnforced = new AuthorizationList(seq.getObjectAt(SW_ENFORCED_INDEX));
-        teeEnforced = new AuthorizationList(seq.getObjectAt(TEE_ENFORCED_INDEX));
-        unexpectedExtensionOids = retrieveUnexpectedExtensionOids(x509Cert);
+        softwareEnforced = new AuthorizationList(seq.readSequence(), true, lazy);
+        teeEnforced = new AuthorizationList(seq.readSequence(), true, lazy);
+    }
+
+    /**
+     * Returns whether the certificate has an attestation extension, without parsing it.
+     */
+    public static boolean hasKeyDescription(X509Certificate x509Cert) {
+        return findAttestationExtension(x509Cert) != null;
+    }
+
+    /**
+     * Parses the attestation extension of the certificate like the constructor, but returns null
+     * rather than throwing {@link KeyDescriptionMissingException} when there is none.
+     *
+     * @throws CertificateParsingException if the attestation extension can not be parsed.
+     */
+    public static Attestation parse(X509Certificate x509Cert, boolean lazy)
+            throws CertificateParsingException {
+        byte[] attestationExtensionBytes = findAttestationExtension(x509Cert);
+        if (attestationExtensionBytes == null) {
+            return null;
+        }
+        return new Attestation(x509Cert, attestationExtensionBytes, lazy);
     }
 
     public static String securityLevelToString(int attestationSecurityLevel) {
@@ -145,10 +180,13 @@ public class Attestation {
     }
 
     public Set<String> getUnexpectedExtensionOids() {
+        // computed on first use since most callers never read it
+        if (unexpectedExtensionOids == null) {
+            unexpectedExtensionOids = retrieveUnexpectedExtensionOids(x509Cert);
+        }
         return unexpectedExtensionOids;
     }
 
-    @NonNull
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -178,20 +216,30 @@ public class Attestation {
         return s.toString();
     }
 
-    public class KeyDescriptionMissingException extends CertificateParsingException {
+    public static class KeyDescriptionMissingException extends CertificateParsingException {
+        private static final long serialVersionUID = 1L;
+
         private KeyDescriptionMissingException(final String message) {
             super(message);
         }
     }
 
-    private ASN1Sequence getAttestationSequence(X509Certificate x509Cert)
-            throws CertificateParsingException {
+    private static byte[] findAttestationExtension(X509Certificate x509Cert) {
         byte[] attestationExtensionBytes = x509Cert.getExtensionValue(KEY_DESCRIPTION_OID);
         if (attestationExtensionBytes == null || attestationExtensionBytes.length == 0) {
+            return null;
+        }
+        return attestationExtensionBytes;
+    }
+
+    private static byte[] getAttestationExtension(X509Certificate x509Cert)
+            throws KeyDescriptionMissingException {
+        byte[] attestationExtensionBytes = findAttestationExtension(x509Cert);
+        if (attestationExtensionBytes == null) {
             throw new KeyDescriptionMissingException(
                     "Did not find extension with OID " + KEY_DESCRIPTION_OID);
         }
-        return Asn1Utils.getAsn1SequenceFromBytes(attestationExtensionBytes);
+        return attestationExtensionBytes;
     }
 
     Set<String> retrieveUnexpectedExtensionOids(X509Certificate x509Cert) {
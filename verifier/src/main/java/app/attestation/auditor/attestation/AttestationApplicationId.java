@@ -14,43 +14,29 @@
 
 package app.attestation.auditor.attestation;
 
-import androidx.annotation.NonNull;
-
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.ASN1Set;
 
 import java.security.cert.CertificateParsingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
-import android.content.Context;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
-import android.content.pm.Signature;
 
 public class AttestationApplicationId implements java.lang.Comparable<AttestationApplicationId> {
-    private static final int PACKAGE_INFOS_INDEX = 0;
-    private static final int SIGNATURE_DIGESTS_INDEX = 1;
-
     private final List<AttestationPackageInfo> packageInfos;
     private final List<byte[]> signatureDigests;
 
     public AttestationApplicationId(ASN1Encodable asn1Encodable)
             throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence)) {
-            throw new CertificateParsingException(
-                    "Expected sequence for AttestationApplicationId, found "
-                            + asn1Encodable.getClass().getName());
-        }
+        this(DerReader.of(asn1Encodable).readSequence());
+    }
 
-        ASN1Sequence sequence = (ASN1Sequence) asn1Encodable;
-        packageInfos = parseAttestationPackageInfos(sequence.getObjectAt(PACKAGE_INFOS_INDEX));
+    // Fields are read in order: the set of package infos and the set of signature digests
+    AttestationApplicationId(DerReader sequence) throws CertificateParsingException {
+        packageInfos = parseAttestationPackageInfos(sequence.readSet());
         // The infos must be sorted, the implementation of Comparable relies on it.
         packageInfos.sort(null);
-        signatureDigests = parseSignatures(sequence.getObjectAt(SIGNATURE_DIGESTS_INDEX));
+        signatureDigests = parseSignatures(sequence.readSet());
         // The digests must be sorted. the implementation of Comparable relies on it
         signatureDigests.sort(new ByteArrayComparator());
     }
@@ -63,7 +49,6 @@ public class AttestationApplicationId implements java.lang.Comparable<Attestatio
         return signatureDigests;
     }
 
-    @NonNull
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -109,34 +94,19 @@ public class AttestationApplicationId implements java.lang.Comparable<Attestatio
                 && (0 == compareTo((AttestationApplicationId) o));
     }
 
-    private List<AttestationPackageInfo> parseAttestationPackageInfos(ASN1Encodable asn1Encodable)
+    private List<AttestationPackageInfo> parseAttestationPackageInfos(DerReader set)
             throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Set)) {
-            throw new CertificateParsingException(
-                    "Expected set for AttestationApplicationsInfos, found "
-                            + asn1Encodable.getClass().getName());
-        }
-
-        ASN1Set set = (ASN1Set) asn1Encodable;
         List<AttestationPackageInfo> result = new ArrayList<>();
-        for (ASN1Encodable e : set) {
-            result.add(new AttestationPackageInfo(e));
+        while (set.hasRemaining()) {
+            result.add(new AttestationPackageInfo(set.readSequence()));
         }
         return result;
     }
 
-    private List<byte[]> parseSignatures(ASN1Encodable asn1Encodable)
-            throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Set)) {
-            throw new CertificateParsingException("Expected set for Signature digests, found "
-                    + asn1Encodable.getClass().getName());
-        }
-
-        ASN1Set set = (ASN1Set) asn1Encodable;
+    private List<byte[]> parseSignatures(DerReader set) throws CertificateParsingException {
         List<byte[]> result = new ArrayList<>();
-
-        for (ASN1Encodable e : set) {
-            result.add(Asn1Utils.getByteArrayFromAsn1(e));
+        while (set.hasRemaining()) {
+            result.add(set.readOctetString());
         }
         return result;
     }
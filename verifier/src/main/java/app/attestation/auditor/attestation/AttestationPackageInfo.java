@@ -14,18 +14,11 @@
 
 package app.attestation.auditor.attestation;
 
-import androidx.annotation.NonNull;
-
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
 
-import java.io.UnsupportedEncodingException;
 import java.security.cert.CertificateParsingException;
 
 public class AttestationPackageInfo implements java.lang.Comparable<AttestationPackageInfo> {
-    private static final int PACKAGE_NAME_INDEX = 0;
-    private static final int VERSION_INDEX = 1;
-
     private final String packageName;
     private final long version;
 
@@ -35,22 +28,13 @@ public class AttestationPackageInfo implements java.lang.Comparable<AttestationP
     }
 
     public AttestationPackageInfo(ASN1Encodable asn1Encodable) throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence)) {
-            throw new CertificateParsingException(
-                    "Expected sequence for AttestationPackageInfo, found "
-                            + asn1Encodable.getClass().getName());
-        }
+        this(DerReader.of(asn1Encodable).readSequence());
+    }
 
-        ASN1Sequence sequence = (ASN1Sequence) asn1Encodable;
-        try {
-            packageName = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(
-                    sequence.getObjectAt(PACKAGE_NAME_INDEX));
-        } catch (UnsupportedEncodingException e) {
-            throw new CertificateParsingException(
-                    "Converting octet stream to String triggered an UnsupportedEncodingException",
-                    e);
-        }
-        version = Asn1Utils.getLongFromAsn1(sequence.getObjectAt(VERSION_INDEX));
+    // Fields are read in order: the package name and the version
+    AttestationPackageInfo(DerReader sequence) throws CertificateParsingException {
+        packageName = sequence.readUtf8OctetString();
+        version = sequence.readLong();
     }
 
     public String getPackageName() {
@@ -61,7 +45,6 @@ public class AttestationPackageInfo implements java.lang.Comparable<AttestationP
         return version;
     }
 
-    @NonNull
     @Override
     public String toString() {
         return "Package name: " + getPackageName() +
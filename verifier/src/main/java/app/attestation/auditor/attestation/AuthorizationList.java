@@ -24,31 +24,23 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
-import android.security.keystore.KeyProperties;
-import android.util.Log;
-
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Primitive;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.ASN1SequenceParser;
-import org.bouncycastle.asn1.ASN1TaggedObject;
-import org.bouncycastle.asn1.ASN1InputStream;
-
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+
 import java.security.cert.CertificateParsingException;
 import java.text.DateFormat;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.logging.Logger;
 
 import static com.google.common.base.Functions.forMap;
 import static com.google.common.collect.Collections2.transform;
 
-import androidx.annotation.NonNull;
-
 public class AuthorizationList {
+    private static final Logger logger = Logger.getLogger("Attestation");
+
     // Algorithm values.
     public static final int KM_ALGORITHM_RSA = 1;
     public static final int KM_ALGORITHM_EC = 3;
@@ -75,6 +67,13 @@ public class AuthorizationList {
     public static final int KM_DIGEST_SHA_2_384 = 5;
     public static final int KM_DIGEST_SHA_2_512 = 6;
 
+    // Padding names matching android.security.keystore.KeyProperties
+    private static final String ENCRYPTION_PADDING_NONE = "NoPadding";
+    private static final String ENCRYPTION_PADDING_RSA_OAEP = "OAEPPadding";
+    private static final String ENCRYPTION_PADDING_RSA_PKCS1 = "PKCS1Padding";
+    private static final String SIGNATURE_PADDING_RSA_PKCS1 = "PKCS1";
+    private static final String SIGNATURE_PADDING_RSA_PSS = "PSS";
+
     // Key origins.
     public static final int KM_ORIGIN_GENERATED = 0;
     public static final int KM_ORIGIN_IMPORTED = 2;
@@ -144,6 +143,51 @@ public class AuthorizationList {
     private static final int KM_TAG_VENDOR_PATCHLEVEL = KM_UINT | 718;
     private static final int KM_TAG_BOOT_PATCHLEVEL = KM_UINT | 719;
 
+    private static final int INITIAL_PENDING_CAPACITY = 16;
+
+    // Tags accepted in an authorization list, with the tag class removed
+    private static final int[] knownTags = {
+            KM_TAG_PURPOSE & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ALGORITHM & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_KEY_SIZE & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_DIGEST & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_PADDING & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_EC_CURVE & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_RSA_PUBLIC_EXPONENT & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ROLLBACK_RESISTANCE & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ACTIVE_DATETIME & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ORIGINATION_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_USAGE_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_NO_AUTH_REQUIRED & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_USER_AUTH_TYPE & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_AUTH_TIMEOUT & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ALLOW_WHILE_ON_BODY & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_TRUSTED_CONFIRMATION_REQUIRED & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ALL_APPLICATIONS & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_CREATION_DATETIME & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ORIGIN & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ROLLBACK_RESISTANT & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ROOT_OF_TRUST & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_OS_VERSION & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_OS_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_APPLICATION_ID & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_BRAND & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_DEVICE & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_PRODUCT & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_SERIAL & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_IMEI & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_MEID & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_MANUFACTURER & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_ATTESTATION_ID_MODEL & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_VENDOR_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK,
+            KM_TAG_BOOT_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK,
+    };
+
+    static {
+        Arrays.sort(knownTags);
+    }
+
     // Map for converting padding values to strings
     private static final ImmutableMap<Integer, String> paddingMap = ImmutableMap
             .<Integer, String> builder()
@@ -213,141 +257,225 @@ public class AuthorizationList {
     private boolean userPresenceRequired;
     private boolean confirmationRequired;
 
+    private final boolean strictParsing;
+    // Offsets of the entries not decoded yet when parsing lazily, with decoded entries removed
+    // by setting their tag to -1
+    private byte[] pendingBuffer;
+    private int[] pendingTags;
+    private int[] pendingOffsets;
+    private int[] pendingLimits;
+    private int pendingCount;
+
     public AuthorizationList(ASN1Encodable sequence) throws CertificateParsingException {
         this(sequence, true);
     }
 
     public AuthorizationList(ASN1Encodable sequence, boolean strictParsing) throws CertificateParsingException {
-        if (!(sequence instanceof ASN1Sequence)) {
-            throw new CertificateParsingException("Expected sequence for authorization list, found "
-                    + sequence.getClass().getName());
-        }
-
-        ASN1SequenceParser parser = ((ASN1Sequence) sequence).parser();
-        ASN1TaggedObject entry = parseAsn1TaggedObject(parser);
-        for (; entry != null; entry = parseAsn1TaggedObject(parser)) {
-            int tag = entry.getTagNo();
-            ASN1Primitive value = entry.getObject();
-            Log.i("Attestation", "Parsing tag: [" + tag + "], value: [" + value + "]");
-            switch (tag) {
-                default:
+        this(sequence, strictParsing, false);
+    }
+
+    /**
+     * @param lazy only record the entries and decode each of them when one of its getters is
+     *     first called. Unknown tags are still rejected here, but a malformed value is reported by
+     *     the getter as a {@link LazyParsingException}. Lazily parsed lists are not thread-safe.
+     */
+    public AuthorizationList(ASN1Encodable sequence, boolean strictParsing, boolean lazy)
+            throws CertificateParsingException {
+        this(DerReader.of(sequence).readSequence(), strictParsing, lazy);
+    }
+
+    AuthorizationList(DerReader sequence, boolean strictParsing, boolean lazy)
+            throws CertificateParsingException {
+        this.strictParsing = strictParsing;
+        if (lazy) {
+            pendingBuffer = sequence.buffer();
+            pendingTags = new int[INITIAL_PENDING_CAPACITY];
+            pendingOffsets = new int[INITIAL_PENDING_CAPACITY];
+            pendingLimits = new int[INITIAL_PENDING_CAPACITY];
+        }
+
+        while (sequence.hasRemaining()) {
+            DerReader value = sequence.readTagged();
+            int tag = sequence.tagNumber();
+            if (lazy) {
+                if (Arrays.binarySearch(knownTags, tag) < 0) {
                     throw new CertificateParsingException("Unknown tag " + tag + " found");
+                }
+                if (pendingCount == pendingTags.length) {
+                    final int capacity = pendingCount * 2;
+                    pendingTags = Arrays.copyOf(pendingTags, capacity);
+                    pendingOffsets = Arrays.copyOf(pendingOffsets, capacity);
+                    pendingLimits = Arrays.copyOf(pendingLimits, capacity);
+                }
+                pendingTags[pendingCount] = tag;
+                pendingOffsets[pendingCount] = value.position();
+                pendingLimits[pendingCount] = value.limit();
+                pendingCount++;
+            } else {
+                decode(tag, value);
+            }
+        }
+    }
 
-                case KM_TAG_PURPOSE & KEYMASTER_TAG_TYPE_MASK:
-                    purposes = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_ALGORITHM & KEYMASTER_TAG_TYPE_MASK:
-                    algorithm = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_KEY_SIZE & KEYMASTER_TAG_TYPE_MASK:
-                    keySize = Asn1Utils.getIntegerFromAsn1(value);
-                    Log.i("Attestation", "Found KEY SIZE, value: " + keySize);
-                    break;
-                case KM_TAG_DIGEST & KEYMASTER_TAG_TYPE_MASK:
-                    digests = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_PADDING & KEYMASTER_TAG_TYPE_MASK:
-                    paddingModes = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_RSA_PUBLIC_EXPONENT & KEYMASTER_TAG_TYPE_MASK:
-                    rsaPublicExponent = Asn1Utils.getLongFromAsn1(value);
-                    break;
-                case KM_TAG_NO_AUTH_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    noAuthRequired = true;
-                    break;
-                case KM_TAG_CREATION_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    // work around issue with the Pixel 3 StrongBox implementation
-                    try {
-                        creationDateTime = Asn1Utils.getDateFromAsn1(value);
-                    } catch (final CertificateParsingException e) {
-                        Log.e("Attestation", "invalid creationDateTime field");
-                    }
-                    break;
-                case KM_TAG_ORIGIN & KEYMASTER_TAG_TYPE_MASK:
-                    origin = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_OS_VERSION & KEYMASTER_TAG_TYPE_MASK:
-                    osVersion = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_OS_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
-                    osPatchLevel = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_VENDOR_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
-                    vendorPatchLevel = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_BOOT_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
-                    bootPatchLevel = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_ACTIVE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    activeDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_ORIGINATION_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    originationExpireDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_USAGE_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    usageExpireDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_ROLLBACK_RESISTANT & KEYMASTER_TAG_TYPE_MASK:
-                    rollbackResistant = true;
-                    break;
-                case KM_TAG_ROLLBACK_RESISTANCE & KEYMASTER_TAG_TYPE_MASK:
-                    rollbackResistance = true;
-                    break;
-                case KM_TAG_AUTH_TIMEOUT & KEYMASTER_TAG_TYPE_MASK:
-                    authTimeout = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_ALLOW_WHILE_ON_BODY & KEYMASTER_TAG_TYPE_MASK:
-                    allowWhileOnBody = true;
-                    break;
-                case KM_TAG_EC_CURVE & KEYMASTER_TAG_TYPE_MASK:
-                    ecCurve = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_USER_AUTH_TYPE & KEYMASTER_TAG_TYPE_MASK:
-                    userAuthType = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_ROOT_OF_TRUST & KEYMASTER_TAG_TYPE_MASK:
-                    rootOfTrust = new RootOfTrust(value, strictParsing);
-                    break;
-                case KM_TAG_ATTESTATION_APPLICATION_ID & KEYMASTER_TAG_TYPE_MASK:
-                    attestationApplicationId = new AttestationApplicationId(Asn1Utils
-                            .getAsn1EncodableFromBytes(Asn1Utils.getByteArrayFromAsn1(value)));
-                    break;
-                case KM_TAG_ATTESTATION_ID_BRAND & KEYMASTER_TAG_TYPE_MASK:
-                    brand = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_DEVICE & KEYMASTER_TAG_TYPE_MASK:
-                    device = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_PRODUCT & KEYMASTER_TAG_TYPE_MASK:
-                    product = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_SERIAL & KEYMASTER_TAG_TYPE_MASK:
-                    serialNumber = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_IMEI & KEYMASTER_TAG_TYPE_MASK:
-                    imei = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_MEID & KEYMASTER_TAG_TYPE_MASK:
-                    meid = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_MANUFACTURER & KEYMASTER_TAG_TYPE_MASK:
-                    manufacturer = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_MODEL & KEYMASTER_TAG_TYPE_MASK:
-                    model = getStringFromAsn1Value(value);
-                    break;
-                case KM_TAG_ALL_APPLICATIONS & KEYMASTER_TAG_TYPE_MASK:
-                    allApplications = true;
-                    break;
-                case KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    userPresenceRequired = true;
-                    break;
-                case KM_TAG_TRUSTED_CONFIRMATION_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    confirmationRequired = true;
-                    break;
+    private void decode(int tag, DerReader value) throws CertificateParsingException {
+        logger.fine("Parsing tag: [" + tag + "]");
+        switch (tag) {
+            default:
+                throw new CertificateParsingException("Unknown tag " + tag + " found");
+
+            case KM_TAG_PURPOSE & KEYMASTER_TAG_TYPE_MASK:
+                purposes = readIntegerSet(value);
+                break;
+            case KM_TAG_ALGORITHM & KEYMASTER_TAG_TYPE_MASK:
+                algorithm = value.readInteger();
+                break;
+            case KM_TAG_KEY_SIZE & KEYMASTER_TAG_TYPE_MASK:
+                keySize = value.readInteger();
+                logger.fine("Found KEY SIZE, value: " + keySize);
+                break;
+            case KM_TAG_DIGEST & KEYMASTER_TAG_TYPE_MASK:
+                digests = readIntegerSet(value);
+                break;
+            case KM_TAG_PADDING & KEYMASTER_TAG_TYPE_MASK:
+                paddingModes = readIntegerSet(value);
+                break;
+            case KM_TAG_RSA_PUBLIC_EXPONENT & KEYMASTER_TAG_TYPE_MASK:
+                rsaPublicExponent = value.readLong();
+                break;
+            case KM_TAG_NO_AUTH_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
+                noAuthRequired = true;
+                break;
+            case KM_TAG_CREATION_DATETIME & KEYMASTER_TAG_TYPE_MASK:
+                // work around issue with the Pixel 3 StrongBox implementation
+                try {
+                    creationDateTime = new Date(value.readLong());
+                } catch (final CertificateParsingException e) {
+                    logger.severe("invalid creationDateTime field");
+                }
+                break;
+            case KM_TAG_ORIGIN & KEYMASTER_TAG_TYPE_MASK:
+                origin = value.readInteger();
+                break;
+            case KM_TAG_OS_VERSION & KEYMASTER_TAG_TYPE_MASK:
+                osVersion = value.readInteger();
+                break;
+            case KM_TAG_OS_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
+                osPatchLevel = value.readInteger();
+                break;
+            case KM_TAG_VENDOR_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
+                vendorPatchLevel = value.readInteger();
+                break;
+            case KM_TAG_BOOT_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
+                bootPatchLevel = value.readInteger();
+                break;
+            case KM_TAG_ACTIVE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
+                activeDateTime = new Date(value.readLong());
+                break;
+            case KM_TAG_ORIGINATION_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
+                originationExpireDateTime = new Date(value.readLong());
+                break;
+            case KM_TAG_USAGE_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
+                usageExpireDateTime = new Date(value.readLong());
+                break;
+            case KM_TAG_ROLLBACK_RESISTANT & KEYMASTER_TAG_TYPE_MASK:
+                rollbackResistant = true;
+                break;
+            case KM_TAG_ROLLBACK_RESISTANCE & KEYMASTER_TAG_TYPE_MASK:
+                rollbackResistance = true;
+                break;
+            case KM_TAG_AUTH_TIMEOUT & KEYMASTER_TAG_TYPE_MASK:
+                authTimeout = value.readInteger();
+                break;
+            case KM_TAG_ALLOW_WHILE_ON_BODY & KEYMASTER_TAG_TYPE_MASK:
+                allowWhileOnBody = true;
+                break;
+            case KM_TAG_EC_CURVE & KEYMASTER_TAG_TYPE_MASK:
+                ecCurve = value.readInteger();
+                break;
+            case KM_TAG_USER_AUTH_TYPE & KEYMASTER_TAG_TYPE_MASK:
+                userAuthType = value.readInteger();
+                break;
+            case KM_TAG_ROOT_OF_TRUST & KEYMASTER_TAG_TYPE_MASK:
+                rootOfTrust = new RootOfTrust(value.readSequence(), strictParsing);
+                break;
+            case KM_TAG_ATTESTATION_APPLICATION_ID & KEYMASTER_TAG_TYPE_MASK:
+                attestationApplicationId = new AttestationApplicationId(
+                        value.readOctetStringContent().readSequence());
+                break;
+            case KM_TAG_ATTESTATION_ID_BRAND & KEYMASTER_TAG_TYPE_MASK:
+                brand = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_DEVICE & KEYMASTER_TAG_TYPE_MASK:
+                device = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_PRODUCT & KEYMASTER_TAG_TYPE_MASK:
+                product = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_SERIAL & KEYMASTER_TAG_TYPE_MASK:
+                serialNumber = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_IMEI & KEYMASTER_TAG_TYPE_MASK:
+                imei = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_MEID & KEYMASTER_TAG_TYPE_MASK:
+                meid = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_MANUFACTURER & KEYMASTER_TAG_TYPE_MASK:
+                manufacturer = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ATTESTATION_ID_MODEL & KEYMASTER_TAG_TYPE_MASK:
+                model = value.readUtf8OctetString();
+                break;
+            case KM_TAG_ALL_APPLICATIONS & KEYMASTER_TAG_TYPE_MASK:
+                allApplications = true;
+                break;
+            case KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
+                userPresenceRequired = true;
+                break;
+            case KM_TAG_TRUSTED_CONFIRMATION_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
+                confirmationRequired = true;
+                break;
+        }
+    }
+
+    /**
+     * Decodes the entries with the given tag if this list is parsed lazily.
+     */
+    private void decodePending(int tag) {
+        if (pendingTags == null) {
+            return;
+        }
+        tag &= KEYMASTER_TAG_TYPE_MASK;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingTags[i] == tag) {
+                pendingTags[i] = -1;
+                try {
+                    decode(tag, new DerReader(pendingBuffer, pendingOffsets[i], pendingLimits[i]));
+                } catch (CertificateParsingException e) {
+                    throw new LazyParsingException(e);
+                }
+            }
+        }
+    }
+
+    private void decodeAllPending() {
+        if (pendingTags == null) {
+            return;
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingTags[i] != -1) {
+                decodePending(pendingTags[i]);
             }
         }
+    }
 
+    private static Set<Integer> readIntegerSet(DerReader value) throws CertificateParsingException {
+        DerReader set = value.readSet();
+        ImmutableSet.Builder<Integer> builder = ImmutableSet.builder();
+        while (set.hasRemaining()) {
+            builder.add(set.readInteger());
+        }
+        return builder.build();
     }
 
     public static String algorithmToString(int algorithm) {
@@ -413,50 +541,37 @@ public class AuthorizationList {
         return DateFormat.getDateTimeInstance().format(date);
     }
 
-    private static ASN1TaggedObject parseAsn1TaggedObject(ASN1SequenceParser parser)
-            throws CertificateParsingException {
-        ASN1Encodable asn1Encodable = parseAsn1Encodable(parser);
-        if (asn1Encodable == null || asn1Encodable instanceof ASN1TaggedObject) {
-            return (ASN1TaggedObject) asn1Encodable;
-        }
-        throw new CertificateParsingException(
-                "Expected tagged object, found " + asn1Encodable.getClass().getName());
-    }
-
-    private static ASN1Encodable parseAsn1Encodable(ASN1SequenceParser parser)
-            throws CertificateParsingException {
-        try {
-            return parser.readObject();
-        } catch (IOException e) {
-            throw new CertificateParsingException("Failed to parse ASN1 sequence", e);
-        }
-    }
-
     public Integer getSecurityLevel() {
         return securityLevel;
     }
 
     public Set<Integer> getPurposes() {
+        decodePending(KM_TAG_PURPOSE);
         return purposes;
     }
 
     public Integer getAlgorithm() {
+        decodePending(KM_TAG_ALGORITHM);
         return algorithm;
     }
 
     public Integer getKeySize() {
+        decodePending(KM_TAG_KEY_SIZE);
         return keySize;
     }
 
     public Set<Integer> getDigests() {
+        decodePending(KM_TAG_DIGEST);
         return digests;
     }
 
     public Set<Integer> getPaddingModes() {
+        decodePending(KM_TAG_PADDING);
         return paddingModes;
     }
 
     public Set<String> getPaddingModesAsStrings() throws CertificateParsingException {
+        decodePending(KM_TAG_PADDING);
         if (paddingModes == null) {
             return ImmutableSet.of();
         }
@@ -465,19 +580,19 @@ public class AuthorizationList {
         for (int paddingMode : paddingModes) {
             switch (paddingMode) {
                 case KM_PAD_NONE:
-                    builder.add(KeyProperties.ENCRYPTION_PADDING_NONE);
+                    builder.add(ENCRYPTION_PADDING_NONE);
                     break;
                 case KM_PAD_RSA_OAEP:
-                    builder.add(KeyProperties.ENCRYPTION_PADDING_RSA_OAEP);
+                    builder.add(ENCRYPTION_PADDING_RSA_OAEP);
                     break;
                 case KM_PAD_RSA_PKCS1_1_5_ENCRYPT:
-                    builder.add(KeyProperties.ENCRYPTION_PADDING_RSA_PKCS1);
+                    builder.add(ENCRYPTION_PADDING_RSA_PKCS1);
                     break;
                 case KM_PAD_RSA_PKCS1_1_5_SIGN:
-                    builder.add(KeyProperties.SIGNATURE_PADDING_RSA_PKCS1);
+                    builder.add(SIGNATURE_PADDING_RSA_PKCS1);
                     break;
                 case KM_PAD_RSA_PSS:
-                    builder.add(KeyProperties.SIGNATURE_PADDING_RSA_PSS);
+                    builder.add(SIGNATURE_PADDING_RSA_PSS);
                     break;
                 default:
                     throw new CertificateParsingException("Invalid padding mode " + paddingMode);
@@ -487,10 +602,12 @@ public class AuthorizationList {
     }
 
     public Integer getEcCurve() {
+        decodePending(KM_TAG_EC_CURVE);
         return ecCurve;
     }
 
     public String ecCurveAsString() {
+        decodePending(KM_TAG_EC_CURVE);
         if (ecCurve == null)
             return "NULL";
 
@@ -509,38 +626,47 @@ public class AuthorizationList {
     }
 
     public Long getRsaPublicExponent() {
+        decodePending(KM_TAG_RSA_PUBLIC_EXPONENT);
         return rsaPublicExponent;
     }
 
     public Date getActiveDateTime() {
+        decodePending(KM_TAG_ACTIVE_DATETIME);
         return activeDateTime;
     }
 
     public Date getOriginationExpireDateTime() {
+        decodePending(KM_TAG_ORIGINATION_EXPIRE_DATETIME);
         return originationExpireDateTime;
     }
 
     public Date getUsageExpireDateTime() {
+        decodePending(KM_TAG_USAGE_EXPIRE_DATETIME);
         return usageExpireDateTime;
     }
 
     public boolean isNoAuthRequired() {
+        decodePending(KM_TAG_NO_AUTH_REQUIRED);
         return noAuthRequired;
     }
 
     public Integer getUserAuthType() {
+        decodePending(KM_TAG_USER_AUTH_TYPE);
         return userAuthType;
     }
 
     public Integer getAuthTimeout() {
+        decodePending(KM_TAG_AUTH_TIMEOUT);
         return authTimeout;
     }
 
     public boolean isAllowWhileOnBody() {
+        decodePending(KM_TAG_ALLOW_WHILE_ON_BODY);
         return allowWhileOnBody;
     }
 
     public boolean isAllApplications() {
+        decodePending(KM_TAG_ALL_APPLICATIONS);
         return allApplications;
     }
 
@@ -549,96 +675,108 @@ public class AuthorizationList {
     }
 
     public Date getCreationDateTime() {
+        decodePending(KM_TAG_CREATION_DATETIME);
         return creationDateTime;
     }
 
     public Integer getOrigin() {
+        decodePending(KM_TAG_ORIGIN);
         return origin;
     }
 
     public boolean isRollbackResistant() {
+        decodePending(KM_TAG_ROLLBACK_RESISTANT);
         return rollbackResistant;
     }
 
     public boolean isRollbackResistance() {
+        decodePending(KM_TAG_ROLLBACK_RESISTANCE);
         return rollbackResistance;
     }
 
     public RootOfTrust getRootOfTrust() {
+        decodePending(KM_TAG_ROOT_OF_TRUST);
         return rootOfTrust;
     }
 
     public Integer getOsVersion() {
+        decodePending(KM_TAG_OS_VERSION);
         return osVersion;
     }
 
     public Integer getOsPatchLevel() {
+        decodePending(KM_TAG_OS_PATCHLEVEL);
         return osPatchLevel;
     }
 
     public Integer getVendorPatchLevel() {
+        decodePending(KM_TAG_VENDOR_PATCHLEVEL);
         return vendorPatchLevel;
     }
 
     public Integer getBootPatchLevel() {
+        decodePending(KM_TAG_BOOT_PATCHLEVEL);
         return bootPatchLevel;
     }
 
     public AttestationApplicationId getAttestationApplicationId() {
+        decodePending(KM_TAG_ATTESTATION_APPLICATION_ID);
         return attestationApplicationId;
     }
 
     public String getBrand() {
+        decodePending(KM_TAG_ATTESTATION_ID_BRAND);
         return brand;
     }
 
     public String getDevice() {
+        decodePending(KM_TAG_ATTESTATION_ID_DEVICE);
         return device;
     }
 
     public String getSerialNumber() {
+        decodePending(KM_TAG_ATTESTATION_ID_SERIAL);
         return serialNumber;
     }
 
     public String getImei() {
+        decodePending(KM_TAG_ATTESTATION_ID_IMEI);
         return imei;
     }
 
     public String getMeid() {
+        decodePending(KM_TAG_ATTESTATION_ID_MEID);
         return meid;
     }
 
     public String getProduct() {
+        decodePending(KM_TAG_ATTESTATION_ID_PRODUCT);
         return product;
     }
 
     public String getManufacturer() {
+        decodePending(KM_TAG_ATTESTATION_ID_MANUFACTURER);
         return manufacturer;
     }
 
     public String getModel() {
+        decodePending(KM_TAG_ATTESTATION_ID_MODEL);
         return model;
     }
 
     public boolean isUserPresenceRequired() {
+        decodePending(KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED);
         return userPresenceRequired;
     }
 
     public boolean isConfirmationRequired() {
+        decodePending(KM_TAG_TRUSTED_CONFIRMATION_REQUIRED);
         return confirmationRequired;
     }
 
-    private String getStringFromAsn1Value(ASN1Primitive value) throws CertificateParsingException {
-        try {
-            return Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-        } catch (UnsupportedEncodingException e) {
-            throw new CertificateParsingException("Error parsing ASN.1 value", e);
-        }
-    }
-
-    @NonNull
     @Override
     public String toString() {
+        decodeAllPending();
         StringBuilder s = new StringBuilder();
 
         if (algorithm != null) {
@@ -0,0 +1,249 @@
+package app.attestation.auditor.attestation;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateParsingException;
+
+/**
+ * Cursor over DER encoded data reading one element at a time without building an object tree.
+ *
+ * <p>Constructed elements are returned as readers over a slice of the same buffer, so nothing
+ * is copied until a value is materialized as a {@code byte[]} or {@code String}.
+ */
+final class DerReader {
+    private static final int TAG_BOOLEAN = 0x01;
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_ENUMERATED = 0x0a;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_SET = 0x31;
+
+    private static final int CLASS_MASK = 0xc0;
+    private static final int CLASS_CONTEXT_SPECIFIC = 0x80;
+    private static final int CONSTRUCTED = 0x20;
+    private static final int TAG_NUMBER_MASK = 0x1f;
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    // identifier and tag number of the last element read
+    private int identifier;
+    private int tagNumber;
+    // content of the last element read
+    private int contentOffset;
+    private int contentLength;
+
+    DerReader(final byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    DerReader(final byte[] buffer, final int offset, final int limit) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = limit;
+    }
+
+    static DerReader of(final ASN1Encodable encodable) throws CertificateParsingException {
+        try {
+            return new DerReader(encodable.toASN1Primitive().getEncoded(ASN1Encoding.DER));
+        } catch (IOException e) {
+            throw new CertificateParsingException("Failed to encode ASN.1 value", e);
+        }
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int position() {
+        return position;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Reads the header of the next element and skips over its content.
+     */
+    private void next() throws CertificateParsingException {
+        if (position >= limit) {
+            throw new CertificateParsingException("Unexpected end of DER data");
+        }
+        identifier = buffer[position++] & 0xff;
+        if ((identifier & TAG_NUMBER_MASK) == TAG_NUMBER_MASK) {
+            int number = 0;
+            int b;
+            do {
+                if (position >= limit || number > (Integer.MAX_VALUE >> 7)) {
+                    throw new CertificateParsingException("Invalid DER tag");
+                }
+                b = buffer[position++] & 0xff;
+                number = (number << 7) | (b & 0x7f);
+            } while ((b & 0x80) != 0);
+            tagNumber = number;
+        } else {
+            tagNumber = identifier & TAG_NUMBER_MASK;
+        }
+
+        if (position >= limit) {
+            throw new CertificateParsingException("Unexpected end of DER data");
+        }
+        int length = buffer[position++] & 0xff;
+        if (length > 0x7f) {
+            final int lengthBytes = length & 0x7f;
+            if (lengthBytes == 0 || lengthBytes > 3 || limit - position < lengthBytes) {
+                throw new CertificateParsingException("Invalid DER length");
+            }
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (buffer[position++] & 0xff);
+            }
+        }
+        if (length > limit - position) {
+            throw new CertificateParsingException("DER length exceeds available data");
+        }
+        contentOffset = position;
+        contentLength = length;
+        position += length;
+    }
+
+    private void next(final int expectedIdentifier, final String name)
+            throws CertificateParsingException {
+        next();
+        if (identifier != expectedIdentifier) {
+            throw new CertificateParsingException("Expected " + name + ", found tag 0x"
+                    + Integer.toHexString(identifier));
+        }
+    }
+
+    private DerReader content() {
+        return new DerReader(buffer, contentOffset, contentOffset + contentLength);
+    }
+
+    DerReader readSequence() throws CertificateParsingException {
+        next(TAG_SEQUENCE, "sequence");
+        return content();
+    }
+
+    DerReader readSet() throws CertificateParsingException {
+        next(TAG_SET, "set");
+        return content();
+    }
+
+    /**
+     * Reads an octet string and returns a reader over its content for nested DER data.
+     */
+    DerReader readOctetStringContent() throws CertificateParsingException {
+        next(TAG_OCTET_STRING, "octet string");
+        return content();
+    }
+
+    byte[] readOctetString() throws CertificateParsingException {
+        next(TAG_OCTET_STRING, "octet string");
+        final byte[] octets = new byte[contentLength];
+        System.arraycopy(buffer, contentOffset, octets, 0, contentLength);
+        return octets;
+    }
+
+    String readUtf8OctetString() throws CertificateParsingException {
+        next(TAG_OCTET_STRING, "octet string");
+        return new String(buffer, contentOffset, contentLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an explicitly tagged context-specific element and returns a reader over its content.
+     * The tag number is available from {@link #tagNumber()} afterwards.
+     */
+    DerReader readTagged() throws CertificateParsingException {
+        next();
+        if ((identifier & (CLASS_MASK | CONSTRUCTED)) != (CLASS_CONTEXT_SPECIFIC | CONSTRUCTED)) {
+            throw new CertificateParsingException("Expected tagged object, found tag 0x"
+                    + Integer.toHexString(identifier));
+        }
+        return content();
+    }
+
+    int tagNumber() {
+        return tagNumber;
+    }
+
+    /**
+     * Reads a non-negative INTEGER or ENUMERATED that fits in an int.
+     */
+    int readInteger() throws CertificateParsingException {
+        next();
+        if (identifier != TAG_INTEGER && identifier != TAG_ENUMERATED) {
+            throw new CertificateParsingException("Integer value expected, found tag 0x"
+                    + Integer.toHexString(identifier));
+        }
+        final long value = decodeNonNegative();
+        if (value > Integer.MAX_VALUE) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a non-negative INTEGER that fits in a long.
+     */
+    long readLong() throws CertificateParsingException {
+        next(TAG_INTEGER, "integer");
+        return decodeNonNegative();
+    }
+
+    // Same rules as BouncyCastle: minimal two's complement encoding, no negative values
+    private long decodeNonNegative() throws CertificateParsingException {
+        if (contentLength == 0) {
+            throw new CertificateParsingException("Malformed integer");
+        }
+        int offset = contentOffset;
+        final int end = contentOffset + contentLength;
+        if (contentLength > 1 && buffer[offset] == 0 && (buffer[offset + 1] & 0x80) == 0
+                || contentLength > 1 && buffer[offset] == (byte) 0xff && (buffer[offset + 1] & 0x80) != 0) {
+            throw new CertificateParsingException("Malformed integer");
+        }
+        if ((buffer[offset] & 0x80) != 0) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        if (buffer[offset] == 0) {
+            offset++;
+        }
+        if (end - offset > Long.BYTES || end - offset == Long.BYTES && (buffer[offset] & 0x80) != 0) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        long value = 0;
+        for (int i = offset; i < end; i++) {
+            value = (value << 8) | (buffer[i] & 0xff);
+        }
+        return value;
+    }
+
+    boolean readBoolean(final boolean strictParsing) throws CertificateParsingException {
+        next(TAG_BOOLEAN, "boolean");
+        if (contentLength != 1) {
+            throw new CertificateParsingException("Malformed boolean");
+        }
+        final byte value = buffer[contentOffset];
+        if (value == (byte) 0xff) {
+            return true;
+        } else if (value == 0) {
+            return false;
+        } else if (!strictParsing) {
+            // Value is not 0xFF nor 0x00, but some other non-zero value.
+            // This is invalid DER, but if we're not being strict,
+            // consider it true, otherwise fall through and throw exception
+            return true;
+        }
+        throw new CertificateParsingException(
+                "DER-encoded boolean values must contain either 0x00 or 0xFF");
+    }
+}
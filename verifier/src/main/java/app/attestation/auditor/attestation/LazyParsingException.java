@@ -0,0 +1,20 @@
+package app.attestation.auditor.attestation;
+
+import java.security.cert.CertificateParsingException;
+
+/**
+ * Thrown by the getters of a lazily parsed {@link AuthorizationList} when the requested field is
+ * malformed. Unchecked since the getters of an eagerly parsed list cannot fail.
+ */
+public class LazyParsingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    LazyParsingException(final CertificateParsingException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized CertificateParsingException getCause() {
+        return (CertificateParsingException) super.getCause();
+    }
+}
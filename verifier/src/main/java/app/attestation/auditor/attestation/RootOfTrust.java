@@ -16,21 +16,13 @@
 
 package app.attestation.auditor.attestation;
 
-import androidx.annotation.NonNull;
-
 import com.google.common.io.BaseEncoding;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
 
 import java.security.cert.CertificateParsingException;
 
 public class RootOfTrust {
-    private static final int VERIFIED_BOOT_KEY_INDEX = 0;
-    private static final int DEVICE_LOCKED_INDEX = 1;
-    private static final int VERIFIED_BOOT_STATE_INDEX = 2;
-    private static final int VERIFIED_BOOT_HASH_INDEX = 3;
-
     public static final int KM_VERIFIED_BOOT_VERIFIED = 0;
     public static final int KM_VERIFIED_BOOT_SELF_SIGNED = 1;
     public static final int KM_VERIFIED_BOOT_UNVERIFIED = 2;
@@ -47,24 +39,20 @@ public class RootOfTrust {
 
     public RootOfTrust(ASN1Encodable asn1Encodable, boolean strictParsing)
             throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence)) {
-            throw new CertificateParsingException("Expected sequence for root of trust, found "
-                    + asn1Encodable.getClass().getName());
-        }
+        this(DerReader.of(asn1Encodable).readSequence(), strictParsing);
+    }
 
-        ASN1Sequence sequence = (ASN1Sequence) asn1Encodable;
-        verifiedBootKey =
-                Asn1Utils.getByteArrayFromAsn1(sequence.getObjectAt(VERIFIED_BOOT_KEY_INDEX));
-        deviceLocked = Asn1Utils.getBooleanFromAsn1(
-                sequence.getObjectAt(DEVICE_LOCKED_INDEX), strictParsing);
-        verifiedBootState =
-                Asn1Utils.getIntegerFromAsn1(sequence.getObjectAt(VERIFIED_BOOT_STATE_INDEX));
-        if (sequence.size() < 4) {
+    // Fields are read in order: verifiedBootKey, deviceLocked, verifiedBootState and the
+    // optional verifiedBootHash
+    RootOfTrust(DerReader sequence, boolean strictParsing) throws CertificateParsingException {
+        verifiedBootKey = sequence.readOctetString();
+        deviceLocked = sequence.readBoolean(strictParsing);
+        verifiedBootState = sequence.readInteger();
+        if (!sequence.hasRemaining()) {
             verifiedBootHash = null;
             return;
         }
-        verifiedBootHash =
-                Asn1Utils.getByteArrayFromAsn1(sequence.getObjectAt(VERIFIED_BOOT_HASH_INDEX));
+        verifiedBootHash = sequence.readOctetString();
     }
 
     public static String verifiedBootStateToString(int verifiedBootState) {
@@ -98,7 +86,6 @@ public class RootOfTrust {
         return verifiedBootHash;
     }
 
-    @NonNull
     @Override
     public String toString() {
         return "\nVerified boot Key: " +
@@ -0,0 +1,117 @@
+package app.attestation.auditor.verifier;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import app.attestation.auditor.verifier.VerificationException.Reason;
+
+import static app.attestation.auditor.verifier.AttestationVerifier.FINGERPRINT_LENGTH;
+import static app.attestation.auditor.verifier.AttestationVerifier.PROTOCOL_VERSION;
+import static app.attestation.auditor.verifier.AttestationVerifier.PROTOCOL_VERSION_MINIMUM;
+
+/**
+ * Read-only view over a serialized attestation message in the layout documented by
+ * {@link AttestationVerifier}.
+ *
+ * <p>Wrapping only checks the protocol version and the field lengths and records where each
+ * field starts. The message array is not copied, and the accessors return read-only slices
+ * sharing it, so it must not be modified while the view is in use.
+ */
+public final class AttestationMessage {
+    private static final int HEADER_LENGTH = Byte.BYTES + Short.BYTES;
+
+    // backing array and field offsets, also used directly by the verifier
+    final byte[] message;
+    final int compressedChainOffset;
+    final int compressedChainLength;
+    final int fingerprintOffset;
+    final int signatureOffset;
+    private final byte version;
+    private final int osEnforcedFlags;
+
+    private AttestationMessage(final byte[] message, final byte version,
+            final int compressedChainLength) {
+        this.message = message;
+        this.version = version;
+        compressedChainOffset = HEADER_LENGTH;
+        this.compressedChainLength = compressedChainLength;
+        fingerprintOffset = compressedChainOffset + compressedChainLength;
+        final int flagsOffset = fingerprintOffset + FINGERPRINT_LENGTH;
+        osEnforcedFlags = ByteBuffer.wrap(message, flagsOffset, Integer.BYTES).getInt();
+        signatureOffset = flagsOffset + Integer.BYTES;
+    }
+
+    public static AttestationMessage wrap(final byte[] message) throws VerificationException {
+        if (message.length == 0) {
+            throw new VerificationException(Reason.MALFORMED_MESSAGE, "empty attestation message");
+        }
+        // the version decides the layout of the rest, so it is checked first
+        final byte version = message[0];
+        if (version > PROTOCOL_VERSION) {
+            throw new VerificationException(Reason.PROTOCOL_VERSION_INVALID, "invalid protocol version: " + version);
+        } else if (version < PROTOCOL_VERSION_MINIMUM) {
+            throw new VerificationException(Reason.PROTOCOL_VERSION_TOO_OLD, "Auditee protocol version too old: " + version);
+        }
+        if (message.length < HEADER_LENGTH) {
+            throw new VerificationException(Reason.MALFORMED_MESSAGE, "truncated attestation message");
+        }
+        final short compressedChainLength = (short) ((message[1] << 8) | (message[2] & 0xff));
+        if (compressedChainLength < 0) {
+            throw new VerificationException(Reason.MALFORMED_MESSAGE, "invalid compressed chain length");
+        }
+        if (message.length < HEADER_LENGTH + compressedChainLength + FINGERPRINT_LENGTH + Integer.BYTES) {
+            throw new VerificationException(Reason.MALFORMED_MESSAGE, "truncated attestation message");
+        }
+        return new AttestationMessage(message, version, compressedChainLength);
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public ByteBuffer getCompressedChain() {
+        return slice(compressedChainOffset, compressedChainLength);
+    }
+
+    public ByteBuffer getFingerprint() {
+        return slice(fingerprintOffset, FINGERPRINT_LENGTH);
+    }
+
+    /**
+     * Returns the OS enforced flags as sent, including any unknown bits. See the
+     * {@code OS_ENFORCED_FLAGS_} constants of {@link AttestationVerifier}.
+     */
+    public int getOsEnforcedFlags() {
+        return osEnforcedFlags;
+    }
+
+    /**
+     * Returns everything before the signature, which is the data covered by it.
+     */
+    public ByteBuffer getSignedMessage() {
+        return slice(0, signatureOffset);
+    }
+
+    public ByteBuffer getSignature() {
+        return slice(signatureOffset, message.length - signatureOffset);
+    }
+
+    // Returns a writable view of the signed message for the verifier, avoiding the copy a
+    // signature engine makes for a read-only buffer
+    ByteBuffer signedMessage() {
+        return ByteBuffer.wrap(message, 0, signatureOffset).slice();
+    }
+
+    // The pairing store and the signature engines take arrays, but these are small.
+    byte[] copyFingerprint() {
+        return Arrays.copyOfRange(message, fingerprintOffset, fingerprintOffset + FINGERPRINT_LENGTH);
+    }
+
+    byte[] copySignature() {
+        return Arrays.copyOfRange(message, signatureOffset, message.length);
+    }
+
+    private ByteBuffer slice(final int offset, final int length) {
+        return ByteBuffer.wrap(message, offset, length).slice().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,63 @@
+package app.attestation.auditor.verifier;
+
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+
+import static app.attestation.auditor.verifier.AttestationVerifier.FINGERPRINT_LENGTH;
+import static app.attestation.auditor.verifier.AttestationVerifier.MAX_MESSAGE_SIZE;
+
+/**
+ * Serialization of attestation messages by the Auditee, in the layout read by
+ * {@link AttestationMessage}.
+ *
+ * <p>A message is written in a single pass over a buffer reused by each thread: the chain is
+ * deflated straight into its place after the header, the signature is computed over that same
+ * region and written right after it, and the finished message is copied out once. Instances are
+ * thread-safe.
+ */
+public class AttestationSerializer {
+    private static final int HEADER_LENGTH = Byte.BYTES + Short.BYTES;
+
+    private final ChainCodec chainCodec;
+    private final ThreadLocal<byte[]> buffers =
+            ThreadLocal.withInitial(() -> new byte[MAX_MESSAGE_SIZE]);
+
+    public AttestationSerializer(final ChainCodec chainCodec) {
+        this.chainCodec = chainCodec;
+    }
+
+    /**
+     * @param osEnforcedFlags {@code OS_ENFORCED_FLAGS_} bits of {@link AttestationVerifier}
+     * @param signer {@link AttestationVerifier#SIGNATURE_ALGORITHM} signature initialized for
+     *     signing with the persistent key
+     */
+    public byte[] serialize(final byte version, final Certificate[] certificates,
+            final byte[] fingerprint, final int osEnforcedFlags, final Signature signer)
+            throws GeneralSecurityException {
+        if (fingerprint.length != FINGERPRINT_LENGTH) {
+            throw new RuntimeException("fingerprint length mismatch");
+        }
+        final byte[] buffer = buffers.get();
+        buffer[0] = version;
+
+        final int compressedLength = chainCodec.encode(certificates, buffer, HEADER_LENGTH,
+                buffer.length - HEADER_LENGTH - FINGERPRINT_LENGTH - Integer.BYTES);
+        buffer[1] = (byte) (compressedLength >> 8);
+        buffer[2] = (byte) compressedLength;
+        int position = HEADER_LENGTH + compressedLength;
+
+        System.arraycopy(fingerprint, 0, buffer, position, FINGERPRINT_LENGTH);
+        position += FINGERPRINT_LENGTH;
+
+        buffer[position++] = (byte) (osEnforcedFlags >> 24);
+        buffer[position++] = (byte) (osEnforcedFlags >> 16);
+        buffer[position++] = (byte) (osEnforcedFlags >> 8);
+        buffer[position++] = (byte) osEnforcedFlags;
+
+        signer.update(buffer, 0, position);
+        final int signatureLength = signer.sign(buffer, position, buffer.length - position);
+        return Arrays.copyOf(buffer, position + signatureLength);
+    }
+}
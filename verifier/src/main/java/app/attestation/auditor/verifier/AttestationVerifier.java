@@ -0,0 +1,1000 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+
+import app.attestation.auditor.attestation.Attestation;
+import app.attestation.auditor.attestation.AttestationApplicationId;
+import app.attestation.auditor.attestation.AttestationPackageInfo;
+import app.attestation.auditor.attestation.AuthorizationList;
+import app.attestation.auditor.attestation.LazyParsingException;
+import app.attestation.auditor.attestation.RootOfTrust;
+import app.attestation.auditor.verifier.VerificationException.Reason;
+import app.attestation.auditor.verifier.VerificationMetrics.Stage;
+
+/**
+ * Verification side of the Auditor protocol without any dependency on the Android framework.
+ *
+ * <p>The key attestation roots, the certificate chain codec and the storage for pairing data are
+ * provided by the caller, so the same code is used by the Auditor app and on a plain JVM. An
+ * instance can be shared between threads as long as the {@link PairingStore} is thread-safe.
+ * The pinning data check and update is done under a lock striped by fingerprint, so concurrent
+ * verifications of the same Auditee cannot lose a downgrade protection update. The supported
+ * devices and minimum versions come from a {@link PolicyBundle} that can be replaced while
+ * verifications are running.
+ */
+public class AttestationVerifier {
+    private static final Logger logger = Logger.getLogger("AttestationVerifier");
+
+    // Developer previews set osVersion to 0 as a placeholder value.
+    public static final int DEVELOPER_PREVIEW_OS_VERSION = 0;
+
+    public static final int CHALLENGE_LENGTH = 32;
+    public static final String SIGNATURE_ALGORITHM = "SHA256WithECDSA";
+    private static final HashFunction FINGERPRINT_HASH_FUNCTION = Hashing.sha256();
+    public static final int FINGERPRINT_LENGTH = FINGERPRINT_HASH_FUNCTION.bits() / 8;
+    private static final HashFunction CHAIN_DIGEST_HASH_FUNCTION = Hashing.sha256();
+
+    public static final boolean PREFER_STRONGBOX = true;
+    private static final boolean ALLOW_ATTEST_KEY_DOWNGRADE = true;
+    private static final int PIN_LOCK_STRIPES = 64;
+
+    // Challenge message:
+    //
+    // byte maxVersion = PROTOCOL_VERSION
+    // byte[] challenge index (length: CHALLENGE_LENGTH)
+    // byte[] challenge (length: CHALLENGE_LENGTH)
+    //
+    // The challenge index is randomly generated by Auditor and used for all future challenge
+    // messages from that Auditor. It's used on the Auditee as an index to choose the correct
+    // persistent key to satisfy the Auditor, rather than only supporting pairing with one. In
+    // theory, the Auditor could authenticate to the Auditee, but this app already provides a
+    // better way to do that by doing the same process in reverse for a supported device.
+    //
+    // The challenge is randomly generated by the Auditor and serves the security function of
+    // enforcing that the results are fresh. It's returned inside the attestation certificate
+    // which has a signature from the device's provisioned key (not usable by the OS) and the
+    // outer signature from the hardware-backed key generated for the initial pairing.
+    //
+    // Attestation message:
+    //
+    // For backwards compatibility the Auditor device sends its maximum supported version, and
+    // the Auditee uses the highest version it supports.
+    //
+    // Compression is done with raw DEFLATE (no zlib wrapper) with a preset dictionary generated from
+    // sample certificates.
+    //
+    // signed message {
+    // byte version = min(maxVersion, PROTOCOL_VERSION)
+    // short compressedChainLength
+    // byte[] compressedChain { [short encodedCertificateLength, byte[] encodedCertificate] }
+    // byte[] fingerprint (length: FINGERPRINT_LENGTH)
+    // int osEnforcedFlags
+    // }
+    // byte[] signature (rest of message)
+    //
+    // Protocol version changes:
+    //
+    // n/a
+    //
+    // For each audit, the Auditee generates a fresh hardware-backed key with key attestation
+    // using the provided challenge. It reports back the certificate chain to be verified by the
+    // Auditor. The public key certificate of the generated key is signed by a key provisioned on
+    // the device (not usable by the OS) chaining up to an intermediate and the Google root. The
+    // certificate contains the key attestation metadata including the important fields with the
+    // lock state, verified boot state, the verified boot public key fingerprint and the OS
+    // version / patch level:
+    //
+    // https://developer.android.com/training/articles/security-key-attestation.html#certificate_schema
+    //
+    // The Auditee keeps the first hardware-backed key generated for a challenge index and uses it
+    // to sign all future attestations. The fingerprint of the persistent key is included in the
+    // attestation message for the Auditor to find the corresponding pinning data. Other keys are
+    // never actually used, only generated for fresh key attestation data.
+    //
+    // The OS can use the persistent generated hardware-backed key for signing but cannot obtain
+    // the private key. The key isn't be usable if verified boot fails or the OS is downgraded and
+    // the keys are protected against replay attacks via the Replay Protected Memory Block.
+    // Devices launching with Android P or later can provide a StrongBox Keymaster to support
+    // storing the keys in a dedicated hardware security module to substantially reduce the attack
+    // surface for obtaining the keys. StrongBox is paired with the TEE and the TEE corroborates
+    // the validity of the keys and attestation. The Pixel 3 and 3 XL are the first devices with a
+    // StrongBox implementation via the Titan M security chip.
+    //
+    // https://android-developers.googleblog.com/2018/10/building-titan-better-security-through.html
+    //
+    // The attestation message also includes osEnforcedFlags with data obtained at the OS level,
+    // which is vulnerable to tampering by an attacker with control over the OS. However, the OS
+    // did get verified by verified boot so without a verified boot bypass they would need to keep
+    // exploiting it after booting. The bootloader / TEE verified OS version / OS patch level are
+    // a useful mitigation as they reveal that the OS isn't upgraded even if an attacker has root.
+    //
+    // The Auditor saves the initial certificate chain, using the initial certificate to verify
+    // the outer signature and the rest of the chain for pinning the expected chain. It enforces
+    // downgrade protection for the OS version/patch (bootloader/TEE enforced) and app version (OS
+    // enforced) by keeping them updated.
+    public static final byte PROTOCOL_VERSION = 4;
+    public static final byte PROTOCOL_VERSION_MINIMUM = 4;
+    // can become longer in the future, but this is the minimum length
+    public static final byte CHALLENGE_MESSAGE_LENGTH = 1 + CHALLENGE_LENGTH * 2;
+    public static final int MAX_ENCODED_CHAIN_LENGTH = 5000;
+    public static final int MAX_MESSAGE_SIZE = 2953;
+
+    public static final int OS_ENFORCED_FLAGS_NONE = 0;
+    public static final int OS_ENFORCED_FLAGS_USER_PROFILE_SECURE = 1;
+    public static final int OS_ENFORCED_FLAGS_ACCESSIBILITY = 1 << 1;
+    public static final int OS_ENFORCED_FLAGS_DEVICE_ADMIN = 1 << 2;
+    public static final int OS_ENFORCED_FLAGS_ADB_ENABLED = 1 << 3;
+    public static final int OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED = 1 << 4;
+    public static final int OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS = 1 << 5;
+    public static final int OS_ENFORCED_FLAGS_DENY_NEW_USB = 1 << 6;
+    public static final int OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM = 1 << 7;
+    public static final int OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED = 1 << 8;
+    public static final int OS_ENFORCED_FLAGS_SYSTEM_USER = 1 << 9;
+    private static final int OS_ENFORCED_FLAGS_ALL =
+            OS_ENFORCED_FLAGS_USER_PROFILE_SECURE |
+            OS_ENFORCED_FLAGS_ACCESSIBILITY |
+            OS_ENFORCED_FLAGS_DEVICE_ADMIN |
+            OS_ENFORCED_FLAGS_ADB_ENABLED |
+            OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED |
+            OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS |
+            OS_ENFORCED_FLAGS_DENY_NEW_USB |
+            OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM |
+            OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED |
+            OS_ENFORCED_FLAGS_SYSTEM_USER;
+
+    private static final String AUDITOR_APP_PACKAGE_NAME_RELEASE = "app.attestation.auditor";
+    private static final String AUDITOR_APP_PACKAGE_NAME_PLAY = "app.attestation.auditor.play";
+    private static final String AUDITOR_APP_PACKAGE_NAME_DEBUG = "app.attestation.auditor.debug";
+    private static final String AUDITOR_APP_SIGNATURE_DIGEST_RELEASE =
+            "990E04F0864B19F14F84E0E432F7A393F297AB105A22C1E1B10B442A4A62C42C";
+    private static final String AUDITOR_APP_SIGNATURE_DIGEST_PLAY =
+            "075335BD7B54C965222B5284D2A1FDEF1198AE45EC7B09A4934287A0E3A243C7";
+    private static final String AUDITOR_APP_SIGNATURE_DIGEST_DEBUG =
+            "17727D8B61D55A864936B1A7B4A2554A15151F32EBCF44CDAA6E6C3258231890";
+    public static final byte AUDITOR_APP_VARIANT_RELEASE = 0;
+    public static final byte AUDITOR_APP_VARIANT_PLAY = 1;
+    public static final byte AUDITOR_APP_VARIANT_DEBUG = 2;
+
+    private final TrustAnchors trustAnchors;
+    private final ChainCodec chainCodec;
+    private final PairingStore pairingStore;
+    private final boolean debug;
+    private final VerificationMetrics metrics;
+    private final CertificateCache certificateCache;
+    // swapped as a whole, each verification uses the bundle current when it started
+    private final AtomicReference<PolicyBundle> policyBundle;
+    private final CryptoBackend cryptoBackend;
+    private final VerificationHistory history;
+    // serializes the read-modify-write of pinning data for each Auditee
+    private final Striped<Lock> pinLocks = Striped.lock(PIN_LOCK_STRIPES);
+
+    /**
+     * Options of an {@link AttestationVerifier}, with defaults for all but the trust anchors.
+     */
+    public static final class Builder {
+        private final TrustAnchors trustAnchors;
+        private ChainCodec chainCodec;
+        private PairingStore pairingStore;
+        private boolean debug;
+        private VerificationMetrics metrics = VerificationMetrics.NONE;
+        private CertificateCache certificateCache;
+        private PolicyBundle policyBundle;
+        private CryptoBackend cryptoBackend = CryptoBackend.JCA;
+        private VerificationHistory history;
+
+        private Builder(final TrustAnchors trustAnchors) {
+            this.trustAnchors = trustAnchors;
+        }
+
+        /**
+         * Codec for the compressed certificate chain, only needed by
+         * {@link AttestationVerifier#verifySerialized}.
+         */
+        public Builder chainCodec(final ChainCodec chainCodec) {
+            this.chainCodec = chainCodec;
+            return this;
+        }
+
+        /**
+         * Storage for pinning data, only needed by
+         * {@link AttestationVerifier#verifySerialized}.
+         */
+        public Builder pairingStore(final PairingStore pairingStore) {
+            this.pairingStore = pairingStore;
+            return this;
+        }
+
+        /**
+         * Whether this is a debug build trusting debug builds of the Auditor app and developer
+         * preview releases, false by default.
+         */
+        public Builder debug(final boolean debug) {
+            this.debug = debug;
+            return this;
+        }
+
+        /**
+         * Receives the time spent in each stage and the outcome of verifications, none by
+         * default.
+         */
+        public Builder metrics(final VerificationMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Interned intermediate and root certificates, ideally shared with the
+         * {@link ChainCodec}. A cache for this verifier alone by default.
+         */
+        public Builder certificateCache(final CertificateCache certificateCache) {
+            this.certificateCache = certificateCache;
+            return this;
+        }
+
+        /**
+         * Initial supported devices and policy, {@link PolicyBundle#getDefault} by default.
+         */
+        public Builder policyBundle(final PolicyBundle policyBundle) {
+            this.policyBundle = policyBundle;
+            return this;
+        }
+
+        /**
+         * Certificate parsing and signature verification, {@link CryptoBackend#JCA} by default.
+         * See {@link CryptoBackendSelector}.
+         */
+        public Builder cryptoBackend(final CryptoBackend cryptoBackend) {
+            this.cryptoBackend = cryptoBackend;
+            return this;
+        }
+
+        /**
+         * Receives an event for each successful verification by
+         * {@link AttestationVerifier#verifySerialized} and
+         * for each rejection of a message signed with the pinned persistent key of a paired
+         * Auditee. No history is kept by default.
+         */
+        public Builder history(final VerificationHistory history) {
+            this.history = history;
+            return this;
+        }
+
+        public AttestationVerifier build() {
+            return new AttestationVerifier(this);
+        }
+    }
+
+    /**
+     * @param trustAnchors trusted key attestation root certificates
+     */
+    public static Builder builder(final TrustAnchors trustAnchors) {
+        return new Builder(trustAnchors);
+    }
+
+    private AttestationVerifier(final Builder builder) {
+        trustAnchors = builder.trustAnchors;
+        chainCodec = builder.chainCodec;
+        pairingStore = builder.pairingStore;
+        debug = builder.debug;
+        metrics = builder.metrics;
+        certificateCache = builder.certificateCache != null
+                ? builder.certificateCache : new CertificateCache();
+        policyBundle = new AtomicReference<>(builder.policyBundle != null
+                ? builder.policyBundle : PolicyBundle.getDefault());
+        cryptoBackend = builder.cryptoBackend;
+        history = builder.history;
+    }
+
+    public PolicyBundle getPolicyBundle() {
+        return policyBundle.get();
+    }
+
+    /**
+     * Switches to a newer bundle of supported devices and policy without blocking verification.
+     * Verifications already in progress complete with the bundle they started with.
+     *
+     * @return false if the bundle does not have a higher serial number than the current one
+     */
+    public boolean updatePolicyBundle(final PolicyBundle bundle) {
+        while (true) {
+            final PolicyBundle current = policyBundle.get();
+            if (bundle.serial <= current.serial) {
+                return false;
+            }
+            if (policyBundle.compareAndSet(current, bundle)) {
+                logger.info("policy bundle updated from serial " + current.serial + " to " + bundle.serial);
+                return true;
+            }
+        }
+    }
+
+    public static byte[] getFingerprint(final Certificate certificate)
+            throws CertificateEncodingException {
+        return FINGERPRINT_HASH_FUNCTION.hashBytes(certificate.getEncoded()).asBytes();
+    }
+
+    public static X509Certificate generateCertificate(final InputStream in)
+            throws CertificateException {
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+    }
+
+    /**
+     * Verifies an attestation certificate chain without any pairing state.
+     *
+     * <p>This is also used by the Auditee as a sanity check before sending the chain.
+     */
+    public Verified verifyStateless(final Certificate[] certificates,
+            final byte[] challenge, final boolean hasPersistentKey) throws GeneralSecurityException {
+        final StageTimer timer = new StageTimer(metrics);
+        try {
+            timer.begin(Stage.CERTIFICATE_PARSE);
+            final Verified verified = verifyStateless(certificates, internChain(certificates),
+                    challenge, hasPersistentKey, false, policyBundle.get(), timer);
+            timer.verified();
+            return verified;
+        } catch (final GeneralSecurityException | RuntimeException e) {
+            timer.rejected(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the interned entries for the certificates after the attestation certificate, which
+     * is unique to each attestation and left out.
+     */
+    private CertificateCache.Entry[] internChain(final Certificate[] certificates)
+            throws CertificateException {
+        final CertificateCache.Entry[] entries = new CertificateCache.Entry[certificates.length];
+        for (int i = 1; i < certificates.length; i++) {
+            entries[i] = certificateCache.get(certificates[i]);
+        }
+        return entries;
+    }
+
+    private Verified verifyStateless(final Certificate[] certificates,
+            final CertificateCache.Entry[] entries, final byte[] challenge,
+            final boolean hasPersistentKey, final boolean pinnedChain, final PolicyBundle bundle,
+            final StageTimer timer) throws GeneralSecurityException {
+
+        timer.begin(Stage.CHAIN_SIGNATURES);
+        verifyCertificateSignatures(certificates, entries, hasPersistentKey, pinnedChain,
+                cryptoBackend);
+
+        // check that the root certificate is a valid key attestation root
+        final int rootIndex = certificates.length - 1;
+        if (rootIndex == 0 ? !trustAnchors.contains(certificates[0])
+                : !trustAnchors.contains(entries[rootIndex].digest)) {
+            throw new VerificationException(Reason.ROOT_NOT_TRUSTED, "root certificate is not a valid key attestation root");
+        }
+
+        // authorization list fields are only decoded as they are checked
+        try {
+            return verifyAttestation(certificates, entries, challenge, hasPersistentKey, bundle, timer);
+        } catch (final LazyParsingException e) {
+            throw new VerificationException(Reason.MALFORMED_ATTESTATION, e.getMessage(), e.getCause());
+        }
+    }
+
+    private Verified verifyAttestation(final Certificate[] certificates,
+            final CertificateCache.Entry[] entries, final byte[] challenge,
+            final boolean hasPersistentKey, final PolicyBundle bundle, final StageTimer timer)
+            throws GeneralSecurityException {
+        final VerificationPolicy policy = bundle.policy;
+        timer.begin(Stage.ATTESTATION_PARSE);
+        final Attestation attestation = new Attestation((X509Certificate) certificates[0], true);
+
+        final int attestationSecurityLevel = attestation.getAttestationSecurityLevel();
+
+        // enforce hardware-based attestation
+        if (attestationSecurityLevel != Attestation.KM_SECURITY_LEVEL_TRUSTED_ENVIRONMENT &&
+                attestationSecurityLevel != Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
+            throw new VerificationException(Reason.ATTESTATION_SECURITY_LEVEL_INVALID, "attestation security level is not valid");
+        }
+        if (attestation.getKeymasterSecurityLevel() != attestationSecurityLevel) {
+            throw new VerificationException(Reason.KEYMASTER_SECURITY_LEVEL_MISMATCH, "keymaster security level does not match attestation security level");
+        }
+
+        // prevent replay attacks
+        if (!Arrays.equals(attestation.getAttestationChallenge(), challenge)) {
+            throw new VerificationException(Reason.CHALLENGE_MISMATCH, "challenge mismatch");
+        }
+
+        // enforce communicating with the Auditor app via OS level security
+        final AuthorizationList softwareEnforced = attestation.getSoftwareEnforced();
+        final AttestationApplicationId attestationApplicationId = softwareEnforced.getAttestationApplicationId();
+        final List<AttestationPackageInfo> infos = attestationApplicationId.getAttestationPackageInfos();
+        if (infos.size() != 1) {
+            throw new VerificationException(Reason.ATTESTATION_PACKAGES_INVALID, "invalid number of attestation packages");
+        }
+        final AttestationPackageInfo info = infos.get(0);
+        final List<byte[]> signatureDigests = attestationApplicationId.getSignatureDigests();
+        if (signatureDigests.size() != 1) {
+            throw new VerificationException(Reason.APP_SIGNATURES_INVALID, "invalid number of Auditor app signatures");
+        }
+        final String signatureDigest = BaseEncoding.base16().encode(signatureDigests.get(0));
+        final byte appVariant;
+        if (AUDITOR_APP_PACKAGE_NAME_RELEASE.equals(info.getPackageName())) {
+            if (!AUDITOR_APP_SIGNATURE_DIGEST_RELEASE.equals(signatureDigest)) {
+                throw new VerificationException(Reason.APP_SIGNING_KEY_INVALID, "invalid Auditor app signing key");
+            }
+            appVariant = AUDITOR_APP_VARIANT_RELEASE;
+        } else if (AUDITOR_APP_PACKAGE_NAME_PLAY.equals(info.getPackageName())) {
+            if (!AUDITOR_APP_SIGNATURE_DIGEST_PLAY.equals(signatureDigest)) {
+                throw new VerificationException(Reason.APP_SIGNING_KEY_INVALID, "invalid Auditor app signing key");
+            }
+            appVariant = AUDITOR_APP_VARIANT_PLAY;
+        } else if (AUDITOR_APP_PACKAGE_NAME_DEBUG.equals(info.getPackageName())) {
+            if (!debug) {
+                throw new VerificationException(Reason.APP_DEBUG_UNTRUSTED, "Auditor debug builds are only trusted by other Auditor debug builds");
+            }
+            if (!AUDITOR_APP_SIGNATURE_DIGEST_DEBUG.equals(signatureDigest)) {
+                throw new VerificationException(Reason.APP_SIGNING_KEY_INVALID, "invalid Auditor app signing key");
+            }
+            appVariant = AUDITOR_APP_VARIANT_DEBUG;
+        } else {
+            throw new VerificationException(Reason.APP_PACKAGE_INVALID, "invalid Auditor app package name: " + info.getPackageName());
+        }
+        final int appVersion = Math.toIntExact(info.getVersion()); // int for compatibility
+        if (appVersion < policy.auditorAppMinimumVersion) {
+            throw new VerificationException(Reason.APP_VERSION_TOO_OLD, "Auditor app is too old: " + appVersion);
+        }
+
+        timer.begin(Stage.DEVICE_LOOKUP);
+        final AuthorizationList teeEnforced = attestation.getTeeEnforced();
+
+        // verified boot security checks
+        final RootOfTrust rootOfTrust = teeEnforced.getRootOfTrust();
+        if (rootOfTrust == null) {
+            throw new VerificationException(Reason.ROOT_OF_TRUST_MISSING, "missing root of trust");
+        }
+        if (!rootOfTrust.isDeviceLocked()) {
+            throw new VerificationException(Reason.DEVICE_NOT_LOCKED, "device is not locked");
+        }
+        final int verifiedBootState = rootOfTrust.getVerifiedBootState();
+        final byte[] verifiedBootKeyBytes = rootOfTrust.getVerifiedBootKey();
+        final DeviceDatabase.Table table;
+        if (verifiedBootState == RootOfTrust.KM_VERIFIED_BOOT_SELF_SIGNED) {
+            if (attestationSecurityLevel == Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
+                table = DeviceDatabase.Table.STRONGBOX_CUSTOM_OS;
+            } else {
+                table = DeviceDatabase.Table.CUSTOM_OS;
+            }
+        } else if (verifiedBootState == RootOfTrust.KM_VERIFIED_BOOT_VERIFIED) {
+            if (attestationSecurityLevel == Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
+                table = DeviceDatabase.Table.STRONGBOX_STOCK;
+            } else {
+                table = DeviceDatabase.Table.STOCK;
+            }
+        } else {
+            throw new VerificationException(Reason.VERIFIED_BOOT_STATE_INVALID, "verified boot state is not verified or self signed");
+        }
+
+        final DeviceInfo device = bundle.deviceDatabase.getDevice(table, verifiedBootKeyBytes);
+        final String verifiedBootKey = BaseEncoding.base16().encode(verifiedBootKeyBytes);
+        if (device == null) {
+            throw new VerificationException(Reason.VERIFIED_BOOT_KEY_UNKNOWN, "invalid verified boot key fingerprint: " + verifiedBootKey);
+        }
+
+        // OS version sanity checks
+        final int osVersion = teeEnforced.getOsVersion();
+        if (osVersion == DEVELOPER_PREVIEW_OS_VERSION) {
+            if (!debug) {
+                throw new VerificationException(Reason.OS_VERSION_NOT_RELEASE, "OS version is not a production release");
+            }
+        } else if (osVersion < policy.osVersionMinimum) {
+            throw new VerificationException(Reason.OS_VERSION_TOO_OLD, "OS version too old: " + osVersion);
+        }
+        final int osPatchLevel = teeEnforced.getOsPatchLevel();
+        if (osPatchLevel < policy.osPatchLevelMinimum) {
+            throw new VerificationException(Reason.OS_PATCH_LEVEL_TOO_OLD, "OS patch level too old: " + osPatchLevel);
+        }
+        final int vendorPatchLevel;
+        if (teeEnforced.getVendorPatchLevel() == null) {
+            vendorPatchLevel = 0;
+        } else {
+            vendorPatchLevel = teeEnforced.getVendorPatchLevel();
+            if (vendorPatchLevel < policy.vendorPatchLevelMinimum && !device.extraPatchLevelMissing) {
+                throw new VerificationException(Reason.VENDOR_PATCH_LEVEL_TOO_OLD, "Vendor patch level too old: " + vendorPatchLevel);
+            }
+        }
+        final int bootPatchLevel;
+        if (teeEnforced.getBootPatchLevel() == null) {
+            bootPatchLevel = 0;
+        } else {
+            bootPatchLevel = teeEnforced.getBootPatchLevel();
+            if (bootPatchLevel < policy.bootPatchLevelMinimum && !device.extraPatchLevelMissing) {
+                throw new VerificationException(Reason.BOOT_PATCH_LEVEL_TOO_OLD, "Boot patch level too old: " + bootPatchLevel);
+            }
+        }
+
+        // key sanity checks
+        if (!teeEnforced.getPurposes().equals(
+                ImmutableSet.of(AuthorizationList.KM_PURPOSE_SIGN, AuthorizationList.KM_PURPOSE_VERIFY))) {
+            throw new VerificationException(Reason.KEY_PURPOSES_INVALID, "key has invalid purposes");
+        }
+        if (teeEnforced.getOrigin() != AuthorizationList.KM_ORIGIN_GENERATED) {
+            throw new VerificationException(Reason.KEY_ORIGIN_INVALID, "key not origin generated");
+        }
+        if (teeEnforced.isAllApplications()) {
+            throw new VerificationException(Reason.KEY_ALL_APPLICATIONS, "expected key only usable by Auditor app");
+        }
+        if (device.rollbackResistant && !teeEnforced.isRollbackResistant()) {
+            throw new VerificationException(Reason.KEY_NOT_ROLLBACK_RESISTANT, "expected rollback resistant key");
+        }
+
+        // version sanity checks
+        final int attestationVersion = attestation.getAttestationVersion();
+        logger.fine("attestationVersion: " + attestationVersion);
+        if (attestationVersion < device.attestationVersion) {
+            throw new VerificationException(Reason.ATTESTATION_VERSION_TOO_OLD, "attestation version " + attestationVersion + " below " + device.attestationVersion);
+        }
+        final int keymasterVersion = attestation.getKeymasterVersion();
+        logger.fine("keymasterVersion: " + keymasterVersion);
+        if (keymasterVersion < device.keymasterVersion) {
+            throw new VerificationException(Reason.KEYMASTER_VERSION_TOO_OLD, "keymaster version " + keymasterVersion + " below " + device.keymasterVersion);
+        }
+
+        final byte[] verifiedBootHash = rootOfTrust.getVerifiedBootHash();
+        if (attestationVersion >= 3 && verifiedBootHash == null) {
+            throw new VerificationException(Reason.VERIFIED_BOOT_HASH_MISSING, "verifiedBootHash expected for attestation version >= 3");
+        }
+
+        final Attestation attestation1 = entries[1].attestation;
+        final boolean attestKey = attestation1 != null;
+        if (attestKey) {
+            if (attestation1.getAttestationSecurityLevel() != attestation.getAttestationSecurityLevel()) {
+                throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key attestation security level does not match");
+            }
+
+            if (attestation1.getKeymasterSecurityLevel() != attestation.getKeymasterSecurityLevel()) {
+                throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key keymaster security level does not match");
+            }
+
+            final AuthorizationList teeEnforced1 = attestation1.getTeeEnforced();
+
+            // verified boot security checks
+            final RootOfTrust rootOfTrust1 = teeEnforced1.getRootOfTrust();
+            if (rootOfTrust1 == null) {
+                throw new VerificationException(Reason.ATTEST_KEY_ROOT_OF_TRUST_MISSING, "attest key missing root of trust");
+            }
+            if (rootOfTrust1.isDeviceLocked() != rootOfTrust.isDeviceLocked()) {
+                throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key lock state does not match");
+            }
+            if (rootOfTrust1.getVerifiedBootState() != rootOfTrust.getVerifiedBootState()) {
+                throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key verified boot state does not match");
+            }
+            if (!Arrays.equals(rootOfTrust1.getVerifiedBootKey(), rootOfTrust.getVerifiedBootKey())) {
+                throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key verified boot key does not match");
+            }
+
+            // key sanity checks
+            if (!teeEnforced1.getPurposes().equals(ImmutableSet.of(AuthorizationList.KM_PURPOSE_ATTEST_KEY))) {
+                throw new VerificationException(Reason.ATTEST_KEY_PURPOSES_INVALID, "attest key has invalid purposes");
+            }
+            if (teeEnforced1.getOrigin() != AuthorizationList.KM_ORIGIN_GENERATED) {
+                throw new VerificationException(Reason.ATTEST_KEY_ORIGIN_INVALID, "attest key not origin generated");
+            }
+            if (teeEnforced1.isAllApplications()) {
+                throw new VerificationException(Reason.ATTEST_KEY_ALL_APPLICATIONS, "expected attest key only usable by Auditor app");
+            }
+            if (device.rollbackResistant && !teeEnforced1.isRollbackResistant()) {
+                throw new VerificationException(Reason.ATTEST_KEY_NOT_ROLLBACK_RESISTANT, "expected rollback resistant attest key");
+            }
+
+            if (!hasPersistentKey) {
+                if (!Arrays.equals(attestation1.getAttestationChallenge(), attestation.getAttestationChallenge())) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key challenge does not match");
+                }
+
+                if (!attestation1.getSoftwareEnforced().getAttestationApplicationId().equals(attestationApplicationId)) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key application does not match");
+                }
+
+                // version sanity checks
+                if (attestation1.getAttestationVersion() != attestation.getAttestationVersion()) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key attestation version does not match");
+                }
+                if (attestation1.getKeymasterVersion() != attestation.getKeymasterVersion()) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key keymaster version does not match");
+                }
+
+                // OS version sanity checks
+                if (!teeEnforced1.getOsVersion().equals(teeEnforced.getOsVersion())) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key OS version does not match");
+                }
+                if (!teeEnforced1.getOsPatchLevel().equals(teeEnforced.getOsPatchLevel())) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key OS patch level does not match");
+                }
+                if (!teeEnforced1.getVendorPatchLevel().equals(teeEnforced.getVendorPatchLevel())) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key vendor patch level does not match");
+                }
+                if (!teeEnforced1.getBootPatchLevel().equals(teeEnforced.getBootPatchLevel())) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key boot patch level does not match");
+                }
+
+                if (!Arrays.equals(rootOfTrust1.getVerifiedBootHash(), rootOfTrust.getVerifiedBootHash())) {
+                    throw new VerificationException(Reason.ATTEST_KEY_MISMATCH, "attest key verified boot hash does not match");
+                }
+            }
+        }
+
+        for (int i = 2; i < certificates.length; i++) {
+            if (entries[i].attestation != null) {
+                throw new VerificationException(Reason.UNEXPECTED_ATTESTATION_EXTENSION, "only initial key and attest key should have attestation extension");
+            }
+        }
+
+        return new Verified(device.name, verifiedBootKey, verifiedBootHash, device.osName,
+                osVersion, osPatchLevel, vendorPatchLevel, bootPatchLevel, appVersion, appVariant,
+                attestationSecurityLevel, attestKey, device.perUserEncryption,
+                device.enforceStrongBox);
+    }
+
+    // Only checks expiry beyond the initial certificate for the initial pairing since the
+    // certificates are short lived when remote provisioning is in use and we prevent rotation by
+    // using the attest key feature to provide permanent pairing-specific certificate chains in
+    // order to pin them.
+    /**
+     * Verifies the signatures and validity of an attestation certificate chain up to its
+     * self-signed root, without checking the root against the trust anchors.
+     */
+    public static void verifyCertificateSignatures(final Certificate[] certChain,
+            final boolean hasPersistentKey) throws GeneralSecurityException {
+        verifyCertificateSignatures(certChain, null, hasPersistentKey, false, CryptoBackend.JCA);
+    }
+
+    /**
+     * @param entries interned certificates for all but the first one, remembering the signatures
+     *     that were already verified, or null
+     */
+    private static void verifyCertificateSignatures(final Certificate[] certChain,
+            final CertificateCache.Entry[] entries, final boolean hasPersistentKey,
+            final boolean pinnedChain, final CryptoBackend backend) throws GeneralSecurityException {
+        // The rest of a pinned chain is byte-identical to the chain verified at pairing time, so
+        // only the fresh certificate needs to be checked.
+        final int verifyLength = pinnedChain ? 2 : certChain.length;
+        for (int i = 1; i < verifyLength; ++i) {
+            try {
+                if (i == 1 || !hasPersistentKey) {
+                    ((X509Certificate) certChain[i - 1]).checkValidity();
+                }
+                if (entries == null || i == 1) {
+                    backend.verifyCertificate((X509Certificate) certChain[i - 1], certChain[i].getPublicKey());
+                } else if (!entries[i - 1].isVerifiedBy(entries[i])) {
+                    backend.verifyCertificate(entries[i - 1].certificate, entries[i].publicKey);
+                    entries[i - 1].setVerifiedBy(entries[i]);
+                }
+            } catch (InvalidKeyException | CertificateException | NoSuchAlgorithmException
+                    | NoSuchProviderException | SignatureException e) {
+                throw new VerificationException(Reason.CHAIN_SIGNATURE_INVALID, "Failed to verify certificate "
+                        + certChain[i - 1] + " with public key " + certChain[i].getPublicKey(), e);
+            }
+        }
+        if (pinnedChain) {
+            return;
+        }
+
+        // Last cert is self-signed.
+        final int i = certChain.length - 1;
+        try {
+            if (i == 0 || !hasPersistentKey) {
+                ((X509Certificate) certChain[i]).checkValidity();
+            }
+            if (entries == null || i == 0) {
+                backend.verifyCertificate((X509Certificate) certChain[i], certChain[i].getPublicKey());
+            } else if (!entries[i].isVerifiedBy(entries[i])) {
+                backend.verifyCertificate(entries[i].certificate, entries[i].publicKey);
+                entries[i].setVerifiedBy(entries[i]);
+            }
+        } catch (CertificateException e) {
+            throw new VerificationException(Reason.ROOT_SIGNATURE_INVALID,
+                    "Root cert " + certChain[i] + " is not correctly self-signed", e);
+        }
+    }
+
+    private void verifySignature(final PublicKey key, final ByteBuffer message,
+            final byte[] signature) throws GeneralSecurityException {
+        if (!cryptoBackend.verifySignature(key, message, signature)) {
+            throw new VerificationException(Reason.SIGNATURE_INVALID, "signature verification failed");
+        }
+    }
+
+    private static byte[] getChainDigest(final byte[][] certificates) {
+        final Hasher hasher = CHAIN_DIGEST_HASH_FUNCTION.newHasher();
+        for (int i = 1; i < certificates.length; i++) {
+            hasher.putInt(certificates[i].length);
+            hasher.putBytes(certificates[i]);
+        }
+        return hasher.hash().asBytes();
+    }
+
+    private static void checkPinnedVersions(final Verified verified, final Pairing pairing,
+            final PolicyBundle bundle) throws GeneralSecurityException {
+        final String pinnedVerifiedBootKey = pairing.verifiedBootKey;
+        if (!verified.verifiedBootKey.equals(pinnedVerifiedBootKey)) {
+            final byte[] legacyKey = bundle.deviceDatabase.getLegacyKey(
+                    BaseEncoding.base16().decode(verified.verifiedBootKey));
+            final String legacyFingerprint = legacyKey == null ? null : BaseEncoding.base16().encode(legacyKey);
+            if (legacyFingerprint != null && legacyFingerprint.equals(pinnedVerifiedBootKey)) {
+                logger.fine("migration from legacy fingerprint " + legacyFingerprint + " to " + verified.verifiedBootKey);
+            } else {
+                throw new VerificationException(Reason.VERIFIED_BOOT_KEY_MISMATCH, "pinned verified boot key mismatch");
+            }
+        }
+        if (verified.osVersion != DEVELOPER_PREVIEW_OS_VERSION &&
+                verified.osVersion < pairing.osVersion) {
+            throw new VerificationException(Reason.OS_VERSION_DOWNGRADE, "OS version downgrade detected");
+        }
+        if (verified.osPatchLevel < pairing.osPatchLevel) {
+            throw new VerificationException(Reason.OS_PATCH_LEVEL_DOWNGRADE, "OS patch level downgrade detected");
+        }
+        if (verified.vendorPatchLevel < pairing.vendorPatchLevel) {
+            throw new VerificationException(Reason.VENDOR_PATCH_LEVEL_DOWNGRADE, "Vendor patch level downgrade detected");
+        }
+        if (verified.bootPatchLevel < pairing.bootPatchLevel) {
+            throw new VerificationException(Reason.BOOT_PATCH_LEVEL_DOWNGRADE, "Boot patch level downgrade detected");
+        }
+        if (verified.appVersion < pairing.appVersion) {
+            throw new VerificationException(Reason.APP_VERSION_DOWNGRADE, "App version downgraded");
+        }
+        if (verified.appVariant < pairing.appVariant) {
+            throw new VerificationException(Reason.APP_VERSION_DOWNGRADE, "App version downgraded");
+        }
+        if (verified.securityLevel != pairing.securityLevel) {
+            throw new VerificationException(Reason.SECURITY_LEVEL_MISMATCH, "Security level mismatch");
+        }
+    }
+
+    private Verification verify(final byte[] fingerprint, final Pairing storedPairing,
+            final boolean signatureVerified, final byte[] challenge,
+            final ByteBuffer signedMessage, final byte[] signature,
+            final Certificate[] attestationCertificates, final StageTimer timer,
+            final int osEnforcedFlags, final PolicyBundle bundle) throws GeneralSecurityException, IOException {
+        timer.begin(Stage.PIN_COMPARISON);
+        final String fingerprintHex = BaseEncoding.base16().encode(fingerprint);
+        final byte[] currentFingerprint = getFingerprint(attestationCertificates[0]);
+        final boolean hasPersistentKey = !Arrays.equals(currentFingerprint, fingerprint);
+
+        Pairing pairing = hasPersistentKey ? storedPairing : null;
+        if (hasPersistentKey && pairing == null) {
+            throw new VerificationException(Reason.PAIRING_MISSING,
+                    "Pairing data for this Auditee is missing. Cannot perform paired attestation.\n" +
+                    "\nEither the initial pairing was incomplete or the device is compromised.\n" +
+                    "\nIf the initial pairing was simply not completed, clear the pairing data on either the Auditee or the Auditor via the menu and try again.\n");
+        }
+
+        timer.begin(Stage.CERTIFICATE_PARSE);
+        final CertificateCache.Entry[] entries = internChain(attestationCertificates);
+        final byte[][] certificates = new byte[attestationCertificates.length][];
+        certificates[0] = attestationCertificates[0].getEncoded();
+        for (int i = 1; i < attestationCertificates.length; i++) {
+            certificates[i] = entries[i].encoded;
+        }
+
+        timer.begin(Stage.PIN_COMPARISON);
+
+        // fast path for an unchanged chain, with the pinned part verified at pairing time
+        final boolean pinnedChain = hasPersistentKey && pairing.chainDigest != null &&
+                Arrays.equals(getChainDigest(certificates), pairing.chainDigest);
+
+        final Verified verified = verifyStateless(attestationCertificates, entries, challenge,
+                hasPersistentKey, pinnedChain, bundle, timer);
+
+        boolean attestKeyMigration = false;
+        if (hasPersistentKey) {
+            timer.begin(Stage.PIN_COMPARISON);
+            final byte[][] pinnedCertificates = pairing.certificates;
+            final byte[][] pinnedDigests = pairing.getCertificateDigests();
+            if (!pinnedChain) {
+                final int chainOffset;
+                final int pinOffset;
+                if (attestationCertificates.length != pinnedDigests.length) {
+                    if (attestationCertificates.length == 5 && pinnedDigests.length == 4) {
+                        // backwards compatible use of attest key without the security benefits for
+                        // forward compatibility with remote provisioning
+                        chainOffset = 1;
+                        pinOffset = 0;
+                        attestKeyMigration = true;
+                    } else if (ALLOW_ATTEST_KEY_DOWNGRADE && attestationCertificates.length == 4 && pinnedDigests.length == 5) {
+                        // temporarily work around attest key breakage by allowing not using it
+                        chainOffset = 0;
+                        pinOffset = 1;
+                    } else {
+                        throw new VerificationException(Reason.CHAIN_LENGTH_MISMATCH, "certificate chain length mismatch");
+                    }
+                } else {
+                    chainOffset = 0;
+                    pinOffset = 0;
+                }
+                // the interned certificates are keyed by the same digest as the pinned ones
+                for (int i = 1 + chainOffset; i < certificates.length; i++) {
+                    if (!Arrays.equals(entries[i].digest.asBytes(), pinnedDigests[i - chainOffset + pinOffset])) {
+                        throw new VerificationException(Reason.CHAIN_MISMATCH, "certificate chain mismatch");
+                    }
+                }
+            }
+
+            final PublicKey persistentKey;
+            if (pairing.persistentKey != null) {
+                persistentKey = pairing.getPersistentKey();
+            } else {
+                final Certificate persistentCertificate = cryptoBackend.generateCertificate(
+                        pinnedCertificates[0], 0, pinnedCertificates[0].length);
+                if (!Arrays.equals(fingerprint, getFingerprint(persistentCertificate))) {
+                    throw new VerificationException(Reason.PINNING_DATA_CORRUPT, "corrupt Auditor pinning data");
+                }
+                persistentKey = persistentCertificate.getPublicKey();
+            }
+            if (!signatureVerified) {
+                timer.begin(Stage.OUTER_SIGNATURE);
+                verifySignature(persistentKey, signedMessage, signature);
+                timer.begin(Stage.PIN_COMPARISON);
+            }
+
+            // The pinned chain and persistent key never change for a fingerprint, but the pinned
+            // versions may have been updated by a concurrent verification since they were loaded.
+            final Lock pinLock = pinLocks.get(fingerprintHex);
+            pinLock.lock();
+            try {
+                timer.begin(Stage.PERSISTENCE);
+                pairing = pairingStore.load(fingerprint);
+                if (pairing == null) {
+                    throw new VerificationException(Reason.PAIRING_MISSING, "pairing data was cleared during verification");
+                }
+                timer.begin(Stage.PIN_COMPARISON);
+                checkPinnedVersions(verified, pairing, bundle);
+
+                // handle migration to v2 verified boot key fingerprint and fill in the chain digest
+                // and persistent key for pairings made before they were stored
+                timer.begin(Stage.PERSISTENCE);
+                pairingStore.update(fingerprint, new Pairing(pinnedCertificates, pinnedDigests,
+                        pairing.chainDigest != null ? pairing.chainDigest : getChainDigest(pinnedCertificates),
+                        pairing.persistentKey != null ? pairing.persistentKey : persistentKey.getEncoded(),
+                        verified.verifiedBootKey, verified.osVersion, verified.osPatchLevel,
+                        verified.vendorPatchLevel != 0 ? verified.vendorPatchLevel : pairing.vendorPatchLevel,
+                        verified.bootPatchLevel != 0 ? verified.bootPatchLevel : pairing.bootPatchLevel,
+                        verified.appVersion, verified.appVariant, verified.securityLevel,
+                        pairing.verifiedTimeFirst, new Date().getTime()));
+            } finally {
+                pinLock.unlock();
+            }
+        } else {
+            timer.begin(Stage.OUTER_SIGNATURE);
+            verifySignature(attestationCertificates[0].getPublicKey(), signedMessage, signature);
+
+            timer.begin(Stage.DEVICE_LOOKUP);
+            if (PREFER_STRONGBOX && verified.enforceStrongBox && verified.securityLevel != Attestation.KM_SECURITY_LEVEL_STRONG_BOX) {
+                throw new VerificationException(Reason.STRONGBOX_REQUIRED, "non-StrongBox security level for initial pairing with StrongBox device");
+            }
+
+            final Lock pinLock = pinLocks.get(fingerprintHex);
+            pinLock.lock();
+            try {
+                timer.begin(Stage.PERSISTENCE);
+                final long now = new Date().getTime();
+                final byte[][] digests = new byte[certificates.length][];
+                // the fingerprint is also the digest of the attestation certificate
+                digests[0] = currentFingerprint;
+                for (int i = 1; i < certificates.length; i++) {
+                    digests[i] = entries[i].digest.asBytes();
+                }
+                pairingStore.store(fingerprint, new Pairing(certificates, digests, getChainDigest(certificates),
+                        attestationCertificates[0].getPublicKey().getEncoded(), verified.verifiedBootKey, verified.osVersion, verified.osPatchLevel,
+                        verified.vendorPatchLevel, verified.bootPatchLevel,
+                        verified.appVersion, verified.appVariant, verified.securityLevel, now, now));
+            } finally {
+                pinLock.unlock();
+            }
+        }
+
+        return new Verification(hasPersistentKey, fingerprintHex, verified, attestKeyMigration,
+                pairing, osEnforcedFlags);
+    }
+
+    public Verification verifySerialized(final byte[] attestationResult,
+            final byte[] challengeMessage) throws DataFormatException, GeneralSecurityException, IOException {
+        final StageTimer timer = new StageTimer(metrics);
+        try {
+            final Verification verification = verifySerialized(attestationResult, challengeMessage, timer);
+            timer.verified();
+            return verification;
+        } catch (final Exception e) {
+            timer.rejected(e);
+            throw e;
+        }
+    }
+
+    private Verification verifySerialized(final byte[] attestationResult, final byte[] challengeMessage,
+            final StageTimer timer) throws DataFormatException, GeneralSecurityException, IOException {
+        final PolicyBundle bundle = policyBundle.get();
+        timer.begin(Stage.DESERIALIZE);
+        final AttestationMessage message = AttestationMessage.wrap(attestationResult);
+        final byte[] fingerprint = message.copyFingerprint();
+
+        final int osEnforcedFlags = message.getOsEnforcedFlags();
+        if ((osEnforcedFlags & ~OS_ENFORCED_FLAGS_ALL) != 0) {
+            logger.warning("unknown OS enforced flag set (flags: " + Integer.toBinaryString(osEnforcedFlags) + ")");
+        }
+        if ((osEnforcedFlags & OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM) != 0
+                && (osEnforcedFlags & OS_ENFORCED_FLAGS_DEVICE_ADMIN) == 0) {
+            throw new VerificationException(Reason.DEVICE_ADMIN_STATE_INVALID, "invalid device administrator state");
+        }
+
+        final byte[] signature = message.copySignature();
+        final ByteBuffer signedMessage = message.signedMessage();
+
+        // For a paired Auditee, check the outer signature with the pinned persistent key before
+        // paying for decompressing and parsing the certificate chain. A valid message with this
+        // fingerprint is always signed by the key of the certificate it was derived from.
+        timer.begin(Stage.PERSISTENCE);
+        final Pairing pairing = pairingStore.load(fingerprint);
+        final Verification verification;
+        boolean signatureVerified = false;
+        try {
+            if (pairing != null && pairing.persistentKey != null) {
+                timer.begin(Stage.OUTER_SIGNATURE);
+                verifySignature(pairing.getPersistentKey(), signedMessage.duplicate(), signature);
+                signatureVerified = true;
+            }
+
+            final Certificate[] certificates = chainCodec.decode(message.message,
+                    message.compressedChainOffset, message.compressedChainLength, cryptoBackend, timer);
+
+            final byte[] challenge = Arrays.copyOfRange(challengeMessage, 1 + CHALLENGE_LENGTH, 1 + CHALLENGE_LENGTH * 2);
+            verification = verify(fingerprint, pairing, signatureVerified, challenge, signedMessage,
+                    signature, certificates, timer, osEnforcedFlags, bundle);
+        } catch (final Exception e) {
+            // Fingerprints are not secret, so only a message signed with the pinned key is known to
+            // come from the paired Auditee. Rejections of pairings made before the persistent key
+            // was stored are not recorded until it is filled in by a successful verification.
+            if (signatureVerified) {
+                recordHistory(fingerprint, VerificationEvent.rejected(System.currentTimeMillis(),
+                        osEnforcedFlags, timer.reason(e)));
+            }
+            throw e;
+        }
+        recordHistory(fingerprint, VerificationEvent.verified(System.currentTimeMillis(),
+                verification.verified, osEnforcedFlags));
+        return verification;
+    }
+
+    // The pinning data is already stored, so a failure to record history only loses the event
+    private void recordHistory(final byte[] fingerprint, final VerificationEvent event) {
+        if (history == null) {
+            return;
+        }
+        try {
+            history.append(fingerprint, event);
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, "failed to record verification history", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package app.attestation.auditor.verifier;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Verification of many attestation messages in parallel on a work-stealing pool.
+ *
+ * <p>Decoding, parsing and signature checks run concurrently. Only the read-modify-write of the
+ * pinning data is serialized by the {@link AttestationVerifier}, so the downgrade checks stay
+ * exact when the same Auditee appears more than once in a batch, while different Auditees are
+ * verified fully in parallel.
+ */
+public class BatchVerifier implements Closeable {
+    /**
+     * An attestation message together with the challenge message it answers.
+     */
+    public static class Request {
+        public final byte[] attestationResult;
+        public final byte[] challengeMessage;
+
+        public Request(final byte[] attestationResult, final byte[] challengeMessage) {
+            this.attestationResult = attestationResult;
+            this.challengeMessage = challengeMessage;
+        }
+    }
+
+    /**
+     * Outcome of a single request: either a verification or the exception it was rejected with.
+     */
+    public static class Result {
+        public final Verification verification;
+        public final Exception error;
+
+        private Result(final Verification verification, final Exception error) {
+            this.verification = verification;
+            this.error = error;
+        }
+
+        public boolean isVerified() {
+            return verification != null;
+        }
+    }
+
+    private final AttestationVerifier verifier;
+    private final ForkJoinPool pool;
+
+    public BatchVerifier(final AttestationVerifier verifier) {
+        this(verifier, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism number of verifications run at the same time
+     */
+    public BatchVerifier(final AttestationVerifier verifier, final int parallelism) {
+        this.verifier = verifier;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Verifies every request and returns the results in submission order. A rejected request does
+     * not affect the others.
+     */
+    public List<Result> verify(final List<Request> requests) throws InterruptedException {
+        // tasks catch their own exceptions since the pool wraps checked exceptions
+        final List<Callable<Result>> tasks = new ArrayList<>(requests.size());
+        for (final Request request : requests) {
+            tasks.add(() -> {
+                try {
+                    return new Result(verifier.verifySerialized(request.attestationResult,
+                            request.challengeMessage), null);
+                } catch (final Exception e) {
+                    return new Result(null, e);
+                }
+            });
+        }
+
+        final List<Future<Result>> futures = pool.invokeAll(tasks);
+        final List<Result> results = new ArrayList<>(futures.size());
+        for (final Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (final ExecutionException e) {
+                throw (Error) e.getCause();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops the worker threads after the batches in progress have completed.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
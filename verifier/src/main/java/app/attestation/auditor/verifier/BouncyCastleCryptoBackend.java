@@ -0,0 +1,141 @@
+package app.attestation.auditor.verifier;
+
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.digests.SHA384Digest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.RSAKeyParameters;
+import org.bouncycastle.crypto.signers.DSADigestSigner;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.RSADigestSigner;
+import org.bouncycastle.jcajce.provider.asymmetric.x509.CertificateFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CryptoBackend} using the BouncyCastle lightweight API directly, without going through
+ * the JCA provider framework. Certificates are parsed by the BouncyCastle certificate factory
+ * and signatures are checked with digest signers kept per thread and algorithm. Converted
+ * public keys, including the precomputed point multiplication tables of EC keys, are shared
+ * across threads in a {@link PublicKeyCache}.
+ *
+ * <p>Signature algorithms other than ECDSA and PKCS#1 RSA with SHA-2 are delegated to
+ * {@link CryptoBackend#JCA}.
+ */
+final class BouncyCastleCryptoBackend implements CryptoBackend {
+    private static final String OID_ECDSA_SHA256 = "1.2.840.10045.4.3.2";
+    private static final String OID_ECDSA_SHA384 = "1.2.840.10045.4.3.3";
+    private static final String OID_ECDSA_SHA512 = "1.2.840.10045.4.3.4";
+    private static final String OID_RSA_SHA256 = "1.2.840.113549.1.1.11";
+    private static final String OID_RSA_SHA384 = "1.2.840.113549.1.1.12";
+    private static final String OID_RSA_SHA512 = "1.2.840.113549.1.1.13";
+
+    private final ThreadLocal<CertificateFactory> certificateFactory =
+            ThreadLocal.withInitial(CertificateFactory::new);
+    // signers by signature algorithm OID
+    private final ThreadLocal<Map<String, Signer>> signers = ThreadLocal.withInitial(HashMap::new);
+    private final PublicKeyCache keyCache;
+
+    BouncyCastleCryptoBackend(final long keyCacheBytes) {
+        keyCache = new PublicKeyCache(keyCacheBytes);
+    }
+
+    @Override
+    public String getName() {
+        return "BouncyCastle";
+    }
+
+    @Override
+    public X509Certificate generateCertificate(final byte[] encoded, final int offset,
+            final int length) throws CertificateException {
+        return (X509Certificate) certificateFactory.get().engineGenerateCertificate(
+                new ByteArrayInputStream(encoded, offset, length));
+    }
+
+    @Override
+    public void verifyCertificate(final X509Certificate certificate, final PublicKey issuerKey)
+            throws GeneralSecurityException {
+        final Signer signer = getSigner(certificate.getSigAlgOID());
+        if (signer == null || certificate.getSigAlgParams() != null) {
+            JCA.verifyCertificate(certificate, issuerKey);
+            return;
+        }
+        signer.init(false, getKeyParameter(issuerKey, certificate.getSigAlgOID()));
+        final byte[] tbsCertificate = certificate.getTBSCertificate();
+        signer.update(tbsCertificate, 0, tbsCertificate.length);
+        if (!signer.verifySignature(certificate.getSignature())) {
+            throw new SignatureException("Signature does not match.");
+        }
+    }
+
+    @Override
+    public boolean verifySignature(final PublicKey key, final ByteBuffer message,
+            final byte[] signature) throws GeneralSecurityException {
+        final Signer signer = getSigner(OID_ECDSA_SHA256);
+        signer.init(false, getKeyParameter(key, OID_ECDSA_SHA256));
+        if (message.hasArray()) {
+            signer.update(message.array(), message.arrayOffset() + message.position(),
+                    message.remaining());
+            message.position(message.limit());
+        } else {
+            final byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            signer.update(bytes, 0, bytes.length);
+        }
+        return signer.verifySignature(signature);
+    }
+
+    private AsymmetricKeyParameter getKeyParameter(final PublicKey key, final String oid)
+            throws InvalidKeyException {
+        final AsymmetricKeyParameter parameter = keyCache.get(key);
+        final boolean ecdsa = oid.startsWith("1.2.840.10045.");
+        if (ecdsa ? !(parameter instanceof ECPublicKeyParameters)
+                : !(parameter instanceof RSAKeyParameters)) {
+            throw new InvalidKeyException("public key does not match the signature algorithm");
+        }
+        return parameter;
+    }
+
+    // Returns the signer for an algorithm of this thread, or null if it is not supported
+    private Signer getSigner(final String oid) {
+        final Map<String, Signer> cache = signers.get();
+        Signer signer = cache.get(oid);
+        if (signer == null) {
+            signer = createSigner(oid);
+            if (signer != null) {
+                cache.put(oid, signer);
+            }
+        }
+        return signer;
+    }
+
+    private static Signer createSigner(final String oid) {
+        switch (oid) {
+            case OID_ECDSA_SHA256:
+                return new DSADigestSigner(new ECDSASigner(), new SHA256Digest());
+            case OID_ECDSA_SHA384:
+                return new DSADigestSigner(new ECDSASigner(), new SHA384Digest());
+            case OID_ECDSA_SHA512:
+                return new DSADigestSigner(new ECDSASigner(), new SHA512Digest());
+            case OID_RSA_SHA256:
+                return new RSADigestSigner(new SHA256Digest());
+            case OID_RSA_SHA384:
+                return new RSADigestSigner(new SHA384Digest());
+            case OID_RSA_SHA512:
+                return new RSADigestSigner(new SHA512Digest());
+            default:
+                return null;
+        }
+    }
+}
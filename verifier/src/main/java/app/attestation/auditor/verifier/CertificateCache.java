@@ -0,0 +1,133 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import app.attestation.auditor.attestation.Attestation;
+
+/**
+ * Interning of the intermediate and root certificates shared by many attestation chains.
+ *
+ * <p>Each distinct certificate is parsed once into an {@link Entry} keyed by the SHA-256 digest of
+ * its DER encoding, so a repeated certificate costs a hash lookup instead of a reparse. The cache
+ * is bounded and evicts the least recently used entries. Instances are thread-safe.
+ */
+public class CertificateCache {
+    static final HashFunction DIGEST_HASH_FUNCTION = Hashing.sha256();
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * Parsed form of a certificate. Everything except the record of verified signatures is
+     * immutable and the byte arrays must not be modified.
+     */
+    static final class Entry {
+        // also the fingerprint of the certificate used by the protocol
+        final HashCode digest;
+        final byte[] encoded;
+        final X509Certificate certificate;
+        final PublicKey publicKey;
+        // eagerly parsed attestation extension or null if there is none
+        final Attestation attestation;
+        // digests of the certificates whose public key verified the signature of this one
+        private final Set<HashCode> verifiedBy = ConcurrentHashMap.newKeySet();
+
+        private Entry(final HashCode digest, final byte[] encoded,
+                final X509Certificate certificate) throws CertificateParsingException {
+            this.digest = digest;
+            this.encoded = encoded;
+            this.certificate = certificate;
+            this.publicKey = certificate.getPublicKey();
+            this.attestation = Attestation.parse(certificate, false);
+        }
+
+        boolean isVerifiedBy(final Entry issuer) {
+            return verifiedBy.contains(issuer.digest);
+        }
+
+        void setVerifiedBy(final Entry issuer) {
+            verifiedBy.add(issuer.digest);
+        }
+    }
+
+    private final Cache<HashCode, Entry> entries;
+    // interned certificate instances, compared by identity, to avoid encoding them again
+    private final Cache<Certificate, Entry> instances;
+
+    public CertificateCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize maximum number of distinct certificates kept
+     */
+    public CertificateCache(final int maximumSize) {
+        entries = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        instances = CacheBuilder.newBuilder().maximumSize(maximumSize).weakKeys().build();
+    }
+
+    /**
+     * Returns the entry for the DER encoded certificate in the given range, parsing it only if it
+     * has not been seen before.
+     */
+    Entry intern(final byte[] buffer, final int offset, final int length,
+            final CryptoBackend backend) throws CertificateException {
+        final HashCode digest = DIGEST_HASH_FUNCTION.hashBytes(buffer, offset, length);
+        final Entry cached = entries.getIfPresent(digest);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] encoded = new byte[length];
+        System.arraycopy(buffer, offset, encoded, 0, length);
+        return load(digest, encoded, backend.generateCertificate(encoded, 0, length));
+    }
+
+    /**
+     * Returns the entry for a certificate, which does not have to come from this cache.
+     */
+    Entry get(final Certificate certificate) throws CertificateException {
+        final Entry instance = instances.getIfPresent(certificate);
+        if (instance != null) {
+            return instance;
+        }
+        final byte[] encoded = certificate.getEncoded();
+        final HashCode digest = DIGEST_HASH_FUNCTION.hashBytes(encoded);
+        final Entry cached = entries.getIfPresent(digest);
+        if (cached != null) {
+            return cached;
+        }
+        return load(digest, encoded, (X509Certificate) certificate);
+    }
+
+    private Entry load(final HashCode digest, final byte[] encoded,
+            final X509Certificate certificate) throws CertificateException {
+        try {
+            final Entry entry = entries.get(digest, () -> new Entry(digest, encoded, certificate));
+            instances.put(entry.certificate, entry);
+            return entry;
+        } catch (final ExecutionException e) {
+            throw (CertificateParsingException) e.getCause();
+        }
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.invalidateAll();
+        instances.invalidateAll();
+    }
+}
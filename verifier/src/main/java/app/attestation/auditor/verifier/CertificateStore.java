@@ -0,0 +1,327 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Content addressed storage for the certificates pinned by {@link FilePairingStore}, keeping each
+ * distinct certificate once in a single file keyed by the SHA-256 digest of its DER encoding.
+ *
+ * <p>The intermediate and root certificates are the same for every Auditee of a model, so pairing
+ * records only hold digests and share the stored certificates. References are counted in memory
+ * from the pairing records when they are opened. A certificate without references is left in
+ * place as garbage until the garbage makes up half of the file, which is then compacted by
+ * writing the referenced certificates to a new file replacing it. Certificates are appended and
+ * forced to storage before the pairing records referring to them, so a crash in between only
+ * leaves garbage behind.
+ *
+ * <p>Certificates are checked against their digest when read and the most recently read ones are
+ * cached. Instances are not thread-safe and are guarded by the pairing store. Format, big endian:
+ *
+ * <pre>
+ * file {
+ * int magic = MAGIC
+ * short version = FORMAT_VERSION
+ * Blob[] blobs
+ * }
+ *
+ * blob {
+ * short length (of the certificate)
+ * byte[] digest (SHA-256 of the certificate, length: DIGEST_LENGTH)
+ * byte[] certificate
+ * }
+ * </pre>
+ */
+final class CertificateStore implements Closeable {
+    private static final Logger logger = Logger.getLogger("CertificateStore");
+
+    static final int MAGIC = 0x41554353; // "AUCS"
+    static final short FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+
+    static final int DIGEST_LENGTH = CertificateCache.DIGEST_HASH_FUNCTION.bits() / 8;
+    private static final int BLOB_HEADER_LENGTH = Short.BYTES + DIGEST_LENGTH;
+
+    // below this, garbage is not worth rewriting the file for
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+    private static final int CACHE_SIZE = 1024;
+
+    private static final class Blob {
+        long offset;
+        // of the certificate alone
+        final int length;
+        int references;
+
+        Blob(final long offset, final int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int size() {
+            return BLOB_HEADER_LENGTH + length;
+        }
+    }
+
+    private final Path path;
+    private StorageFile file;
+    private final Map<ByteBuffer, Blob> index = new HashMap<>();
+    // encoded certificates by digest, mostly the intermediates and roots shared between pairings
+    private final Cache<ByteBuffer, byte[]> cache =
+            CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+    private long end;
+    // total size of the blobs without references
+    private long garbage;
+    private boolean appended;
+
+    CertificateStore(final Path path) throws IOException {
+        this.path = path;
+        file = open(path);
+        try {
+            scan();
+        } catch (final IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static StorageFile open(final Path path) throws IOException {
+        return StorageFile.open(path);
+    }
+
+    private void scan() throws IOException {
+        final long size = file.size();
+        if (size == 0) {
+            writeFileHeader(file);
+            file.force();
+            end = FILE_HEADER_LENGTH;
+            return;
+        }
+        final ByteBuffer fileHeader = read(file, 0, FILE_HEADER_LENGTH);
+        if (fileHeader.getInt() != MAGIC) {
+            throw new IOException("not a certificate store");
+        }
+        final short version = fileHeader.getShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unsupported certificate store version: " + version);
+        }
+
+        long position = FILE_HEADER_LENGTH;
+        ByteBuffer last = null;
+        while (size - position >= BLOB_HEADER_LENGTH) {
+            final ByteBuffer header = read(file, position, BLOB_HEADER_LENGTH);
+            final int length = header.getShort();
+            if (length < 0 || length > size - position - BLOB_HEADER_LENGTH) {
+                break;
+            }
+            final ByteBuffer digest = ByteBuffer.wrap(Arrays.copyOfRange(header.array(),
+                    Short.BYTES, BLOB_HEADER_LENGTH));
+            final Blob blob = new Blob(position, length);
+            // a certificate only becomes live once a pairing refers to it
+            index.put(digest, blob);
+            garbage += blob.size();
+            last = digest;
+            position += blob.size();
+        }
+        if (last != null && !digestMatches(last.array(), index.get(last))) {
+            final Blob blob = index.remove(last);
+            garbage -= blob.size();
+            position = blob.offset;
+        }
+        if (position != size) {
+            logger.warning("discarding torn certificate at " + position);
+            file.truncate(position);
+            file.force();
+        }
+        end = position;
+    }
+
+    private static void writeFileHeader(final StorageFile file) throws IOException {
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        fileHeader.putInt(MAGIC);
+        fileHeader.putShort(FORMAT_VERSION);
+        fileHeader.flip();
+        write(file, fileHeader, 0);
+    }
+
+    /**
+     * Returns the encoded certificate with the given digest. The array is shared and must not be
+     * modified.
+     */
+    byte[] get(final byte[] digest) throws IOException {
+        final ByteBuffer key = ByteBuffer.wrap(digest);
+        final byte[] cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        final Blob blob = index.get(key);
+        if (blob == null) {
+            throw new IOException("missing pinned certificate");
+        }
+        final byte[] certificate = read(file, blob.offset + BLOB_HEADER_LENGTH, blob.length).array();
+        if (!Arrays.equals(digest(certificate), digest)) {
+            throw new IOException("corrupt pinned certificate");
+        }
+        cache.put(ByteBuffer.wrap(digest.clone()), certificate);
+        return certificate;
+    }
+
+    /**
+     * Adds a reference to a certificate, appending it if it is not stored yet. Appended
+     * certificates are not durable until {@link #force}.
+     */
+    void retain(final byte[] digest, final byte[] certificate) throws IOException {
+        Blob blob = index.get(ByteBuffer.wrap(digest));
+        if (blob == null) {
+            if (certificate.length > Short.MAX_VALUE) {
+                throw new IOException("pinned certificate too long");
+            }
+            if (!Arrays.equals(digest(certificate), digest)) {
+                throw new IOException("pinned certificate digest mismatch");
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(BLOB_HEADER_LENGTH + certificate.length);
+            buffer.putShort((short) certificate.length);
+            buffer.put(digest);
+            buffer.put(certificate);
+            buffer.flip();
+            blob = new Blob(end, certificate.length);
+            write(file, buffer, end);
+            end += blob.size();
+            appended = true;
+            index.put(ByteBuffer.wrap(digest.clone()), blob);
+            garbage += blob.size();
+        }
+        retain(blob);
+    }
+
+    /**
+     * Adds a reference to a stored certificate, returning false if there is none.
+     */
+    boolean retain(final byte[] digest) {
+        final Blob blob = index.get(ByteBuffer.wrap(digest));
+        if (blob == null) {
+            return false;
+        }
+        retain(blob);
+        return true;
+    }
+
+    private void retain(final Blob blob) {
+        if (blob.references++ == 0) {
+            garbage -= blob.size();
+        }
+    }
+
+    /**
+     * Drops a reference to a certificate, which becomes garbage once it has none left.
+     */
+    void release(final byte[] digest) {
+        final Blob blob = index.get(ByteBuffer.wrap(digest));
+        if (blob != null && blob.references > 0 && --blob.references == 0) {
+            garbage += blob.size();
+        }
+    }
+
+    /**
+     * Forces the certificates appended since the last call to storage.
+     */
+    void force() throws IOException {
+        if (appended) {
+            file.force();
+            appended = false;
+        }
+    }
+
+    /**
+     * Compacts the file if enough of it is garbage.
+     */
+    void collect() throws IOException {
+        if (garbage < MIN_COMPACTION_BYTES || garbage < (end - FILE_HEADER_LENGTH) / 2) {
+            return;
+        }
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        final Map<Blob, Long> offsets = new HashMap<>();
+        long position = FILE_HEADER_LENGTH;
+        // left behind by a compaction that crashed before the move
+        Files.deleteIfExists(temporary);
+        try (StorageFile target = StorageFile.create(temporary)) {
+            writeFileHeader(target);
+            for (final Blob blob : index.values()) {
+                if (blob.references == 0) {
+                    continue;
+                }
+                write(target, read(file, blob.offset, blob.size()), position);
+                offsets.put(blob, position);
+                position += blob.size();
+            }
+            target.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        // otherwise a crash could bring back the previous file without the certificates appended
+        // to the new one, while the records referring to them are durable
+        StorageFile.syncDirectory(path.toAbsolutePath().getParent());
+        file.close();
+        file = open(path);
+
+        final Iterator<Map.Entry<ByteBuffer, Blob>> entries = index.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<ByteBuffer, Blob> entry = entries.next();
+            final Long offset = offsets.get(entry.getValue());
+            if (offset == null) {
+                cache.invalidate(entry.getKey());
+                entries.remove();
+            } else {
+                entry.getValue().offset = offset;
+            }
+        }
+        logger.fine("compacted certificate store from " + end + " to " + position + " bytes");
+        end = position;
+        garbage = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private boolean digestMatches(final byte[] digest, final Blob blob) throws IOException {
+        return Arrays.equals(digest(read(file, blob.offset + BLOB_HEADER_LENGTH,
+                blob.length).array()), digest);
+    }
+
+    private static byte[] digest(final byte[] certificate) {
+        return CertificateCache.DIGEST_HASH_FUNCTION.hashBytes(certificate).asBytes();
+    }
+
+    private static ByteBuffer read(final StorageFile file, final long position,
+            final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of certificate store");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write(final StorageFile file, final ByteBuffer buffer,
+            final long position) throws IOException {
+        final long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            file.write(buffer, start + buffer.position());
+        }
+    }
+}
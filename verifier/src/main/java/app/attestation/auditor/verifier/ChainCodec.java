@@ -0,0 +1,251 @@
+package app.attestation.auditor.verifier;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import app.attestation.auditor.verifier.VerificationException.Reason;
+import app.attestation.auditor.verifier.VerificationMetrics.Stage;
+
+import static app.attestation.auditor.verifier.AttestationVerifier.MAX_ENCODED_CHAIN_LENGTH;
+
+/**
+ * Compression of attestation certificate chains with raw DEFLATE and a preset dictionary.
+ *
+ * <p>Inflaters and deflaters are kept in a bounded pool together with their scratch buffers, so
+ * the native zlib state is reused across calls. Instances are thread-safe. Pooled state beyond
+ * the bound is released right away and the rest is released by {@link #close}.
+ *
+ * <p>Decoding is streamed: the inflater only produces the bytes needed for the next length
+ * prefix or certificate, and each certificate is parsed in place as soon as it is complete. A
+ * certificate that would take the chain past {@link AttestationVerifier#MAX_ENCODED_CHAIN_LENGTH}
+ * is rejected from its length prefix, without inflating the rest of the input.
+ */
+public class ChainCodec implements Closeable {
+    private static final Logger logger = Logger.getLogger("ChainCodec");
+
+    private static class Decoder {
+        final Inflater inflater = new Inflater(true);
+        final byte[] chain = new byte[MAX_ENCODED_CHAIN_LENGTH];
+        // receives a byte past the size budget to tell an oversized chain from a finished one
+        final byte[] overflow = new byte[1];
+    }
+
+    // incompressible input is emitted as stored blocks, adding a few bytes of block headers
+    private static final int MAX_COMPRESSED_CHAIN_LENGTH = MAX_ENCODED_CHAIN_LENGTH + 16;
+
+    private static class Encoder {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        final ByteBuffer chain = ByteBuffer.allocate(MAX_ENCODED_CHAIN_LENGTH);
+        final byte[] buffer = new byte[MAX_COMPRESSED_CHAIN_LENGTH];
+    }
+
+    private final byte[] dictionary;
+    private final ArrayBlockingQueue<Decoder> decoders;
+    private final ArrayBlockingQueue<Encoder> encoders;
+    private final CertificateCache certificateCache;
+
+    public ChainCodec(final byte[] dictionary) {
+        this(dictionary, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param dictionary preset dictionary for the compressed certificate chain
+     * @param poolSize maximum number of idle inflaters and deflaters kept for reuse
+     */
+    public ChainCodec(final byte[] dictionary, final int poolSize) {
+        this(dictionary, poolSize, null);
+    }
+
+    /**
+     * @param dictionary preset dictionary for the compressed certificate chain
+     * @param poolSize maximum number of idle inflaters and deflaters kept for reuse
+     * @param certificateCache interning for the certificates after the attestation certificate,
+     *     or null to parse every certificate
+     */
+    public ChainCodec(final byte[] dictionary, final int poolSize,
+            final CertificateCache certificateCache) {
+        this.dictionary = dictionary.clone();
+        decoders = new ArrayBlockingQueue<>(poolSize);
+        encoders = new ArrayBlockingQueue<>(poolSize);
+        this.certificateCache = certificateCache;
+    }
+
+    public Certificate[] decode(final byte[] compressedChain)
+            throws DataFormatException, GeneralSecurityException {
+        return decode(compressedChain, 0, compressedChain.length, CryptoBackend.JCA,
+                new StageTimer(VerificationMetrics.NONE));
+    }
+
+    Certificate[] decode(final byte[] input, final int inputOffset, final int inputLength,
+            final CryptoBackend backend, final StageTimer timer)
+            throws DataFormatException, GeneralSecurityException {
+        timer.begin(Stage.INFLATE);
+        Decoder decoder = decoders.poll();
+        if (decoder == null) {
+            decoder = new Decoder();
+        }
+        try {
+            final Inflater inflater = decoder.inflater;
+            inflater.setInput(input, inputOffset, inputLength);
+            inflater.setDictionary(dictionary);
+            final byte[] chain = decoder.chain;
+            final List<Certificate> certs = new ArrayList<>();
+            // certificates before start are parsed and the bytes up to end are inflated
+            int start = 0;
+            int end = 0;
+            while (true) {
+                final int available = end - start;
+                final int needed;
+                if (available < Short.BYTES) {
+                    needed = Short.BYTES - available;
+                } else {
+                    final int encodedLength = (chain[start] << 8) | (chain[start + 1] & 0xff);
+                    if (encodedLength < 0) {
+                        throw new VerificationException(Reason.MALFORMED_CHAIN, "invalid encoded certificate length");
+                    }
+                    if (available < Short.BYTES + encodedLength) {
+                        needed = Short.BYTES + encodedLength - available;
+                    } else {
+                        timer.begin(Stage.CERTIFICATE_PARSE);
+                        final int offset = start + Short.BYTES;
+                        // the attestation certificate is unique, but the rest of the chain repeats
+                        if (certificateCache == null || certs.isEmpty()) {
+                            certs.add(backend.generateCertificate(chain, offset, encodedLength));
+                        } else {
+                            certs.add(certificateCache.intern(chain, offset, encodedLength,
+                                    backend).certificate);
+                        }
+                        start = offset + encodedLength;
+                        continue;
+                    }
+                }
+
+                timer.begin(Stage.INFLATE);
+                if (end + needed > chain.length) {
+                    if (inflater.inflate(decoder.overflow) != 0) {
+                        throw new VerificationException(Reason.CHAIN_TOO_LARGE, "certificate chain is too large");
+                    }
+                } else {
+                    end += inflater.inflate(chain, end, needed);
+                }
+                // no progress means the end of the stream or of the compressed input
+                if (end - start == available) {
+                    if (!inflater.finished()) {
+                        throw new VerificationException(Reason.MALFORMED_CHAIN, "truncated compressed certificate chain");
+                    }
+                    if (available != 0) {
+                        throw new VerificationException(Reason.MALFORMED_CHAIN, "truncated encoded certificate");
+                    }
+                    break;
+                }
+            }
+            logger.fine("encoded length: " + end + ", compressed length: " + inputLength);
+            return certs.toArray(new Certificate[0]);
+        } finally {
+            decoder.inflater.reset();
+            if (!decoders.offer(decoder)) {
+                decoder.inflater.end();
+            }
+        }
+    }
+
+    public byte[] encode(final Certificate[] certificates) throws CertificateEncodingException {
+        Encoder encoder = encoders.poll();
+        if (encoder == null) {
+            encoder = new Encoder();
+        }
+        try {
+            final int compressedLength = encode(encoder, certificates, encoder.buffer, 0,
+                    encoder.buffer.length);
+            return Arrays.copyOf(encoder.buffer, compressedLength);
+        } finally {
+            release(encoder);
+        }
+    }
+
+    /**
+     * Compresses the chain straight into the given region of the output, such as its place in an
+     * attestation message.
+     *
+     * @return length of the compressed chain
+     */
+    public int encode(final Certificate[] certificates, final byte[] output, final int offset,
+            final int length) throws CertificateEncodingException {
+        Encoder encoder = encoders.poll();
+        if (encoder == null) {
+            encoder = new Encoder();
+        }
+        try {
+            return encode(encoder, certificates, output, offset, length);
+        } finally {
+            release(encoder);
+        }
+    }
+
+    private int encode(final Encoder encoder, final Certificate[] certificates,
+            final byte[] output, final int offset, final int length)
+            throws CertificateEncodingException {
+        final ByteBuffer chainSerializer = encoder.chain;
+        for (Certificate certificate : certificates) {
+            final byte[] encoded = certificate.getEncoded();
+            if (encoded.length > Short.MAX_VALUE) {
+                throw new RuntimeException("encoded certificate too long");
+            }
+            if (chainSerializer.remaining() < Short.BYTES + encoded.length) {
+                throw new RuntimeException("encoded certificate chain too long");
+            }
+            chainSerializer.putShort((short) encoded.length);
+            chainSerializer.put(encoded);
+        }
+        final int chainLength = chainSerializer.position();
+
+        final Deflater deflater = encoder.deflater;
+        deflater.setDictionary(dictionary);
+        deflater.setInput(chainSerializer.array(), 0, chainLength);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == length) {
+                throw new RuntimeException("compressed certificate chain too long");
+            }
+            compressedLength += deflater.deflate(output, offset + compressedLength,
+                    length - compressedLength);
+        }
+        logger.fine("encoded length: " + chainLength + ", compressed length: " + compressedLength);
+        return compressedLength;
+    }
+
+    private void release(final Encoder encoder) {
+        encoder.chain.clear();
+        encoder.deflater.reset();
+        if (!encoders.offer(encoder)) {
+            encoder.deflater.end();
+        }
+    }
+
+    /**
+     * Releases the native state of the pooled inflaters and deflaters.
+     */
+    @Override
+    public void close() {
+        Decoder decoder;
+        while ((decoder = decoders.poll()) != null) {
+            decoder.inflater.end();
+        }
+        Encoder encoder;
+        while ((encoder = encoders.poll()) != null) {
+            encoder.deflater.end();
+        }
+    }
+}
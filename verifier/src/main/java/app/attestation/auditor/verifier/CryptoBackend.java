@@ -0,0 +1,55 @@
+package app.attestation.auditor.verifier;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Certificate parsing and signature verification used by the verifier.
+ *
+ * <p>Implementations keep their parsers and signature contexts per thread, so a call does not
+ * resolve a provider or allocate a new context. They need to be thread-safe.
+ * {@link CryptoBackendSelector} checks that a backend gives the same results as {@link #JCA} and
+ * finds the fastest one.
+ */
+public interface CryptoBackend {
+    /**
+     * Default Java Cryptography Architecture providers.
+     */
+    CryptoBackend JCA = new JcaCryptoBackend();
+
+    /**
+     * BouncyCastle lightweight API, bypassing the JCA provider framework, with a 64 MiB cache of
+     * converted public keys.
+     */
+    CryptoBackend BOUNCY_CASTLE = new BouncyCastleCryptoBackend(PublicKeyCache.DEFAULT_MAXIMUM_BYTES);
+
+    /**
+     * Returns a separate BouncyCastle backend whose cache of converted public keys and their
+     * precomputed tables is limited to an estimated number of bytes.
+     */
+    static CryptoBackend bouncyCastle(final long keyCacheBytes) {
+        return new BouncyCastleCryptoBackend(keyCacheBytes);
+    }
+
+    String getName();
+
+    X509Certificate generateCertificate(byte[] encoded, int offset, int length)
+            throws CertificateException;
+
+    /**
+     * Checks the signature of a certificate by the given issuer key, throwing the same
+     * exceptions as {@link java.security.cert.Certificate#verify(PublicKey)}.
+     */
+    void verifyCertificate(X509Certificate certificate, PublicKey issuerKey)
+            throws GeneralSecurityException;
+
+    /**
+     * Checks an {@link AttestationVerifier#SIGNATURE_ALGORITHM} signature of the remaining
+     * bytes of the message, consuming them.
+     */
+    boolean verifySignature(PublicKey key, ByteBuffer message, byte[] signature)
+            throws GeneralSecurityException;
+}
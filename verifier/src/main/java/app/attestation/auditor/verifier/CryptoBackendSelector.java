@@ -0,0 +1,143 @@
+package app.attestation.auditor.verifier;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Conformance checks and benchmark-driven selection of a {@link CryptoBackend}.
+ *
+ * <p>A backend conforms if it parses every certificate of the given chains to the same encoding
+ * and public key as {@link CryptoBackend#JCA}, accepts every signature in the chains and the
+ * {@link AttestationVerifier#SIGNATURE_ALGORITHM} signature of a fresh key, and rejects all of
+ * them once a bit is flipped.
+ */
+public final class CryptoBackendSelector {
+    private static final Logger logger = Logger.getLogger("CryptoBackendSelector");
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private CryptoBackendSelector() {}
+
+    /**
+     * @param chains certificate chains ordered from the leaf to a self-signed root, such as the
+     *     samples in samples/3
+     */
+    public static boolean isConformant(final CryptoBackend backend, final List<Certificate[]> chains) {
+        try {
+            for (final Certificate[] chain : chains) {
+                for (int i = 0; i < chain.length; i++) {
+                    final byte[] encoded = chain[i].getEncoded();
+                    final X509Certificate certificate =
+                            backend.generateCertificate(encoded, 0, encoded.length);
+                    if (!Arrays.equals(certificate.getEncoded(), encoded)
+                            || !Arrays.equals(certificate.getPublicKey().getEncoded(),
+                                    chain[i].getPublicKey().getEncoded())) {
+                        return false;
+                    }
+                    final X509Certificate issuer = (X509Certificate) chain[Math.min(i + 1, chain.length - 1)];
+                    backend.verifyCertificate(certificate, issuer.getPublicKey());
+
+                    // flip a bit of the signature at the end of the encoding
+                    final byte[] tampered = encoded.clone();
+                    tampered[tampered.length - 1] ^= 1;
+                    if (verifies(backend, tampered, issuer)) {
+                        return false;
+                    }
+                }
+            }
+
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            final KeyPair keyPair = generator.generateKeyPair();
+            final byte[] message = new byte[AttestationVerifier.MAX_MESSAGE_SIZE];
+            final Signature signer = Signature.getInstance(AttestationVerifier.SIGNATURE_ALGORITHM);
+            signer.initSign(keyPair.getPrivate());
+            signer.update(message);
+            final byte[] signature = signer.sign();
+            if (!backend.verifySignature(keyPair.getPublic(), ByteBuffer.wrap(message), signature)
+                    || !backend.verifySignature(keyPair.getPublic(),
+                            ByteBuffer.wrap(message).asReadOnlyBuffer(), signature)) {
+                return false;
+            }
+            message[0] ^= 1;
+            return !backend.verifySignature(keyPair.getPublic(), ByteBuffer.wrap(message), signature);
+        } catch (final GeneralSecurityException | RuntimeException e) {
+            logger.warning(backend.getName() + " failed conformance checks: " + e);
+            return false;
+        }
+    }
+
+    private static boolean verifies(final CryptoBackend backend, final byte[] encoded,
+            final X509Certificate issuer) {
+        try {
+            backend.verifyCertificate(backend.generateCertificate(encoded, 0, encoded.length),
+                    issuer.getPublicKey());
+            return true;
+        } catch (final GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the conforming backend that parses and verifies the chains in the least time, or
+     * {@link CryptoBackend#JCA} if none of them conform.
+     *
+     * @param rounds number of timed passes over the chains for each backend
+     */
+    public static CryptoBackend selectFastest(final List<CryptoBackend> candidates,
+            final List<Certificate[]> chains, final int rounds) throws GeneralSecurityException {
+        final byte[][][] encoded = new byte[chains.size()][][];
+        for (int i = 0; i < encoded.length; i++) {
+            final Certificate[] chain = chains.get(i);
+            encoded[i] = new byte[chain.length][];
+            for (int j = 0; j < chain.length; j++) {
+                encoded[i][j] = chain[j].getEncoded();
+            }
+        }
+
+        CryptoBackend fastest = CryptoBackend.JCA;
+        long fastestNanos = Long.MAX_VALUE;
+        for (final CryptoBackend backend : candidates) {
+            if (!isConformant(backend, chains)) {
+                continue;
+            }
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                verifyChains(backend, encoded);
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                verifyChains(backend, encoded);
+            }
+            final long nanos = System.nanoTime() - start;
+            logger.info(backend.getName() + ": " + nanos / Math.max(rounds, 1) + " ns per round");
+            if (nanos < fastestNanos) {
+                fastest = backend;
+                fastestNanos = nanos;
+            }
+        }
+        return fastest;
+    }
+
+    private static void verifyChains(final CryptoBackend backend, final byte[][][] chains)
+            throws GeneralSecurityException {
+        for (final byte[][] chain : chains) {
+            X509Certificate issuer = null;
+            for (int i = chain.length - 1; i >= 0; i--) {
+                final X509Certificate certificate =
+                        backend.generateCertificate(chain[i], 0, chain[i].length);
+                backend.verifyCertificate(certificate,
+                        (issuer != null ? issuer : certificate).getPublicKey());
+                issuer = certificate;
+            }
+        }
+    }
+}
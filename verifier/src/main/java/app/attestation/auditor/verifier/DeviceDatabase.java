@@ -0,0 +1,452 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Supported devices keyed by verified boot key fingerprint, in a compact binary format.
+ *
+ * <p>Each table is indexed by a minimal perfect hash over the raw fingerprints, so a lookup
+ * hashes the key, reads the seed of its bucket and compares a single packed record. Records are
+ * read in place from the buffer, which can be a memory-mapped file. Instances are immutable and
+ * thread-safe.
+ *
+ * <p>The data is compiled from a text file by {@link DeviceDatabaseCompiler}. Format, big
+ * endian:
+ *
+ * <pre>
+ * int magic = MAGIC
+ * short version = FORMAT_VERSION
+ * short stringCount
+ * { short length, byte[] utf8String } strings
+ * byte tableCount
+ * {
+ *     byte table
+ *     int size
+ *     int bucketCount
+ *     int[] seeds (length: bucketCount)
+ *     { byte[] key (length: KEY_LENGTH), byte[] record } slots (length: size)
+ * } tables
+ * </pre>
+ *
+ * <p>Device records are {@code short name, short attestationVersion, short keymasterVersion,
+ * byte flags, byte osName} with strings given as indices into the string pool. Migration records
+ * are the legacy fingerprint.
+ */
+public class DeviceDatabase {
+    static final int MAGIC = 0x41554442; // "AUDB"
+    public static final short FORMAT_VERSION = 1;
+    public static final int KEY_LENGTH = 32;
+
+    private static final int DEVICE_RECORD_LENGTH = 8;
+    private static final int FLAG_ROLLBACK_RESISTANT = 1;
+    private static final int FLAG_PER_USER_ENCRYPTION = 1 << 1;
+    private static final int FLAG_ENFORCE_STRONGBOX = 1 << 2;
+    private static final int FLAG_EXTRA_PATCH_LEVEL_MISSING = 1 << 3;
+
+    // average number of keys per bucket, trading the size of the seeds for build time
+    private static final int BUCKET_LOAD = 4;
+    private static final int MAX_SEED = 1 << 24;
+
+    private static final String DEFAULT_RESOURCE = "devices.bin";
+    private static DeviceDatabase defaultDatabase;
+
+    /**
+     * Tables in the database. The ordinal is the table identifier in the format, so new tables
+     * can only be added at the end.
+     */
+    enum Table {
+        CUSTOM_OS(DEVICE_RECORD_LENGTH),
+        STOCK(DEVICE_RECORD_LENGTH),
+        STRONGBOX_CUSTOM_OS(DEVICE_RECORD_LENGTH),
+        STRONGBOX_STOCK(DEVICE_RECORD_LENGTH),
+        // legacy verified boot key replaced by a verified boot key
+        MIGRATION(KEY_LENGTH);
+
+        final int recordLength;
+
+        Table(final int recordLength) {
+            this.recordLength = recordLength;
+        }
+    }
+
+    private static class Index {
+        final int size;
+        final int bucketCount;
+        final int seedsOffset;
+        final int slotsOffset;
+        final int slotLength;
+
+        Index(final int size, final int bucketCount, final int seedsOffset,
+                final int slotsOffset, final int slotLength) {
+            this.size = size;
+            this.bucketCount = bucketCount;
+            this.seedsOffset = seedsOffset;
+            this.slotsOffset = slotsOffset;
+            this.slotLength = slotLength;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    // by table ordinal, null for tables missing from the data
+    private final Index[] indexes = new Index[Table.values().length];
+
+    private DeviceDatabase(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        final ByteBuffer reader = buffer.duplicate();
+        if (reader.getInt() != MAGIC) {
+            throw new IOException("not a device database");
+        }
+        final short version = reader.getShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unsupported device database version: " + version);
+        }
+
+        strings = new String[reader.getShort() & 0xffff];
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] string = new byte[reader.getShort() & 0xffff];
+            reader.get(string);
+            strings[i] = new String(string, StandardCharsets.UTF_8);
+        }
+
+        final int tableCount = reader.get() & 0xff;
+        for (int i = 0; i < tableCount; i++) {
+            final int table = reader.get() & 0xff;
+            if (table >= indexes.length || indexes[table] != null) {
+                throw new IOException("invalid device database table: " + table);
+            }
+            final int size = reader.getInt();
+            final int bucketCount = reader.getInt();
+            if (size < 0 || bucketCount < 1) {
+                throw new IOException("invalid device database table size");
+            }
+            final int slotLength = KEY_LENGTH + Table.values()[table].recordLength;
+            final int seedsOffset = reader.position();
+            final long slotsOffset = seedsOffset + (long) bucketCount * Integer.BYTES;
+            final long end = slotsOffset + (long) size * slotLength;
+            if (end > reader.limit()) {
+                throw new IOException("truncated device database");
+            }
+            reader.position((int) end);
+            indexes[table] = new Index(size, bucketCount, seedsOffset, (int) slotsOffset, slotLength);
+        }
+
+        // check the string references once so lookups cannot fail
+        for (final Table table : Table.values()) {
+            final Index index = indexes[table.ordinal()];
+            if (index == null || table.recordLength != DEVICE_RECORD_LENGTH) {
+                continue;
+            }
+            for (int i = 0; i < index.size; i++) {
+                final int record = index.slotsOffset + i * index.slotLength + KEY_LENGTH;
+                if ((buffer.getShort(record) & 0xffff) >= strings.length
+                        || (buffer.get(record + 7) & 0xff) >= strings.length) {
+                    throw new IOException("invalid device database string reference");
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a database from a buffer without copying it. The buffer must not be modified
+     * afterwards.
+     */
+    public static DeviceDatabase wrap(final ByteBuffer data) throws IOException {
+        try {
+            return new DeviceDatabase(data.slice().order(ByteOrder.BIG_ENDIAN));
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("truncated device database", e);
+        }
+    }
+
+    public static DeviceDatabase load(final InputStream stream) throws IOException {
+        return wrap(ByteBuffer.wrap(ByteStreams.toByteArray(stream)));
+    }
+
+    /**
+     * Memory-maps a database file, so only the pages used by lookups are read.
+     */
+    public static DeviceDatabase map(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the database bundled with the verifier, loaded on first use.
+     */
+    public static synchronized DeviceDatabase getDefault() {
+        if (defaultDatabase == null) {
+            try (final InputStream stream = DeviceDatabase.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                if (stream == null) {
+                    throw new IOException("missing " + DEFAULT_RESOURCE);
+                }
+                defaultDatabase = load(stream);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return defaultDatabase;
+    }
+
+    /**
+     * Returns the device for a verified boot key fingerprint, or null if it is unknown.
+     */
+    DeviceInfo getDevice(final Table table, final byte[] verifiedBootKey) {
+        final int slot = find(table, verifiedBootKey);
+        if (slot < 0) {
+            return null;
+        }
+        final int record = slot + KEY_LENGTH;
+        final int flags = buffer.get(record + 6);
+        return new DeviceInfo(strings[buffer.getShort(record) & 0xffff],
+                buffer.getShort(record + 2) & 0xffff, buffer.getShort(record + 4) & 0xffff,
+                (flags & FLAG_ROLLBACK_RESISTANT) != 0, (flags & FLAG_PER_USER_ENCRYPTION) != 0,
+                (flags & FLAG_ENFORCE_STRONGBOX) != 0, (flags & FLAG_EXTRA_PATCH_LEVEL_MISSING) != 0,
+                strings[buffer.get(record + 7) & 0xff]);
+    }
+
+    /**
+     * Returns the legacy fingerprint replaced by a verified boot key fingerprint, or null if
+     * there is none.
+     */
+    byte[] getLegacyKey(final byte[] verifiedBootKey) {
+        final int slot = find(Table.MIGRATION, verifiedBootKey);
+        if (slot < 0) {
+            return null;
+        }
+        final byte[] legacyKey = new byte[KEY_LENGTH];
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            legacyKey[i] = buffer.get(slot + KEY_LENGTH + i);
+        }
+        return legacyKey;
+    }
+
+    int size(final Table table) {
+        final Index index = indexes[table.ordinal()];
+        return index == null ? 0 : index.size;
+    }
+
+    // Returns the offset of the slot holding the key, or -1 if it is not in the table
+    private int find(final Table table, final byte[] key) {
+        final Index index = indexes[table.ordinal()];
+        if (index == null || index.size == 0 || key.length != KEY_LENGTH) {
+            return -1;
+        }
+        final int bucket = reduce(hash(key, 0), index.bucketCount);
+        final int seed = buffer.getInt(index.seedsOffset + bucket * Integer.BYTES);
+        final int slot = index.slotsOffset + reduce(hash(key, seed), index.size) * index.slotLength;
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if (buffer.get(slot + i) != key[i]) {
+                return -1;
+            }
+        }
+        return slot;
+    }
+
+    static long hash(final byte[] key, final int seed) {
+        long h = seed * 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < KEY_LENGTH; i += Long.BYTES) {
+            long word = 0;
+            for (int j = i; j < i + Long.BYTES; j++) {
+                word = (word << 8) | (key[j] & 0xff);
+            }
+            // SplitMix64 finalizer
+            h ^= word;
+            h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+            h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    private static int reduce(final long hash, final int n) {
+        return (int) ((hash >>> 1) % n);
+    }
+
+    /**
+     * Writer for the binary format, building the perfect hash of each table with the hash and
+     * displace method: keys are grouped into buckets and each bucket, largest first, gets the
+     * first seed placing all of its keys into free slots.
+     */
+    static final class Builder {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final Map<Table, Map<HashCode, byte[]>> tables = new EnumMap<>(Table.class);
+
+        Builder addDevice(final Table table, final byte[] verifiedBootKey, final DeviceInfo device) {
+            if (table.recordLength != DEVICE_RECORD_LENGTH) {
+                throw new IllegalArgumentException(table + " is not a device table");
+            }
+            if (device.attestationVersion < 0 || device.attestationVersion > 0xffff
+                    || device.keymasterVersion < 0 || device.keymasterVersion > 0xffff) {
+                throw new IllegalArgumentException("version out of range");
+            }
+            final int osName = intern(device.osName);
+            if (osName > 0xff) {
+                throw new IllegalArgumentException("too many OS names");
+            }
+            final ByteBuffer record = ByteBuffer.allocate(DEVICE_RECORD_LENGTH);
+            record.putShort((short) intern(device.name));
+            record.putShort((short) device.attestationVersion);
+            record.putShort((short) device.keymasterVersion);
+            record.put((byte) ((device.rollbackResistant ? FLAG_ROLLBACK_RESISTANT : 0)
+                    | (device.perUserEncryption ? FLAG_PER_USER_ENCRYPTION : 0)
+                    | (device.enforceStrongBox ? FLAG_ENFORCE_STRONGBOX : 0)
+                    | (device.extraPatchLevelMissing ? FLAG_EXTRA_PATCH_LEVEL_MISSING : 0)));
+            record.put((byte) osName);
+            return put(table, verifiedBootKey, record.array());
+        }
+
+        Builder addMigration(final byte[] verifiedBootKey, final byte[] legacyKey) {
+            if (legacyKey.length != KEY_LENGTH) {
+                throw new IllegalArgumentException("invalid legacy key length");
+            }
+            return put(Table.MIGRATION, verifiedBootKey, legacyKey.clone());
+        }
+
+        private Builder put(final Table table, final byte[] key, final byte[] record) {
+            if (key.length != KEY_LENGTH) {
+                throw new IllegalArgumentException("invalid key length");
+            }
+            final Map<HashCode, byte[]> records = tables.computeIfAbsent(table, t -> new LinkedHashMap<>());
+            if (records.putIfAbsent(HashCode.fromBytes(key), record) != null) {
+                throw new IllegalArgumentException("duplicate key in " + table + ": " + HashCode.fromBytes(key));
+            }
+            return this;
+        }
+
+        private int intern(final String string) {
+            final Integer index = stringIndexes.get(string);
+            if (index != null) {
+                return index;
+            }
+            if (strings.size() > 0xffff) {
+                throw new IllegalArgumentException("too many strings");
+            }
+            stringIndexes.put(string, strings.size());
+            strings.add(string);
+            return strings.size() - 1;
+        }
+
+        byte[] build() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                out.writeShort(strings.size());
+                for (final String string : strings) {
+                    final byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+                    if (encoded.length > 0xffff) {
+                        throw new IllegalArgumentException("string too long");
+                    }
+                    out.writeShort(encoded.length);
+                    out.write(encoded);
+                }
+                out.writeByte(tables.size());
+                for (final Map.Entry<Table, Map<HashCode, byte[]>> table : tables.entrySet()) {
+                    writeTable(out, table.getKey(), table.getValue());
+                }
+            } catch (final IOException e) {
+                throw new AssertionError(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static void writeTable(final DataOutputStream out, final Table table,
+                final Map<HashCode, byte[]> records) throws IOException {
+            final int size = records.size();
+            final byte[][] keys = new byte[size][];
+            int k = 0;
+            for (final HashCode key : records.keySet()) {
+                keys[k++] = key.asBytes();
+            }
+
+            final int bucketCount = Math.max(1, (size + BUCKET_LOAD - 1) / BUCKET_LOAD);
+            final List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+            for (int i = 0; i < bucketCount; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            for (int i = 0; i < size; i++) {
+                buckets.get(reduce(hash(keys[i], 0), bucketCount)).add(i);
+            }
+            final Integer[] order = new Integer[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+
+            final int[] seeds = new int[bucketCount];
+            final int[] slotKeys = new int[size];
+            Arrays.fill(slotKeys, -1);
+            Arrays.fill(seeds, 1);
+            for (final int bucket : order) {
+                final List<Integer> members = buckets.get(bucket);
+                if (members.isEmpty()) {
+                    break;
+                }
+                final int[] slots = new int[members.size()];
+                int seed = 1;
+                while (!place(keys, members, seed, slotKeys, slots)) {
+                    if (++seed > MAX_SEED) {
+                        throw new IllegalStateException("no perfect hash found for " + table);
+                    }
+                }
+                seeds[bucket] = seed;
+                for (int i = 0; i < slots.length; i++) {
+                    slotKeys[slots[i]] = members.get(i);
+                }
+            }
+
+            out.writeByte(table.ordinal());
+            out.writeInt(size);
+            out.writeInt(bucketCount);
+            for (final int seed : seeds) {
+                out.writeInt(seed);
+            }
+            for (final int key : slotKeys) {
+                out.write(keys[key]);
+                out.write(records.get(HashCode.fromBytes(keys[key])));
+            }
+        }
+
+        // Finds the slots for the keys of a bucket, returning false on any collision
+        private static boolean place(final byte[][] keys, final List<Integer> members,
+                final int seed, final int[] slotKeys, final int[] slots) {
+            for (int i = 0; i < slots.length; i++) {
+                final int slot = reduce(hash(keys[members.get(i)], seed), slotKeys.length);
+                if (slotKeys[slot] != -1) {
+                    return false;
+                }
+                for (int j = 0; j < i; j++) {
+                    if (slots[j] == slot) {
+                        return false;
+                    }
+                }
+                slots[i] = slot;
+            }
+            return true;
+        }
+    }
+}
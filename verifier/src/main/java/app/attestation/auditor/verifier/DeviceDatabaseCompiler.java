@@ -0,0 +1,127 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import app.attestation.auditor.verifier.DeviceDatabase.Table;
+
+/**
+ * Compiles the text list of supported devices into the binary {@link DeviceDatabase} format.
+ *
+ * <p>Usage: {@code DeviceDatabaseCompiler <devices.txt> <devices.bin>}
+ */
+public final class DeviceDatabaseCompiler {
+    private static final ImmutableMap<String, Table> sections = ImmutableMap.of(
+            "custom-os", Table.CUSTOM_OS,
+            "stock", Table.STOCK,
+            "strongbox-custom-os", Table.STRONGBOX_CUSTOM_OS,
+            "strongbox-stock", Table.STRONGBOX_STOCK,
+            "migration", Table.MIGRATION);
+
+    private static final String FLAG_ROLLBACK_RESISTANT = "rollback-resistant";
+    private static final String FLAG_PER_USER_ENCRYPTION = "per-user-encryption";
+    private static final String FLAG_ENFORCE_STRONGBOX = "enforce-strongbox";
+    private static final String FLAG_EXTRA_PATCH_LEVEL_MISSING = "extra-patch-level-missing";
+    private static final String NO_FLAGS = "-";
+
+    private static final Splitter FIELD_SPLITTER = Splitter.on('|').trimResults();
+    private static final Splitter FLAG_SPLITTER = Splitter.on(',').trimResults();
+
+    private DeviceDatabaseCompiler() {}
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: DeviceDatabaseCompiler <devices.txt> <devices.bin>");
+            System.exit(1);
+        }
+        Files.write(Paths.get(args[1]),
+                compile(Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)));
+    }
+
+    static byte[] compile(final List<String> lines) throws IOException {
+        final DeviceDatabase.Builder builder = new DeviceDatabase.Builder();
+        Table table = null;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            final int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            try {
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    table = sections.get(line.substring(1, line.length() - 1));
+                    if (table == null) {
+                        throw new IllegalArgumentException("unknown section " + line);
+                    }
+                } else if (table == null) {
+                    throw new IllegalArgumentException("entry outside of a section");
+                } else if (table == Table.MIGRATION) {
+                    final List<String> fields = FIELD_SPLITTER.splitToList(line);
+                    if (fields.size() != 2) {
+                        throw new IllegalArgumentException("expected 2 fields");
+                    }
+                    builder.addMigration(parseKey(fields.get(0)), parseKey(fields.get(1)));
+                } else {
+                    final List<String> fields = FIELD_SPLITTER.splitToList(line);
+                    if (fields.size() != 6) {
+                        throw new IllegalArgumentException("expected 6 fields");
+                    }
+                    builder.addDevice(table, parseKey(fields.get(0)), parseDevice(fields));
+                }
+            } catch (final IllegalArgumentException e) {
+                throw new IOException("line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return builder.build();
+    }
+
+    private static byte[] parseKey(final String field) {
+        final byte[] key = BaseEncoding.base16().decode(field);
+        if (key.length != DeviceDatabase.KEY_LENGTH) {
+            throw new IllegalArgumentException("invalid verified boot key length: " + field);
+        }
+        return key;
+    }
+
+    private static DeviceInfo parseDevice(final List<String> fields) {
+        boolean rollbackResistant = false;
+        boolean perUserEncryption = false;
+        boolean enforceStrongBox = false;
+        boolean extraPatchLevelMissing = false;
+        if (!fields.get(3).equals(NO_FLAGS)) {
+            for (final String flag : FLAG_SPLITTER.split(fields.get(3))) {
+                switch (flag) {
+                    case FLAG_ROLLBACK_RESISTANT:
+                        rollbackResistant = true;
+                        break;
+                    case FLAG_PER_USER_ENCRYPTION:
+                        perUserEncryption = true;
+                        break;
+                    case FLAG_ENFORCE_STRONGBOX:
+                        enforceStrongBox = true;
+                        break;
+                    case FLAG_EXTRA_PATCH_LEVEL_MISSING:
+                        extraPatchLevelMissing = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown flag " + flag);
+                }
+            }
+        }
+        return new DeviceInfo(fields.get(5), Integer.parseInt(fields.get(1)),
+                Integer.parseInt(fields.get(2)), rollbackResistant, perUserEncryption,
+                enforceStrongBox, extraPatchLevelMissing, fields.get(4));
+    }
+}
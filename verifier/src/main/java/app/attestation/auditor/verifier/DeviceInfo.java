@@ -0,0 +1,31 @@
+package app.attestation.auditor.verifier;
+
+/**
+ * Expected properties of a device model, found from its verified boot key fingerprint.
+ */
+class DeviceInfo {
+    final String name;
+    final int attestationVersion;
+    final int keymasterVersion;
+    final boolean rollbackResistant;
+    final boolean perUserEncryption;
+    // enforce using StrongBox for new pairings
+    final boolean enforceStrongBox;
+    // vendor and boot patch levels are not reported
+    final boolean extraPatchLevelMissing;
+    final String osName;
+
+    DeviceInfo(final String name, final int attestationVersion, final int keymasterVersion,
+            final boolean rollbackResistant, final boolean perUserEncryption,
+            final boolean enforceStrongBox, final boolean extraPatchLevelMissing,
+            final String osName) {
+        this.name = name;
+        this.attestationVersion = attestationVersion;
+        this.keymasterVersion = keymasterVersion;
+        this.rollbackResistant = rollbackResistant;
+        this.perUserEncryption = perUserEncryption;
+        this.enforceStrongBox = enforceStrongBox;
+        this.extraPatchLevelMissing = extraPatchLevelMissing;
+        this.osName = osName;
+    }
+}
@@ -0,0 +1,658 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static app.attestation.auditor.verifier.AttestationVerifier.FINGERPRINT_LENGTH;
+import static app.attestation.auditor.verifier.CertificateStore.DIGEST_LENGTH;
+
+/**
+ * {@link PairingStore} keeping all pairings as binary records in a single file, with an index
+ * from fingerprint to record held in memory and built by scanning the record headers on open.
+ * The index also serves the registry of paired Auditees: {@link #size}, {@link #list} in pages
+ * ordered by fingerprint and {@link #remove}, without touching the file beyond the removed record.
+ *
+ * <p>The pinned fields that change with every paired verification have a fixed width at the start
+ * of each record and are overwritten in place, so an update writes a single small region instead
+ * of the whole pairing. A new pairing is appended. A pairing is only appended again when its
+ * verified boot key changes or its persistent key is filled in, with the previous record marked as
+ * superseded.
+ *
+ * <p>All writes go through a {@link WriteAheadLog} and {@link #store} and {@link #update} return
+ * once theirs are durable. Concurrent verifications share the force of the log, so the number of
+ * forces follows the number of commits instead of the number of updates.
+ *
+ * <p>The pinned certificates are kept in a separate {@link CertificateStore}, so each distinct
+ * certificate is stored once across all pairings and a record only holds their digests.
+ *
+ * <p>{@link #clear} starts a new generation: the files are renamed aside and replaced with empty
+ * ones, and the renamed files are deleted by a background thread, so clearing does not depend on
+ * the number of pairings. Retired files left behind by a crash are deleted after the next open.
+ *
+ * <p>The persistent key and certificate digests are covered by a checksum, which is verified on
+ * load and for the last record on open to discard an append torn by a crash. The in-place fields
+ * are only protected by the write-ahead log. Instances are thread-safe. Format, big endian:
+ *
+ * <pre>
+ * file {
+ * int magic = MAGIC
+ * short version = FORMAT_VERSION
+ * Record[] records
+ * }
+ *
+ * record {
+ * int length (of the whole record)
+ * int checksum (CRC32 of the fields after verifiedTimeLast)
+ * byte state (RECORD_LIVE or RECORD_SUPERSEDED, also for a removed pairing)
+ * byte[] fingerprint (length: FINGERPRINT_LENGTH)
+ * // fixed width, updated in place
+ * byte flags (FLAG_CHAIN_DIGEST, FLAG_PERSISTENT_KEY)
+ * byte[] chainDigest (length: CHAIN_DIGEST_LENGTH)
+ * byte verifiedBootKeyLength (-1 for none)
+ * byte[] verifiedBootKey (ASCII, length: MAX_VERIFIED_BOOT_KEY_LENGTH)
+ * int osVersion
+ * int osPatchLevel
+ * int vendorPatchLevel
+ * int bootPatchLevel
+ * int appVersion
+ * int appVariant
+ * int securityLevel
+ * long verifiedTimeFirst
+ * long verifiedTimeLast
+ * // written once
+ * short persistentKeyLength
+ * byte[] persistentKey
+ * byte certificateCount
+ * byte[][] certificateDigests (SHA-256, length: DIGEST_LENGTH, certificateCount times)
+ * }
+ * </pre>
+ */
+public class FilePairingStore implements PairingStore, Closeable {
+    private static final Logger logger = Logger.getLogger("FilePairingStore");
+
+    static final int MAGIC = 0x41555053; // "AUPS"
+    public static final short FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+
+    private static final byte RECORD_SUPERSEDED = 0;
+    private static final byte RECORD_LIVE = 1;
+
+    private static final int FLAG_CHAIN_DIGEST = 1;
+    private static final int FLAG_PERSISTENT_KEY = 1 << 1;
+
+    private static final int CHAIN_DIGEST_LENGTH = 32;
+    private static final int MAX_VERIFIED_BOOT_KEY_LENGTH = 64;
+
+    private static final int CHECKSUM_OFFSET = Integer.BYTES;
+    private static final int STATE_OFFSET = CHECKSUM_OFFSET + Integer.BYTES;
+    private static final int FINGERPRINT_OFFSET = STATE_OFFSET + Byte.BYTES;
+    private static final int PINNED_OFFSET = FINGERPRINT_OFFSET + FINGERPRINT_LENGTH;
+    private static final int PINNED_LENGTH = Byte.BYTES + CHAIN_DIGEST_LENGTH +
+            Byte.BYTES + MAX_VERIFIED_BOOT_KEY_LENGTH + 7 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int VARIABLE_OFFSET = PINNED_OFFSET + PINNED_LENGTH;
+
+    private static final class Slot {
+        final long offset;
+        final int length;
+        final boolean hasPersistentKey;
+        final String verifiedBootKey;
+
+        Slot(final long offset, final int length, final boolean hasPersistentKey,
+                final String verifiedBootKey) {
+            this.offset = offset;
+            this.length = length;
+            this.hasPersistentKey = hasPersistentKey;
+            this.verifiedBootKey = verifiedBootKey;
+        }
+    }
+
+    public static final long DEFAULT_COMMIT_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // suffix of the files of a cleared generation, followed by a counter
+    private static final String RETIRED_SUFFIX = ".retired-";
+
+    private final Path path;
+    private final Path certificatesPath;
+    private final long commitWindowNanos;
+    // replaced when a new generation is started by clear
+    private StorageFile file;
+    private WriteAheadLog log;
+    private CertificateStore certificateStore;
+    // live records by fingerprint, sorted for paged enumeration
+    private final NavigableMap<ByteBuffer, Slot> index = new TreeMap<>();
+    private long end;
+    private int generation;
+    // deletes the files of cleared generations
+    private final ExecutorService reclaimer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("FilePairingStore-reclaim").setDaemon(true)
+                    .build());
+
+    /**
+     * @param path file with the pairing records, with the write-ahead log next to it
+     * @param certificatesPath file with the pinned certificates referred to by the records
+     */
+    public FilePairingStore(final Path path, final Path certificatesPath) throws IOException {
+        this(path, certificatesPath, DEFAULT_COMMIT_WINDOW_NANOS);
+    }
+
+    /**
+     * @param commitWindowNanos time a commit waits for writes of other threads to join it
+     */
+    public FilePairingStore(final Path path, final Path certificatesPath,
+            final long commitWindowNanos) throws IOException {
+        this.path = path;
+        this.certificatesPath = certificatesPath;
+        this.commitWindowNanos = commitWindowNanos;
+        openFiles();
+        try {
+            open();
+        } catch (final IOException | RuntimeException e) {
+            closeFiles();
+            reclaimer.shutdown();
+            throw e;
+        }
+        reclaimer.execute(this::reclaimLeftovers);
+    }
+
+    private void openFiles() throws IOException {
+        certificateStore = new CertificateStore(certificatesPath);
+        try {
+            file = StorageFile.open(path);
+        } catch (final IOException | RuntimeException e) {
+            certificateStore.close();
+            throw e;
+        }
+        try {
+            // replays committed writes before the records are scanned
+            log = new WriteAheadLog(file, path.resolveSibling(path.getFileName() + "-wal"),
+                    commitWindowNanos);
+        } catch (final IOException | RuntimeException e) {
+            file.close();
+            certificateStore.close();
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        final long size = file.size();
+        if (size == 0) {
+            writeFileHeader();
+            return;
+        }
+        final ByteBuffer fileHeader = read(0, FILE_HEADER_LENGTH);
+        if (fileHeader.getInt() != MAGIC) {
+            throw new IOException("not a pairing store");
+        }
+        final short version = fileHeader.getShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unsupported pairing store version: " + version);
+        }
+
+        long position = FILE_HEADER_LENGTH;
+        Slot last = null;
+        // live record for the same fingerprint replaced in the index by the last one
+        Slot replaced = null;
+        while (position < size) {
+            if (size - position < VARIABLE_OFFSET) {
+                break;
+            }
+            final ByteBuffer header = read(position, VARIABLE_OFFSET);
+            final int length = header.getInt(0);
+            if (length < VARIABLE_OFFSET || length > size - position) {
+                break;
+            }
+            last = new Slot(position, length,
+                    (header.get(PINNED_OFFSET) & FLAG_PERSISTENT_KEY) != 0,
+                    getVerifiedBootKey(header));
+            replaced = header.get(STATE_OFFSET) == RECORD_LIVE
+                    ? index.put(getFingerprint(header), last) : null;
+            position += length;
+        }
+        if (last != null && !checksumMatches(last)) {
+            position = last.offset;
+            final ByteBuffer fingerprint = getFingerprint(read(last.offset, VARIABLE_OFFSET));
+            if (replaced != null) {
+                index.put(fingerprint, replaced);
+            } else {
+                index.remove(fingerprint, last);
+            }
+        }
+        if (position != size) {
+            logger.warning("discarding torn pairing record at " + position);
+            file.truncate(position);
+            file.force();
+        }
+        end = position;
+
+        for (final Slot slot : index.values()) {
+            for (final byte[] digest : getCertificateDigests(read(slot.offset, slot.length))) {
+                if (!certificateStore.retain(digest)) {
+                    logger.warning("pairing record at " + slot.offset + " refers to a missing certificate");
+                }
+            }
+        }
+        certificateStore.collect();
+    }
+
+    private void writeFileHeader() throws IOException {
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        fileHeader.putInt(MAGIC);
+        fileHeader.putShort(FORMAT_VERSION);
+        fileHeader.flip();
+        write(fileHeader, 0);
+        file.force();
+        end = FILE_HEADER_LENGTH;
+    }
+
+    @Override
+    public synchronized Pairing load(final byte[] fingerprint) throws IOException {
+        final Slot slot = index.get(ByteBuffer.wrap(fingerprint));
+        if (slot == null) {
+            return null;
+        }
+        final ByteBuffer record = read(slot.offset, slot.length);
+        if (record.getInt(CHECKSUM_OFFSET) != checksum(record)) {
+            throw new IOException("corrupt pairing record");
+        }
+
+        record.position(PINNED_OFFSET);
+        final int flags = record.get();
+        final byte[] chainDigest = new byte[CHAIN_DIGEST_LENGTH];
+        record.get(chainDigest);
+        record.position(record.position() + Byte.BYTES + MAX_VERIFIED_BOOT_KEY_LENGTH);
+        final int osVersion = record.getInt();
+        final int osPatchLevel = record.getInt();
+        final int vendorPatchLevel = record.getInt();
+        final int bootPatchLevel = record.getInt();
+        final int appVersion = record.getInt();
+        final int appVariant = record.getInt();
+        final int securityLevel = record.getInt();
+        final long verifiedTimeFirst = record.getLong();
+        final long verifiedTimeLast = record.getLong();
+
+        final byte[] persistentKey = new byte[record.getShort()];
+        record.get(persistentKey);
+        final byte[][] certificateDigests = getCertificateDigests(record);
+        final byte[][] certificates = new byte[certificateDigests.length][];
+        for (int i = 0; i < certificates.length; i++) {
+            certificates[i] = certificateStore.get(certificateDigests[i]);
+        }
+
+        return new Pairing(certificates, certificateDigests,
+                (flags & FLAG_CHAIN_DIGEST) != 0 ? chainDigest : null,
+                (flags & FLAG_PERSISTENT_KEY) != 0 ? persistentKey : null,
+                slot.verifiedBootKey, osVersion, osPatchLevel, vendorPatchLevel, bootPatchLevel,
+                appVersion, appVariant, securityLevel, verifiedTimeFirst, verifiedTimeLast);
+    }
+
+    @Override
+    public void store(final byte[] fingerprint, final Pairing pairing) throws IOException {
+        final WriteAheadLog log;
+        final long sequence;
+        final List<byte[]> superseded = new ArrayList<>();
+        synchronized (this) {
+            log = this.log;
+            sequence = append(fingerprint, pairing, superseded);
+        }
+        // waits outside of the lock for other writes to join the commit
+        log.await(sequence);
+        release(log, superseded);
+    }
+
+    @Override
+    public void update(final byte[] fingerprint, final Pairing pairing) throws IOException {
+        final WriteAheadLog log;
+        final long sequence;
+        final List<byte[]> superseded = new ArrayList<>();
+        synchronized (this) {
+            log = this.log;
+            final Slot slot = index.get(ByteBuffer.wrap(fingerprint));
+            if (slot == null) {
+                return;
+            }
+            if (slot.hasPersistentKey != (pairing.persistentKey != null)
+                    || !Objects.equals(slot.verifiedBootKey, pairing.verifiedBootKey)) {
+                sequence = append(fingerprint, pairing, superseded);
+            } else {
+                final ByteBuffer pinned = ByteBuffer.allocate(PINNED_LENGTH);
+                putPinned(pinned, pairing);
+                sequence = log.write(slot.offset + PINNED_OFFSET, pinned.array());
+            }
+        }
+        log.await(sequence);
+        release(log, superseded);
+    }
+
+    /**
+     * Removes the pairing for the persistent key fingerprint.
+     *
+     * @return false if the Auditee was not paired
+     */
+    public boolean remove(final byte[] fingerprint) throws IOException {
+        final WriteAheadLog log;
+        final long sequence;
+        final byte[][] digests;
+        synchronized (this) {
+            log = this.log;
+            final Slot slot = index.remove(ByteBuffer.wrap(fingerprint));
+            if (slot == null) {
+                return false;
+            }
+            digests = getCertificateDigests(read(slot.offset, slot.length));
+            sequence = log.write(slot.offset + STATE_OFFSET, new byte[] { RECORD_SUPERSEDED });
+        }
+        log.await(sequence);
+        release(log, Arrays.asList(digests));
+        return true;
+    }
+
+    /**
+     * Drops the references of superseded records once the write marking them is durable, since
+     * a crash before that leaves them live and they still need their certificates on open.
+     */
+    private synchronized void release(final WriteAheadLog log, final List<byte[]> digests)
+            throws IOException {
+        // a clear in between retired the certificates along with the records
+        if (digests.isEmpty() || log != this.log) {
+            return;
+        }
+        for (final byte[] digest : digests) {
+            certificateStore.release(digest);
+        }
+        certificateStore.collect();
+    }
+
+    /**
+     * Returns a page of the fingerprints of paired Auditees in ascending order.
+     *
+     * @param after last fingerprint of the previous page or null for the first page
+     * @param limit maximum number of fingerprints in the page
+     */
+    public synchronized List<byte[]> list(final byte[] after, final int limit) {
+        final NavigableMap<ByteBuffer, Slot> tail =
+                after != null ? index.tailMap(ByteBuffer.wrap(after), false) : index;
+        final List<byte[]> page = new ArrayList<>(Math.min(limit, tail.size()));
+        for (final ByteBuffer fingerprint : tail.keySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(fingerprint.array().clone());
+        }
+        return page;
+    }
+
+    // Returns the sequence number of the last write in the write-ahead log and adds the
+    // certificate digests of a superseded record to be released once it is durable
+    private long append(final byte[] fingerprint, final Pairing pairing,
+            final List<byte[]> superseded) throws IOException {
+        if (fingerprint.length != FINGERPRINT_LENGTH) {
+            throw new IOException("invalid fingerprint length");
+        }
+        final byte[][] certificateDigests = pairing.getCertificateDigests();
+        if (certificateDigests.length > Byte.MAX_VALUE) {
+            throw new IOException("too many pinned certificates");
+        }
+        int length = VARIABLE_OFFSET + Short.BYTES + Byte.BYTES +
+                certificateDigests.length * DIGEST_LENGTH;
+        if (pairing.persistentKey != null) {
+            length += pairing.persistentKey.length;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(RECORD_LIVE);
+        record.put(fingerprint);
+        putPinned(record, pairing);
+        if (pairing.persistentKey != null) {
+            putShortLength(record, pairing.persistentKey.length);
+            record.put(pairing.persistentKey);
+        } else {
+            record.putShort((short) 0);
+        }
+        record.put((byte) certificateDigests.length);
+        for (final byte[] digest : certificateDigests) {
+            if (digest.length != DIGEST_LENGTH) {
+                throw new IOException("invalid certificate digest length");
+            }
+            record.put(digest);
+        }
+        record.putInt(CHECKSUM_OFFSET, checksum(record));
+
+        // the certificates are durable before any record referring to them
+        for (int i = 0; i < certificateDigests.length; i++) {
+            certificateStore.retain(certificateDigests[i], pairing.certificates[i]);
+        }
+        certificateStore.force();
+
+        final long offset = end;
+        final ByteBuffer key = ByteBuffer.wrap(fingerprint.clone());
+        final Slot previous = index.get(key);
+        final long sequence;
+        if (previous != null) {
+            Collections.addAll(superseded,
+                    getCertificateDigests(read(previous.offset, previous.length)));
+            // committed together, so a crash never leaves both records live
+            sequence = log.write(offset, record.array(), previous.offset + STATE_OFFSET,
+                    new byte[] { RECORD_SUPERSEDED });
+        } else {
+            sequence = log.write(offset, record.array());
+        }
+        end = offset + length;
+        index.put(key, new Slot(offset, length, pairing.persistentKey != null,
+                pairing.verifiedBootKey));
+        return sequence;
+    }
+
+    private static void putPinned(final ByteBuffer buffer, final Pairing pairing)
+            throws IOException {
+        int flags = 0;
+        if (pairing.chainDigest != null) {
+            if (pairing.chainDigest.length != CHAIN_DIGEST_LENGTH) {
+                throw new IOException("invalid chain digest length");
+            }
+            flags |= FLAG_CHAIN_DIGEST;
+        }
+        if (pairing.persistentKey != null) {
+            flags |= FLAG_PERSISTENT_KEY;
+        }
+        buffer.put((byte) flags);
+        if (pairing.chainDigest != null) {
+            buffer.put(pairing.chainDigest);
+        } else {
+            buffer.position(buffer.position() + CHAIN_DIGEST_LENGTH);
+        }
+
+        if (pairing.verifiedBootKey != null) {
+            final byte[] verifiedBootKey = pairing.verifiedBootKey.getBytes(StandardCharsets.US_ASCII);
+            if (verifiedBootKey.length > MAX_VERIFIED_BOOT_KEY_LENGTH) {
+                throw new IOException("verified boot key too long");
+            }
+            buffer.put((byte) verifiedBootKey.length);
+            buffer.put(verifiedBootKey);
+            buffer.position(buffer.position() + MAX_VERIFIED_BOOT_KEY_LENGTH - verifiedBootKey.length);
+        } else {
+            buffer.put((byte) -1);
+            buffer.position(buffer.position() + MAX_VERIFIED_BOOT_KEY_LENGTH);
+        }
+
+        buffer.putInt(pairing.osVersion);
+        buffer.putInt(pairing.osPatchLevel);
+        buffer.putInt(pairing.vendorPatchLevel);
+        buffer.putInt(pairing.bootPatchLevel);
+        buffer.putInt(pairing.appVersion);
+        buffer.putInt(pairing.appVariant);
+        buffer.putInt(pairing.securityLevel);
+        buffer.putLong(pairing.verifiedTimeFirst);
+        buffer.putLong(pairing.verifiedTimeLast);
+    }
+
+    private static void putShortLength(final ByteBuffer buffer, final int length)
+            throws IOException {
+        if (length > Short.MAX_VALUE) {
+            throw new IOException("pairing field too long");
+        }
+        buffer.putShort((short) length);
+    }
+
+    private static ByteBuffer getFingerprint(final ByteBuffer header) {
+        final byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+        header.position(FINGERPRINT_OFFSET);
+        header.get(fingerprint);
+        return ByteBuffer.wrap(fingerprint);
+    }
+
+    private static byte[][] getCertificateDigests(final ByteBuffer record) {
+        record.position(VARIABLE_OFFSET + Short.BYTES + record.getShort(VARIABLE_OFFSET));
+        final byte[][] digests = new byte[record.get()][];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = new byte[DIGEST_LENGTH];
+            record.get(digests[i]);
+        }
+        return digests;
+    }
+
+    private static String getVerifiedBootKey(final ByteBuffer header) {
+        final int length = header.get(PINNED_OFFSET + Byte.BYTES + CHAIN_DIGEST_LENGTH);
+        if (length < 0) {
+            return null;
+        }
+        return new String(header.array(), PINNED_OFFSET + 2 * Byte.BYTES + CHAIN_DIGEST_LENGTH,
+                Math.min(length, MAX_VERIFIED_BOOT_KEY_LENGTH), StandardCharsets.US_ASCII);
+    }
+
+    private boolean checksumMatches(final Slot slot) throws IOException {
+        final ByteBuffer record = read(slot.offset, slot.length);
+        return record.getInt(CHECKSUM_OFFSET) == checksum(record);
+    }
+
+    private static int checksum(final ByteBuffer record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), VARIABLE_OFFSET, record.capacity() - VARIABLE_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    // Reads through the write-ahead log to see writes that are not durable yet
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        return log.read(position, length);
+    }
+
+    private void write(final ByteBuffer buffer, final long position) throws IOException {
+        final long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            file.write(buffer, start + buffer.position());
+        }
+    }
+
+    /**
+     * Returns the number of paired Auditees.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Removes all pairings by starting a new generation, leaving the deletion of the previous
+     * files to a background thread.
+     */
+    public synchronized void clear() throws IOException {
+        log.discard();
+        try {
+            file.close();
+        } finally {
+            certificateStore.close();
+        }
+        index.clear();
+
+        // the pairings are gone once their file is renamed, leftover certificates are garbage
+        generation++;
+        final Path retiredPath = retire(path);
+        final Path retiredCertificatesPath = retire(certificatesPath);
+        // a crash before the renames are durable would bring back the previous generation
+        final Path directory = path.toAbsolutePath().getParent();
+        final Path certificatesDirectory = certificatesPath.toAbsolutePath().getParent();
+        StorageFile.syncDirectory(directory);
+        if (!certificatesDirectory.equals(directory)) {
+            StorageFile.syncDirectory(certificatesDirectory);
+        }
+        openFiles();
+        writeFileHeader();
+        reclaimer.execute(() -> {
+            delete(retiredPath);
+            delete(retiredCertificatesPath);
+        });
+    }
+
+    private Path retire(final Path current) throws IOException {
+        final Path retired = current.resolveSibling(current.getFileName() + RETIRED_SUFFIX + generation);
+        Files.move(current, retired, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        return retired;
+    }
+
+    // Deletes the retired files of generations cleared before a crash or an unclean exit
+    private void reclaimLeftovers() {
+        for (final Path current : new Path[] { path, certificatesPath }) {
+            // retired files are never reopened, so this can race with clear
+            try (DirectoryStream<Path> retired = Files.newDirectoryStream(
+                    current.toAbsolutePath().getParent(), current.getFileName() + RETIRED_SUFFIX + "*")) {
+                for (final Path leftover : retired) {
+                    delete(leftover);
+                }
+            } catch (final IOException e) {
+                logger.log(Level.WARNING, "failed to list retired pairing store files", e);
+            }
+        }
+    }
+
+    private static void delete(final Path retired) {
+        try {
+            Files.deleteIfExists(retired);
+            logger.fine("deleted retired " + retired);
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, "failed to delete retired " + retired, e);
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        try {
+            log.close();
+        } finally {
+            try {
+                file.close();
+            } finally {
+                certificateStore.close();
+            }
+        }
+    }
+
+    /**
+     * Closes the files, retired files not deleted yet are deleted after the next open.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        reclaimer.shutdown();
+        closeFiles();
+    }
+}
@@ -0,0 +1,75 @@
+package app.attestation.auditor.verifier;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CryptoBackend} using the default JCA providers, with the certificate factory and a
+ * signature context for each algorithm cached per thread.
+ */
+final class JcaCryptoBackend implements CryptoBackend {
+    private final ThreadLocal<CertificateFactory> certificateFactory = new ThreadLocal<>();
+    private final ThreadLocal<Map<String, Signature>> signatures =
+            ThreadLocal.withInitial(HashMap::new);
+
+    @Override
+    public String getName() {
+        return "JCA";
+    }
+
+    @Override
+    public X509Certificate generateCertificate(final byte[] encoded, final int offset,
+            final int length) throws CertificateException {
+        CertificateFactory factory = certificateFactory.get();
+        if (factory == null) {
+            factory = CertificateFactory.getInstance("X.509");
+            certificateFactory.set(factory);
+        }
+        return (X509Certificate) factory.generateCertificate(
+                new ByteArrayInputStream(encoded, offset, length));
+    }
+
+    @Override
+    public void verifyCertificate(final X509Certificate certificate, final PublicKey issuerKey)
+            throws GeneralSecurityException {
+        // parameterized algorithms such as RSASSA-PSS are left to the certificate
+        if (certificate.getSigAlgParams() != null) {
+            certificate.verify(issuerKey);
+            return;
+        }
+        final Signature signature = getSignature(certificate.getSigAlgName());
+        signature.initVerify(issuerKey);
+        signature.update(certificate.getTBSCertificate());
+        if (!signature.verify(certificate.getSignature())) {
+            throw new SignatureException("Signature does not match.");
+        }
+    }
+
+    @Override
+    public boolean verifySignature(final PublicKey key, final ByteBuffer message,
+            final byte[] signature) throws GeneralSecurityException {
+        final Signature verifier = getSignature(AttestationVerifier.SIGNATURE_ALGORITHM);
+        verifier.initVerify(key);
+        verifier.update(message);
+        return verifier.verify(signature);
+    }
+
+    private Signature getSignature(final String algorithm) throws GeneralSecurityException {
+        final Map<String, Signature> cache = signatures.get();
+        Signature signature = cache.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            cache.put(algorithm, signature);
+        }
+        return signature;
+    }
+}
@@ -0,0 +1,97 @@
+package app.attestation.auditor.verifier;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Pinning data kept by the Auditor for a paired Auditee.
+ */
+public class Pairing {
+    private static final String PERSISTENT_KEY_ALGORITHM = "EC";
+
+    // encoded certificates of the chain from the initial pairing
+    public final byte[][] certificates;
+    // SHA-256 digests of the certificates above, computed on first use if not provided
+    private volatile byte[][] certificateDigests;
+    // digest of the pinned chain above the persistent certificate, null for legacy pairings
+    public final byte[] chainDigest;
+    // encoded public key of the persistent certificate, null for legacy pairings
+    public final byte[] persistentKey;
+    public final String verifiedBootKey;
+    public final int osVersion;
+    public final int osPatchLevel;
+    public final int vendorPatchLevel;
+    public final int bootPatchLevel;
+    public final int appVersion;
+    public final int appVariant;
+    public final int securityLevel;
+    public final long verifiedTimeFirst;
+    public final long verifiedTimeLast;
+
+    private volatile PublicKey decodedPersistentKey;
+
+    public Pairing(final byte[][] certificates, final byte[] chainDigest,
+            final byte[] persistentKey, final String verifiedBootKey,
+            final int osVersion, final int osPatchLevel, final int vendorPatchLevel,
+            final int bootPatchLevel, final int appVersion, final int appVariant,
+            final int securityLevel, final long verifiedTimeFirst, final long verifiedTimeLast) {
+        this(certificates, null, chainDigest, persistentKey, verifiedBootKey, osVersion,
+                osPatchLevel, vendorPatchLevel, bootPatchLevel, appVersion, appVariant,
+                securityLevel, verifiedTimeFirst, verifiedTimeLast);
+    }
+
+    /**
+     * @param certificateDigests SHA-256 digests of the certificates, such as the keys they are
+     *     stored under, or null to compute them when needed
+     */
+    public Pairing(final byte[][] certificates, final byte[][] certificateDigests,
+            final byte[] chainDigest, final byte[] persistentKey, final String verifiedBootKey,
+            final int osVersion, final int osPatchLevel, final int vendorPatchLevel,
+            final int bootPatchLevel, final int appVersion, final int appVariant,
+            final int securityLevel, final long verifiedTimeFirst, final long verifiedTimeLast) {
+        this.certificates = certificates;
+        this.certificateDigests = certificateDigests;
+        this.chainDigest = chainDigest;
+        this.persistentKey = persistentKey;
+        this.verifiedBootKey = verifiedBootKey;
+        this.osVersion = osVersion;
+        this.osPatchLevel = osPatchLevel;
+        this.vendorPatchLevel = vendorPatchLevel;
+        this.bootPatchLevel = bootPatchLevel;
+        this.appVersion = appVersion;
+        this.appVariant = appVariant;
+        this.securityLevel = securityLevel;
+        this.verifiedTimeFirst = verifiedTimeFirst;
+        this.verifiedTimeLast = verifiedTimeLast;
+    }
+
+    /**
+     * Returns the SHA-256 digests of the pinned certificates, computing them on first use.
+     */
+    public byte[][] getCertificateDigests() {
+        byte[][] digests = certificateDigests;
+        if (digests == null) {
+            digests = new byte[certificates.length][];
+            for (int i = 0; i < certificates.length; i++) {
+                digests[i] = CertificateCache.DIGEST_HASH_FUNCTION.hashBytes(certificates[i]).asBytes();
+            }
+            certificateDigests = digests;
+        }
+        return digests;
+    }
+
+    /**
+     * Returns the decoded persistent public key, decoding it on first use.
+     */
+    public PublicKey getPersistentKey() throws GeneralSecurityException {
+        PublicKey key = decodedPersistentKey;
+        if (key == null) {
+            key = KeyFactory.getInstance(PERSISTENT_KEY_ALGORITHM)
+                    .generatePublic(new X509EncodedKeySpec(persistentKey));
+            decodedPersistentKey = key;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,30 @@
+package app.attestation.auditor.verifier;
+
+import java.io.IOException;
+
+/**
+ * Storage for the pinning data of paired Auditees, keyed by the fingerprint of their persistent
+ * key.
+ *
+ * <p>Implementations need to be thread-safe when a verifier is shared between threads.
+ */
+public interface PairingStore {
+    /**
+     * Returns the pinning data for the persistent key fingerprint or null if the Auditee has not
+     * been paired.
+     */
+    Pairing load(byte[] fingerprint) throws IOException;
+
+    /**
+     * Stores the pinning data for an initial pairing.
+     */
+    void store(byte[] fingerprint, Pairing pairing) throws IOException;
+
+    /**
+     * Updates the pinning data after a successful paired verification. The pinned certificate
+     * chain and the first verification time are unchanged from the loaded pairing. The chain
+     * digest and persistent key are filled in if the loaded pairing did not have them yet.
+     * Nothing is stored if the pairing was removed since it was loaded.
+     */
+    void update(byte[] fingerprint, Pairing pairing) throws IOException;
+}
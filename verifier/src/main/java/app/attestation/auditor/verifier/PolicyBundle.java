@@ -0,0 +1,153 @@
+package app.attestation.auditor.verifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Supported devices together with the {@link VerificationPolicy}, replaceable at runtime with
+ * {@link AttestationVerifier#updatePolicyBundle}.
+ *
+ * <p>Bundles are signed, so they can be distributed to verification servers as plain files. The
+ * serial number increases with each release and an older bundle is never swapped in. Format, big
+ * endian:
+ *
+ * <pre>
+ * signed bundle {
+ * int magic = MAGIC
+ * short version = FORMAT_VERSION
+ * long serial
+ * int auditorAppMinimumVersion
+ * int osVersionMinimum
+ * int osPatchLevelMinimum
+ * int vendorPatchLevelMinimum
+ * int bootPatchLevelMinimum
+ * int deviceDatabaseLength
+ * byte[] deviceDatabase (length: deviceDatabaseLength)
+ * }
+ * byte[] signature (rest of file)
+ * </pre>
+ */
+public class PolicyBundle {
+    static final int MAGIC = 0x41555042; // "AUPB"
+    public static final short FORMAT_VERSION = 1;
+
+    private static PolicyBundle defaultBundle;
+
+    public final long serial;
+    public final VerificationPolicy policy;
+    public final DeviceDatabase deviceDatabase;
+
+    public PolicyBundle(final long serial, final VerificationPolicy policy,
+            final DeviceDatabase deviceDatabase) {
+        this.serial = serial;
+        this.policy = policy;
+        this.deviceDatabase = deviceDatabase;
+    }
+
+    /**
+     * Returns the bundle built into the verifier, with serial number 0.
+     */
+    public static synchronized PolicyBundle getDefault() {
+        if (defaultBundle == null) {
+            defaultBundle = new PolicyBundle(0, VerificationPolicy.DEFAULT, DeviceDatabase.getDefault());
+        }
+        return defaultBundle;
+    }
+
+    /**
+     * Reads a bundle file and checks its signature before reading anything else.
+     *
+     * <p>The file is copied to the heap rather than mapped, so the bundle keeps using the bytes
+     * that were checked when the file is later overwritten or truncated to swap in a new one.
+     */
+    public static PolicyBundle load(final Path path, final PublicKey publicKey)
+            throws GeneralSecurityException, IOException {
+        return wrap(ByteBuffer.wrap(Files.readAllBytes(path)), publicKey);
+    }
+
+    /**
+     * Reads a bundle from a buffer without copying the device database. The buffer must not be
+     * modified afterwards.
+     */
+    public static PolicyBundle wrap(final ByteBuffer data, final PublicKey publicKey)
+            throws GeneralSecurityException, IOException {
+        final ByteBuffer reader = data.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (reader.getInt() != MAGIC) {
+                throw new IOException("not a policy bundle");
+            }
+            final short version = reader.getShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported policy bundle version: " + version);
+            }
+            final long serial = reader.getLong();
+            final VerificationPolicy policy = new VerificationPolicy(reader.getInt(),
+                    reader.getInt(), reader.getInt(), reader.getInt(), reader.getInt());
+            final int deviceDatabaseLength = reader.getInt();
+            if (deviceDatabaseLength < 0 || deviceDatabaseLength > reader.remaining()) {
+                throw new IOException("truncated policy bundle");
+            }
+            final int deviceDatabaseOffset = reader.position();
+            final int signedLength = deviceDatabaseOffset + deviceDatabaseLength;
+
+            final ByteBuffer signedBundle = reader.duplicate();
+            signedBundle.position(0);
+            signedBundle.limit(signedLength);
+            final ByteBuffer signature = reader.duplicate();
+            signature.position(signedLength);
+            final byte[] signatureBytes = new byte[signature.remaining()];
+            signature.get(signatureBytes);
+            final Signature verifier = Signature.getInstance(AttestationVerifier.SIGNATURE_ALGORITHM);
+            verifier.initVerify(publicKey);
+            verifier.update(signedBundle);
+            if (!verifier.verify(signatureBytes)) {
+                throw new SignatureException("invalid policy bundle signature");
+            }
+
+            final ByteBuffer deviceDatabase = reader.duplicate();
+            deviceDatabase.limit(signedLength);
+            return new PolicyBundle(serial, policy, DeviceDatabase.wrap(deviceDatabase));
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("truncated policy bundle", e);
+        }
+    }
+
+    /**
+     * Builds a signed bundle from a compiled device database.
+     */
+    public static byte[] sign(final long serial, final VerificationPolicy policy,
+            final byte[] deviceDatabase, final PrivateKey privateKey) throws GeneralSecurityException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(serial);
+            out.writeInt(policy.auditorAppMinimumVersion);
+            out.writeInt(policy.osVersionMinimum);
+            out.writeInt(policy.osPatchLevelMinimum);
+            out.writeInt(policy.vendorPatchLevelMinimum);
+            out.writeInt(policy.bootPatchLevelMinimum);
+            out.writeInt(deviceDatabase.length);
+            out.write(deviceDatabase);
+
+            final Signature signer = Signature.getInstance(AttestationVerifier.SIGNATURE_ALGORITHM);
+            signer.initSign(privateKey);
+            signer.update(bytes.toByteArray());
+            out.write(signer.sign());
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,62 @@
+package app.attestation.auditor.verifier;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Properties;
+
+/**
+ * Compiles the text list of supported devices and a policy into a signed {@link PolicyBundle}.
+ *
+ * <p>Usage: {@code PolicyBundleCompiler <devices.txt> <policy.properties> <key.pk8> <bundle.bin>}
+ *
+ * <p>The policy file sets {@code serial} and optionally overrides the minimums of
+ * {@link VerificationPolicy#DEFAULT} with {@code auditorAppMinimumVersion},
+ * {@code osVersionMinimum}, {@code osPatchLevelMinimum}, {@code vendorPatchLevelMinimum} and
+ * {@code bootPatchLevelMinimum}. The key is an EC private key in PKCS#8 DER format.
+ */
+public final class PolicyBundleCompiler {
+    private PolicyBundleCompiler() {}
+
+    public static void main(final String[] args) throws GeneralSecurityException, IOException {
+        if (args.length != 4) {
+            System.err.println("usage: PolicyBundleCompiler <devices.txt> <policy.properties> <key.pk8> <bundle.bin>");
+            System.exit(1);
+        }
+        final byte[] deviceDatabase = DeviceDatabaseCompiler.compile(
+                Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8));
+
+        final Properties properties = new Properties();
+        try (final Reader reader = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        final String serial = properties.getProperty("serial");
+        if (serial == null) {
+            throw new IOException("policy serial is missing");
+        }
+        final VerificationPolicy defaults = VerificationPolicy.DEFAULT;
+        final VerificationPolicy policy = new VerificationPolicy(
+                getInt(properties, "auditorAppMinimumVersion", defaults.auditorAppMinimumVersion),
+                getInt(properties, "osVersionMinimum", defaults.osVersionMinimum),
+                getInt(properties, "osPatchLevelMinimum", defaults.osPatchLevelMinimum),
+                getInt(properties, "vendorPatchLevelMinimum", defaults.vendorPatchLevelMinimum),
+                getInt(properties, "bootPatchLevelMinimum", defaults.bootPatchLevelMinimum));
+
+        final PrivateKey privateKey = KeyFactory.getInstance("EC").generatePrivate(
+                new PKCS8EncodedKeySpec(Files.readAllBytes(Paths.get(args[2]))));
+
+        Files.write(Paths.get(args[3]),
+                PolicyBundle.sign(Long.parseLong(serial.trim()), policy, deviceDatabase, privateKey));
+    }
+
+    private static int getInt(final Properties properties, final String key, final int defaultValue) {
+        final String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,100 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.RSAKeyParameters;
+import org.bouncycastle.crypto.util.PublicKeyFactory;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.WNafUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Public keys converted for {@link BouncyCastleCryptoBackend}, keyed by their X.509 encoding.
+ *
+ * <p>The root, intermediate and pinned persistent keys verify signatures over and over again. For
+ * EC keys the table of odd multiples of the public point used by the wNAF multiplication in ECDSA
+ * verification is computed on insertion and stays attached to the cached point, so only the first
+ * verification with a key pays for it. The cache is bounded by an estimate of the memory held
+ * and evicts the least recently used keys. Instances are thread-safe.
+ */
+final class PublicKeyCache {
+    // 64 MiB holds roughly 25,000 P-256 keys with their tables
+    static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    // rough per object overhead of points, field elements and arrays
+    private static final int OBJECT_OVERHEAD = 32;
+
+    private final Cache<ByteBuffer, AsymmetricKeyParameter> parameters;
+
+    /**
+     * @param maximumBytes estimated memory budget for the cached keys and their tables
+     */
+    PublicKeyCache(final long maximumBytes) {
+        parameters = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher(PublicKeyCache::weigh)
+                .build();
+    }
+
+    AsymmetricKeyParameter get(final PublicKey key) throws InvalidKeyException {
+        final byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            throw new InvalidKeyException("public key has no encoding");
+        }
+        final ByteBuffer cacheKey = ByteBuffer.wrap(encoded);
+        final AsymmetricKeyParameter cached = parameters.getIfPresent(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return parameters.get(cacheKey, () -> create(encoded));
+        } catch (final ExecutionException e) {
+            throw (InvalidKeyException) e.getCause();
+        }
+    }
+
+    private static AsymmetricKeyParameter create(final byte[] encoded) throws InvalidKeyException {
+        final AsymmetricKeyParameter parameter;
+        try {
+            parameter = PublicKeyFactory.createKey(encoded);
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new InvalidKeyException("invalid public key", e);
+        }
+        if (parameter instanceof ECPublicKeyParameters) {
+            // same width the verification would settle on after several uses of the point
+            final ECPoint q = ((ECPublicKeyParameters) parameter).getQ();
+            WNafUtil.precompute(q, WNafUtil.getWindowSize(q.getCurve().getOrder().bitLength()), true);
+        }
+        return parameter;
+    }
+
+    private static int weigh(final ByteBuffer encoded, final AsymmetricKeyParameter parameter) {
+        int weight = encoded.capacity() + OBJECT_OVERHEAD;
+        if (parameter instanceof ECPublicKeyParameters) {
+            final ECPoint q = ((ECPublicKeyParameters) parameter).getQ();
+            final int pointSize = 2 * ((q.getCurve().getFieldSize() + 7) / 8 + OBJECT_OVERHEAD)
+                    + OBJECT_OVERHEAD;
+            // the point and domain references plus the positive and negated table entries
+            final int tableSize = 2 * (1 << (WNafUtil.getWindowSize(
+                    q.getCurve().getOrder().bitLength()) - 2));
+            weight += pointSize * (1 + tableSize);
+        } else if (parameter instanceof RSAKeyParameters) {
+            final RSAKeyParameters rsa = (RSAKeyParameters) parameter;
+            weight += (rsa.getModulus().bitLength() + rsa.getExponent().bitLength()) / 8
+                    + 2 * OBJECT_OVERHEAD;
+        }
+        return weight;
+    }
+
+    long size() {
+        return parameters.size();
+    }
+}
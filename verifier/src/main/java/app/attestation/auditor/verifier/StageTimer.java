@@ -0,0 +1,93 @@
+package app.attestation.auditor.verifier;
+
+import app.attestation.auditor.verifier.VerificationException.Reason;
+import app.attestation.auditor.verifier.VerificationMetrics.Stage;
+
+/**
+ * Tracks the stages of a single verification. Time spent in a stage is accumulated when it is
+ * entered more than once and reported once per verification.
+ */
+class StageTimer {
+    private static final Stage[] STAGES = Stage.values();
+
+    private final VerificationMetrics metrics;
+    private final long[] nanos = new long[STAGES.length];
+    private final boolean[] entered = new boolean[STAGES.length];
+    private final long startTime;
+    private Stage stage;
+    private long stageStartTime;
+
+    StageTimer(final VerificationMetrics metrics) {
+        this.metrics = metrics;
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Ends the current stage, if any, and starts the given one.
+     */
+    void begin(final Stage next) {
+        final long now = System.nanoTime();
+        if (stage != null) {
+            nanos[stage.ordinal()] += now - stageStartTime;
+        }
+        stage = next;
+        entered[next.ordinal()] = true;
+        stageStartTime = now;
+    }
+
+    private void end(final boolean failed) {
+        final long now = System.nanoTime();
+        if (stage != null) {
+            nanos[stage.ordinal()] += now - stageStartTime;
+        }
+        for (final Stage s : STAGES) {
+            if (entered[s.ordinal()] && !(failed && s == stage)) {
+                metrics.recordStage(s, nanos[s.ordinal()]);
+            }
+        }
+    }
+
+    void verified() {
+        end(false);
+        metrics.recordVerified(System.nanoTime() - startTime);
+    }
+
+    void rejected(final Throwable e) {
+        end(true);
+        final Stage failedStage = stage != null ? stage : Stage.DESERIALIZE;
+        metrics.recordRejected(failedStage, reason(failedStage, e), System.nanoTime() - startTime);
+    }
+
+    /**
+     * Returns the reason for a failure in the current stage.
+     */
+    Reason reason(final Throwable e) {
+        return reason(stage != null ? stage : Stage.DESERIALIZE, e);
+    }
+
+    // Failures other than explicit rejections come from parsing or storage, depending on the stage
+    private static Reason reason(final Stage stage, final Throwable e) {
+        if (e instanceof VerificationException) {
+            return ((VerificationException) e).getReason();
+        }
+        switch (stage) {
+            case INFLATE:
+                return Reason.MALFORMED_CHAIN;
+            case CERTIFICATE_PARSE:
+                return Reason.MALFORMED_CERTIFICATE;
+            case CHAIN_SIGNATURES:
+                return Reason.CHAIN_SIGNATURE_INVALID;
+            case ATTESTATION_PARSE:
+            case DEVICE_LOOKUP:
+                return Reason.MALFORMED_ATTESTATION;
+            case PIN_COMPARISON:
+                return Reason.PINNING_DATA_CORRUPT;
+            case OUTER_SIGNATURE:
+                return Reason.SIGNATURE_INVALID;
+            case PERSISTENCE:
+                return Reason.STORAGE_ERROR;
+            default:
+                return Reason.MALFORMED_MESSAGE;
+        }
+    }
+}
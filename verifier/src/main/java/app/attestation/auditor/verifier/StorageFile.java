@@ -0,0 +1,104 @@
+package app.attestation.auditor.verifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File of the pairing store, certificate store or verification history, accessed through a
+ * {@link RandomAccessFile}.
+ *
+ * <p>A {@link FileChannel} is closed for every thread when a thread using it is interrupted, even
+ * in the middle of a write or force, so cancelling a single verification would make the shared
+ * files unusable. A RandomAccessFile is not interruptible. Positional reads and writes move the
+ * shared file pointer, so they are serialized by the instance. Buffers need to be backed by an
+ * array.
+ */
+final class StorageFile implements Closeable {
+    private final RandomAccessFile file;
+
+    private StorageFile(final RandomAccessFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the file for reading and writing, creating it if needed.
+     */
+    static StorageFile open(final Path path) throws IOException {
+        return new StorageFile(new RandomAccessFile(path.toFile(), "rw"));
+    }
+
+    /**
+     * Creates the file, failing if it already exists.
+     */
+    static StorageFile create(final Path path) throws IOException {
+        Files.createFile(path);
+        return open(path);
+    }
+
+    static StorageFile openReadOnly(final Path path) throws IOException {
+        return new StorageFile(new RandomAccessFile(path.toFile(), "r"));
+    }
+
+    /**
+     * Reads into the remaining space of the buffer at the position, returning the number of bytes
+     * read or -1 at the end of the file.
+     */
+    synchronized int read(final ByteBuffer buffer, final long position) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return 0;
+        }
+        file.seek(position);
+        final int read = file.read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        return read;
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer at the position.
+     */
+    synchronized void write(final ByteBuffer buffer, final long position) throws IOException {
+        file.seek(position);
+        file.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Forces the content and metadata of the file to storage.
+     */
+    void force() throws IOException {
+        file.getFD().sync();
+    }
+
+    synchronized void truncate(final long size) throws IOException {
+        file.setLength(size);
+    }
+
+    long size() throws IOException {
+        return file.length();
+    }
+
+    /**
+     * Forces the entries of a directory to storage, so that files created, renamed or deleted in
+     * it stay that way after a crash. A RandomAccessFile cannot open a directory, so this uses a
+     * channel of its own, which an interrupt can only fail for this call.
+     */
+    static void syncDirectory(final Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,55 @@
+package app.attestation.auditor.verifier;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.List;
+
+/**
+ * Trusted key attestation root certificates, parsed once and indexed by the SHA-256 digest of
+ * their DER encoding.
+ *
+ * <p>Instances are immutable and meant to be created once per process and shared by every
+ * {@link AttestationVerifier}.
+ */
+public class TrustAnchors {
+    private static final HashFunction DIGEST_HASH_FUNCTION = Hashing.sha256();
+
+    private final ImmutableMap<HashCode, Certificate> anchors;
+
+    public TrustAnchors(final List<? extends Certificate> roots)
+            throws CertificateEncodingException {
+        final ImmutableMap.Builder<HashCode, Certificate> builder = ImmutableMap.builder();
+        for (final Certificate root : roots) {
+            builder.put(DIGEST_HASH_FUNCTION.hashBytes(root.getEncoded()), root);
+        }
+        anchors = builder.build();
+    }
+
+    /**
+     * Returns the trusted root certificate with the same encoding as the given certificate or
+     * null if it is not a trust anchor.
+     */
+    public Certificate get(final Certificate certificate) throws CertificateEncodingException {
+        return anchors.get(DIGEST_HASH_FUNCTION.hashBytes(certificate.getEncoded()));
+    }
+
+    public boolean contains(final Certificate certificate) throws CertificateEncodingException {
+        return get(certificate) != null;
+    }
+
+    /**
+     * Returns whether a certificate is a trust anchor from the SHA-256 digest of its encoding.
+     */
+    boolean contains(final HashCode digest) {
+        return anchors.containsKey(digest);
+    }
+
+    public int size() {
+        return anchors.size();
+    }
+}
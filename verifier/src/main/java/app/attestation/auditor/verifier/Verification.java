@@ -0,0 +1,58 @@
+package app.attestation.auditor.verifier;
+
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ACCESSIBILITY;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ADB_ENABLED;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_DENY_NEW_USB;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_DEVICE_ADMIN;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_SYSTEM_USER;
+import static app.attestation.auditor.verifier.AttestationVerifier.OS_ENFORCED_FLAGS_USER_PROFILE_SECURE;
+
+/**
+ * Outcome of a successful verification of an attestation message.
+ */
+public class Verification {
+    // paired verification with the persistent key rather than an initial pairing
+    public final boolean strong;
+    public final String fingerprint;
+    public final Verified verified;
+    public final boolean attestKeyMigration;
+    // pinning data before this verification, null for an initial pairing
+    public final Pairing pairing;
+
+    // OS_ENFORCED_FLAGS_ bits of AttestationVerifier, decoded into the fields below
+    public final int osEnforcedFlags;
+    public final boolean userProfileSecure;
+    public final boolean accessibility;
+    public final boolean deviceAdmin;
+    public final boolean deviceAdminNonSystem;
+    public final boolean adbEnabled;
+    public final boolean addUsersWhenLocked;
+    public final boolean enrolledBiometrics;
+    public final boolean denyNewUsb;
+    public final boolean oemUnlockAllowed;
+    public final boolean systemUser;
+
+    Verification(final boolean strong, final String fingerprint, final Verified verified,
+            final boolean attestKeyMigration, final Pairing pairing, final int osEnforcedFlags) {
+        this.strong = strong;
+        this.fingerprint = fingerprint;
+        this.verified = verified;
+        this.attestKeyMigration = attestKeyMigration;
+        this.pairing = pairing;
+        this.osEnforcedFlags = osEnforcedFlags;
+        userProfileSecure = (osEnforcedFlags & OS_ENFORCED_FLAGS_USER_PROFILE_SECURE) != 0;
+        accessibility = (osEnforcedFlags & OS_ENFORCED_FLAGS_ACCESSIBILITY) != 0;
+        deviceAdmin = (osEnforcedFlags & OS_ENFORCED_FLAGS_DEVICE_ADMIN) != 0;
+        deviceAdminNonSystem = (osEnforcedFlags & OS_ENFORCED_FLAGS_DEVICE_ADMIN_NON_SYSTEM) != 0;
+        adbEnabled = (osEnforcedFlags & OS_ENFORCED_FLAGS_ADB_ENABLED) != 0;
+        addUsersWhenLocked = (osEnforcedFlags & OS_ENFORCED_FLAGS_ADD_USERS_WHEN_LOCKED) != 0;
+        enrolledBiometrics = (osEnforcedFlags & OS_ENFORCED_FLAGS_ENROLLED_BIOMETRICS) != 0;
+        denyNewUsb = (osEnforcedFlags & OS_ENFORCED_FLAGS_DENY_NEW_USB) != 0;
+        oemUnlockAllowed = (osEnforcedFlags & OS_ENFORCED_FLAGS_OEM_UNLOCK_ALLOWED) != 0;
+        systemUser = (osEnforcedFlags & OS_ENFORCED_FLAGS_SYSTEM_USER) != 0;
+    }
+}
@@ -0,0 +1,54 @@
+package app.attestation.auditor.verifier;
+
+import app.attestation.auditor.verifier.VerificationException.Reason;
+
+/**
+ * Entry of the {@link VerificationHistory} of an Auditee.
+ */
+public final class VerificationEvent {
+    // milliseconds since the epoch
+    public final long time;
+    public final int osVersion;
+    public final int osPatchLevel;
+    public final int vendorPatchLevel;
+    public final int bootPatchLevel;
+    public final int appVersion;
+    public final int appVariant;
+    // OS_ENFORCED_FLAGS_ bits of AttestationVerifier as sent
+    public final int osEnforcedFlags;
+    // reason for a rejected verification, null if it succeeded
+    public final Reason rejection;
+
+    public VerificationEvent(final long time, final int osVersion, final int osPatchLevel,
+            final int vendorPatchLevel, final int bootPatchLevel, final int appVersion,
+            final int appVariant, final int osEnforcedFlags, final Reason rejection) {
+        this.time = time;
+        this.osVersion = osVersion;
+        this.osPatchLevel = osPatchLevel;
+        this.vendorPatchLevel = vendorPatchLevel;
+        this.bootPatchLevel = bootPatchLevel;
+        this.appVersion = appVersion;
+        this.appVariant = appVariant;
+        this.osEnforcedFlags = osEnforcedFlags;
+        this.rejection = rejection;
+    }
+
+    static VerificationEvent verified(final long time, final Verified verified,
+            final int osEnforcedFlags) {
+        return new VerificationEvent(time, verified.osVersion, verified.osPatchLevel,
+                verified.vendorPatchLevel, verified.bootPatchLevel, verified.appVersion,
+                verified.appVariant, osEnforcedFlags, null);
+    }
+
+    /**
+     * Returns an event for a rejection, where the verified properties are not known.
+     */
+    static VerificationEvent rejected(final long time, final int osEnforcedFlags,
+            final Reason reason) {
+        return new VerificationEvent(time, 0, 0, 0, 0, 0, 0, osEnforcedFlags, reason);
+    }
+
+    public boolean isVerified() {
+        return rejection == null;
+    }
+}
@@ -0,0 +1,135 @@
+package app.attestation.auditor.verifier;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Rejection of an attestation with a stable reason code for monitoring.
+ */
+public class VerificationException extends GeneralSecurityException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Reasons are persisted by their code, which must never change or be reused. New reasons get
+     * the next unused code wherever they are listed.
+     */
+    public enum Reason {
+        // Message framing
+        PROTOCOL_VERSION_INVALID(1),
+        PROTOCOL_VERSION_TOO_OLD(2),
+        DEVICE_ADMIN_STATE_INVALID(3),
+        MALFORMED_MESSAGE(4),
+
+        // Certificate chain
+        CHAIN_TOO_LARGE(5),
+        MALFORMED_CHAIN(6),
+        MALFORMED_CERTIFICATE(7),
+        CHAIN_SIGNATURE_INVALID(8),
+        ROOT_SIGNATURE_INVALID(9),
+        ROOT_NOT_TRUSTED(10),
+
+        // Attestation of the Auditor key
+        MALFORMED_ATTESTATION(11),
+        ATTESTATION_SECURITY_LEVEL_INVALID(12),
+        KEYMASTER_SECURITY_LEVEL_MISMATCH(13),
+        CHALLENGE_MISMATCH(14),
+        ATTESTATION_PACKAGES_INVALID(15),
+        APP_SIGNATURES_INVALID(16),
+        APP_SIGNING_KEY_INVALID(17),
+        APP_DEBUG_UNTRUSTED(18),
+        APP_PACKAGE_INVALID(19),
+        APP_VERSION_TOO_OLD(20),
+        ROOT_OF_TRUST_MISSING(21),
+        DEVICE_NOT_LOCKED(22),
+        VERIFIED_BOOT_STATE_INVALID(23),
+        VERIFIED_BOOT_KEY_UNKNOWN(24),
+        OS_VERSION_NOT_RELEASE(25),
+        OS_VERSION_TOO_OLD(26),
+        OS_PATCH_LEVEL_TOO_OLD(27),
+        VENDOR_PATCH_LEVEL_TOO_OLD(28),
+        BOOT_PATCH_LEVEL_TOO_OLD(29),
+        KEY_PURPOSES_INVALID(30),
+        KEY_ORIGIN_INVALID(31),
+        KEY_ALL_APPLICATIONS(32),
+        KEY_NOT_ROLLBACK_RESISTANT(33),
+        ATTESTATION_VERSION_TOO_OLD(34),
+        KEYMASTER_VERSION_TOO_OLD(35),
+        VERIFIED_BOOT_HASH_MISSING(36),
+
+        // Attestation of the attest key
+        ATTEST_KEY_MISMATCH(37),
+        ATTEST_KEY_ROOT_OF_TRUST_MISSING(38),
+        ATTEST_KEY_PURPOSES_INVALID(39),
+        ATTEST_KEY_ORIGIN_INVALID(40),
+        ATTEST_KEY_ALL_APPLICATIONS(41),
+        ATTEST_KEY_NOT_ROLLBACK_RESISTANT(42),
+        UNEXPECTED_ATTESTATION_EXTENSION(43),
+
+        // Pairing
+        PAIRING_MISSING(44),
+        CHAIN_LENGTH_MISMATCH(45),
+        CHAIN_MISMATCH(46),
+        PINNING_DATA_CORRUPT(47),
+        VERIFIED_BOOT_KEY_MISMATCH(48),
+        OS_VERSION_DOWNGRADE(49),
+        OS_PATCH_LEVEL_DOWNGRADE(50),
+        VENDOR_PATCH_LEVEL_DOWNGRADE(51),
+        BOOT_PATCH_LEVEL_DOWNGRADE(52),
+        APP_VERSION_DOWNGRADE(53),
+        SECURITY_LEVEL_MISMATCH(54),
+        STRONGBOX_REQUIRED(55),
+        SIGNATURE_INVALID(56),
+        STORAGE_ERROR(57);
+
+        private static final Reason[] BY_CODE;
+
+        static {
+            int maxCode = 0;
+            for (final Reason reason : values()) {
+                maxCode = Math.max(maxCode, reason.code);
+            }
+            BY_CODE = new Reason[maxCode + 1];
+            for (final Reason reason : values()) {
+                if (BY_CODE[reason.code] != null) {
+                    throw new AssertionError("duplicate reason code " + reason.code);
+                }
+                BY_CODE[reason.code] = reason;
+            }
+        }
+
+        private final int code;
+
+        Reason(final int code) {
+            this.code = code;
+        }
+
+        /**
+         * Returns the stable code of the reason, starting from 1.
+         */
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the reason with the code or null if there is none.
+         */
+        public static Reason fromCode(final int code) {
+            return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+    }
+
+    private final Reason reason;
+
+    public VerificationException(final Reason reason, final String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public VerificationException(final Reason reason, final String message, final Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
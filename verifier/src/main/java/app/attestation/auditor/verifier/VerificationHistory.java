@@ -0,0 +1,650 @@
+package app.attestation.auditor.verifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import app.attestation.auditor.verifier.VerificationException.Reason;
+
+import static app.attestation.auditor.verifier.AttestationVerifier.FINGERPRINT_LENGTH;
+
+/**
+ * Append-only log of the verifications of each Auditee, for auditing a fleet over time.
+ *
+ * <p>Events are appended to the newest of a series of segment files in a directory, and a new
+ * segment is started once it reaches the configured size, so existing data is never rewritten.
+ * Within a segment, an Auditee is identified by its fingerprint on its first event and by a local
+ * id after that, and an event only stores the fields that changed since the previous event of the
+ * same Auditee in the segment, as variable length deltas. A typical event takes a handful of
+ * bytes, and each segment can be decoded on its own.
+ *
+ * <p>A sparse index held in memory and built by scanning the segments on open has a checkpoint
+ * with the decoding state of an Auditee at its first event in each segment and at every
+ * {@code CHECKPOINT_INTERVAL}th event after that. A range query starts from the last checkpoint
+ * before the range and only reads the segments with events of the Auditee, which assumes the
+ * events of an Auditee are appended in time order.
+ *
+ * <p>Events are not forced to storage individually, only when a segment is completed and by
+ * {@link #flush}. A torn event at the end of the last segment is discarded on open. Instances are
+ * thread-safe. Format:
+ *
+ * <pre>
+ * segment {
+ * int magic = MAGIC (big endian)
+ * short version = FORMAT_VERSION (big endian)
+ * Event[] events
+ * }
+ *
+ * event {
+ * varint length (of the rest of the event)
+ * varint header (bits of the changed fields shifted left by one, lowest bit set for a new Auditee)
+ * byte[] fingerprint (for a new Auditee, which gets the next local id, length: FINGERPRINT_LENGTH)
+ * varint localId (for a known Auditee)
+ * zigzag varint time (delta from the previous event of the Auditee in the segment, or from 0)
+ * zigzag varint[] fields (delta of each changed field in the order of the FIELD_ constants)
+ * }
+ * </pre>
+ *
+ * A varint has 7 bits per byte, least significant first, with the high bit set on all but the
+ * last byte.
+ */
+public class VerificationHistory implements Closeable {
+    private static final Logger logger = Logger.getLogger("VerificationHistory");
+
+    static final int MAGIC = 0x4155484c; // "AUHL"
+    public static final short FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    public static final long DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int CHECKPOINT_INTERVAL = 32;
+
+    private static final int FIELD_OS_VERSION = 0;
+    private static final int FIELD_OS_PATCH_LEVEL = 1;
+    private static final int FIELD_VENDOR_PATCH_LEVEL = 2;
+    private static final int FIELD_BOOT_PATCH_LEVEL = 3;
+    private static final int FIELD_APP_VERSION = 4;
+    private static final int FIELD_APP_VARIANT = 5;
+    private static final int FIELD_OS_ENFORCED_FLAGS = 6;
+    // 0 for a successful verification, otherwise the code of the reason
+    private static final int FIELD_REJECTION = 7;
+    private static final int FIELD_COUNT = 8;
+
+    private static final int MAX_INT_VARINT_LENGTH = 5;
+    private static final int MAX_LONG_VARINT_LENGTH = 10;
+    private static final int MAX_BODY_LENGTH = MAX_INT_VARINT_LENGTH + FINGERPRINT_LENGTH +
+            MAX_LONG_VARINT_LENGTH + FIELD_COUNT * MAX_INT_VARINT_LENGTH;
+    private static final int MAX_EVENT_LENGTH = MAX_INT_VARINT_LENGTH + MAX_BODY_LENGTH;
+    private static final int READ_BUFFER_LENGTH = 64 * 1024;
+
+
+    // decoding state of an Auditee before one of its events
+    private static final class Checkpoint {
+        final int segment;
+        final long offset;
+        final int localId;
+        // time of the event at the offset
+        final long eventTime;
+        // time and fields of the previous event of the Auditee in the segment
+        final long time;
+        final int[] fields;
+
+        Checkpoint(final int segment, final long offset, final int localId,
+                final long eventTime, final long time, final int[] fields) {
+            this.segment = segment;
+            this.offset = offset;
+            this.localId = localId;
+            this.eventTime = eventTime;
+            this.time = time;
+            this.fields = fields;
+        }
+    }
+
+    private static final class Device {
+        final byte[] fingerprint;
+        final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+        // state after the last event, valid in its segment
+        int segment = -1;
+        int localId;
+        int events;
+        long time;
+        final int[] fields = new int[FIELD_COUNT];
+
+        Device(final byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final Map<ByteBuffer, Device> devices = new HashMap<>();
+    // Auditees with events in the current segment by local id
+    private final ArrayList<Device> segmentDevices = new ArrayList<>();
+    // encoding buffers for append
+    private final byte[] bodyBuffer = new byte[MAX_BODY_LENGTH];
+    private final byte[] eventBuffer = new byte[MAX_EVENT_LENGTH];
+    private int segment;
+    private StorageFile file;
+    private long end;
+
+    public VerificationHistory(final Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param directory directory for the segment files, created if needed
+     * @param segmentBytes size after which a new segment is started
+     */
+    public VerificationHistory(final Path directory, final long segmentBytes)
+            throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        final List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (final Path path : paths) {
+                final String name = path.getFileName().toString();
+                try {
+                    segments.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (final NumberFormatException e) {
+                    logger.warning("ignoring unexpected history file " + name);
+                }
+            }
+        }
+        Collections.sort(segments);
+        if (segments.isEmpty()) {
+            createSegment(0);
+            return;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            segment = segments.get(i);
+            segmentDevices.clear();
+            final boolean last = i == segments.size() - 1;
+            final StorageFile segmentFile = StorageFile.open(segmentPath(segment));
+            try {
+                if (last && segmentFile.size() < SEGMENT_HEADER_LENGTH) {
+                    // created by a rotation or clear that crashed before its header was durable
+                    logger.warning("rewriting incomplete history segment " + segment);
+                    segmentFile.truncate(0);
+                    writeSegmentHeader(segmentFile);
+                    file = segmentFile;
+                    end = SEGMENT_HEADER_LENGTH;
+                    continue;
+                }
+                final long position = scan(segmentFile);
+                if (last) {
+                    if (position != segmentFile.size()) {
+                        logger.warning("discarding torn history event at " + position);
+                        segmentFile.truncate(position);
+                        segmentFile.force();
+                    }
+                    file = segmentFile;
+                    end = position;
+                } else {
+                    if (position != segmentFile.size()) {
+                        logger.warning("ignoring corrupt history after " + position + " in segment " + segment);
+                    }
+                    segmentFile.close();
+                }
+            } catch (final IOException | RuntimeException e) {
+                segmentFile.close();
+                throw e;
+            }
+        }
+    }
+
+    private Path segmentPath(final int segment) {
+        return directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private void createSegment(final int number) throws IOException {
+        final StorageFile segmentFile = StorageFile.create(segmentPath(number));
+        try {
+            writeSegmentHeader(segmentFile);
+        } catch (final IOException | RuntimeException e) {
+            segmentFile.close();
+            throw e;
+        }
+        file = segmentFile;
+        segment = number;
+        segmentDevices.clear();
+        end = SEGMENT_HEADER_LENGTH;
+    }
+
+    // Forced so that a crash can only leave the last segment shorter than its header
+    private static void writeSegmentHeader(final StorageFile segmentFile) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+        header.putInt(MAGIC);
+        header.putShort(FORMAT_VERSION);
+        header.flip();
+        write(segmentFile, header, 0);
+        segmentFile.force();
+    }
+
+    // Indexes the events of the segment, returning the end of the last complete one
+    private long scan(final StorageFile segmentFile) throws IOException {
+        final Reader reader = new Reader(segmentFile, 0, segmentFile.size());
+        final ByteBuffer header = reader.next(SEGMENT_HEADER_LENGTH);
+        if (header == null || header.getInt() != MAGIC) {
+            throw new IOException("not a verification history segment");
+        }
+        final short version = header.getShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unsupported verification history version: " + version);
+        }
+        final int[] fields = new int[FIELD_COUNT];
+        while (true) {
+            final long offset = reader.position();
+            final ByteBuffer event = reader.nextEvent();
+            if (event == null) {
+                return offset;
+            }
+            try {
+                final int eventHeader = getVarint(event);
+                final Device device;
+                final long time;
+                if ((eventHeader & 1) != 0) {
+                    final byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+                    event.get(fingerprint);
+                    device = getDevice(fingerprint);
+                    if (device.segment == segment) {
+                        return offset;
+                    }
+                    Arrays.fill(fields, 0);
+                    time = decode(event, eventHeader, 0, fields);
+                } else {
+                    final int localId = getVarint(event);
+                    if (localId < 0 || localId >= segmentDevices.size()) {
+                        return offset;
+                    }
+                    device = segmentDevices.get(localId);
+                    System.arraycopy(device.fields, 0, fields, 0, FIELD_COUNT);
+                    time = decode(event, eventHeader, device.time, fields);
+                }
+                advance(device, offset, time, fields);
+            } catch (final BufferUnderflowException | IOException e) {
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * Appends an event for the Auditee with the given persistent key fingerprint.
+     */
+    public synchronized void append(final byte[] fingerprint, final VerificationEvent verificationEvent)
+            throws IOException {
+        if (fingerprint.length != FINGERPRINT_LENGTH) {
+            throw new IOException("invalid fingerprint length");
+        }
+        if (end >= segmentBytes) {
+            file.force();
+            file.close();
+            createSegment(segment + 1);
+        }
+        final Device device = getDevice(fingerprint);
+        final boolean isNew = device.segment != segment;
+        final int[] fields = getFields(verificationEvent);
+
+        int mask = 0;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if (fields[i] != (isNew ? 0 : device.fields[i])) {
+                mask |= 1 << i;
+            }
+        }
+        int length = putVarint(bodyBuffer, 0, (mask << 1) | (isNew ? 1 : 0));
+        if (isNew) {
+            System.arraycopy(fingerprint, 0, bodyBuffer, length, FINGERPRINT_LENGTH);
+            length += FINGERPRINT_LENGTH;
+        } else {
+            length = putVarint(bodyBuffer, length, device.localId);
+        }
+        length = putVarint(bodyBuffer, length, zigzag(verificationEvent.time - (isNew ? 0 : device.time)));
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if ((mask & (1 << i)) != 0) {
+                length = putVarint(bodyBuffer, length,
+                        zigzag(fields[i] - (isNew ? 0 : device.fields[i])) & 0xffffffffL);
+            }
+        }
+        final int headerLength = putVarint(eventBuffer, 0, length);
+        System.arraycopy(bodyBuffer, 0, eventBuffer, headerLength, length);
+
+        final long offset = end;
+        write(file, ByteBuffer.wrap(eventBuffer, 0, headerLength + length), offset);
+        end = offset + headerLength + length;
+        advance(device, offset, verificationEvent.time, fields);
+    }
+
+    private Device getDevice(final byte[] fingerprint) {
+        final ByteBuffer key = ByteBuffer.wrap(fingerprint);
+        Device device = devices.get(key);
+        if (device == null) {
+            device = new Device(fingerprint.clone());
+            devices.put(ByteBuffer.wrap(device.fingerprint), device);
+        }
+        return device;
+    }
+
+    // Updates the state and index of the Auditee with its event at the offset in the current
+    // segment
+    private void advance(final Device device, final long offset, final long time,
+            final int[] fields) {
+        if (device.segment != segment) {
+            device.segment = segment;
+            device.localId = segmentDevices.size();
+            segmentDevices.add(device);
+            device.events = 0;
+            device.time = 0;
+            Arrays.fill(device.fields, 0);
+        }
+        if (device.events++ % CHECKPOINT_INTERVAL == 0) {
+            device.checkpoints.add(new Checkpoint(segment, offset, device.localId, time,
+                    device.time, device.fields.clone()));
+        }
+        device.time = time;
+        System.arraycopy(fields, 0, device.fields, 0, FIELD_COUNT);
+    }
+
+    /**
+     * Returns the events of an Auditee from {@code from} inclusive to {@code to} exclusive, in
+     * milliseconds since the epoch, in the order they were appended.
+     */
+    public synchronized List<VerificationEvent> getEvents(final byte[] fingerprint,
+            final long from, final long to) throws IOException {
+        final List<VerificationEvent> events = new ArrayList<>();
+        final Device device = devices.get(ByteBuffer.wrap(fingerprint));
+        if (device == null || from >= to) {
+            return events;
+        }
+        final List<Checkpoint> checkpoints = device.checkpoints;
+        // last checkpoint at or before the start of the range
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (checkpoints.get(middle).eventTime <= from) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int i = low;
+        while (i < checkpoints.size()) {
+            final Checkpoint checkpoint = checkpoints.get(i);
+            if (checkpoint.eventTime >= to || !scan(device, checkpoint, from, to, events)) {
+                break;
+            }
+            // continue from the first checkpoint in the next segment with events of the Auditee
+            do {
+                i++;
+            } while (i < checkpoints.size() && checkpoints.get(i).segment == checkpoint.segment);
+        }
+        return events;
+    }
+
+    // Collects the events of the Auditee in the range from the checkpoint to the end of its
+    // segment, returning false if the end of the range was reached
+    private boolean scan(final Device device, final Checkpoint checkpoint, final long from,
+            final long to, final List<VerificationEvent> events) throws IOException {
+        final boolean current = checkpoint.segment == segment;
+        final StorageFile segmentFile = current ? file
+                : StorageFile.openReadOnly(segmentPath(checkpoint.segment));
+        try {
+            final Reader reader = new Reader(segmentFile, checkpoint.offset,
+                    current ? end : segmentFile.size());
+            long time = checkpoint.time;
+            final int[] fields = checkpoint.fields.clone();
+            ByteBuffer event;
+            while ((event = reader.nextEvent()) != null) {
+                final int eventHeader = getVarint(event);
+                if ((eventHeader & 1) != 0) {
+                    final byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+                    event.get(fingerprint);
+                    // only the first event of the Auditee in the segment has its fingerprint
+                    if (!Arrays.equals(fingerprint, device.fingerprint)) {
+                        continue;
+                    }
+                } else if (getVarint(event) != checkpoint.localId) {
+                    continue;
+                }
+                time = decode(event, eventHeader, time, fields);
+                if (time >= to) {
+                    return false;
+                }
+                if (time >= from) {
+                    events.add(getEvent(time, fields));
+                }
+            }
+            return true;
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("corrupt verification history", e);
+        } finally {
+            if (!current) {
+                segmentFile.close();
+            }
+        }
+    }
+
+    // Applies the time and field deltas of the rest of the event, returning the time
+    private static long decode(final ByteBuffer event, final int eventHeader, final long time,
+            final int[] fields) throws IOException {
+        final int mask = eventHeader >>> 1;
+        if ((mask >>> FIELD_COUNT) != 0) {
+            throw new IOException("invalid verification history event");
+        }
+        final long decodedTime = time + unzigzag(getVarlong(event));
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if ((mask & (1 << i)) != 0) {
+                fields[i] += unzigzag(getVarint(event));
+            }
+        }
+        if (event.hasRemaining()) {
+            throw new IOException("invalid verification history event");
+        }
+        return decodedTime;
+    }
+
+    private static int[] getFields(final VerificationEvent event) {
+        final int[] fields = new int[FIELD_COUNT];
+        fields[FIELD_OS_VERSION] = event.osVersion;
+        fields[FIELD_OS_PATCH_LEVEL] = event.osPatchLevel;
+        fields[FIELD_VENDOR_PATCH_LEVEL] = event.vendorPatchLevel;
+        fields[FIELD_BOOT_PATCH_LEVEL] = event.bootPatchLevel;
+        fields[FIELD_APP_VERSION] = event.appVersion;
+        fields[FIELD_APP_VARIANT] = event.appVariant;
+        fields[FIELD_OS_ENFORCED_FLAGS] = event.osEnforcedFlags;
+        fields[FIELD_REJECTION] = event.rejection == null ? 0 : event.rejection.getCode();
+        return fields;
+    }
+
+    private static VerificationEvent getEvent(final long time, final int[] fields)
+            throws IOException {
+        final int rejection = fields[FIELD_REJECTION];
+        final Reason reason = Reason.fromCode(rejection);
+        if (rejection != 0 && reason == null) {
+            throw new IOException("unknown rejection reason in verification history");
+        }
+        return new VerificationEvent(time, fields[FIELD_OS_VERSION],
+                fields[FIELD_OS_PATCH_LEVEL], fields[FIELD_VENDOR_PATCH_LEVEL],
+                fields[FIELD_BOOT_PATCH_LEVEL], fields[FIELD_APP_VERSION],
+                fields[FIELD_APP_VARIANT], fields[FIELD_OS_ENFORCED_FLAGS],
+                reason);
+    }
+
+    /**
+     * Returns the number of Auditees with events.
+     */
+    public synchronized int size() {
+        return devices.size();
+    }
+
+    /**
+     * Forces the appended events to storage.
+     */
+    public synchronized void flush() throws IOException {
+        file.force();
+    }
+
+    /**
+     * Removes all events.
+     */
+    public synchronized void clear() throws IOException {
+        file.close();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (final Path path : paths) {
+                Files.delete(path);
+            }
+        }
+        devices.clear();
+        createSegment(0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.force();
+        file.close();
+    }
+
+    // Sequential reader over a range of a segment, refilling a buffer as needed
+    private static final class Reader {
+        private final StorageFile file;
+        private final long limit;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_LENGTH);
+        // file position of the start of the buffer
+        private long bufferPosition;
+
+        Reader(final StorageFile file, final long position, final long limit) {
+            this.file = file;
+            this.limit = limit;
+            bufferPosition = position;
+            buffer.limit(0);
+        }
+
+        long position() {
+            return bufferPosition + buffer.position();
+        }
+
+        // Returns a buffer with the next bytes or null if the range ends before them
+        ByteBuffer next(final int length) throws IOException {
+            if (!fill(length)) {
+                return null;
+            }
+            final ByteBuffer slice = buffer.slice();
+            slice.limit(length);
+            buffer.position(buffer.position() + length);
+            return slice;
+        }
+
+        // Returns the body of the next event or null at the end of the range or on a torn event
+        ByteBuffer nextEvent() throws IOException {
+            if (!fill((int) Math.min(MAX_EVENT_LENGTH, limit - position()))) {
+                return null;
+            }
+            final int start = buffer.position();
+            final int length;
+            try {
+                length = getVarint(buffer);
+            } catch (final BufferUnderflowException | IOException e) {
+                buffer.position(start);
+                return null;
+            }
+            if (length <= 0 || length > MAX_BODY_LENGTH || length > buffer.remaining()) {
+                buffer.position(start);
+                return null;
+            }
+            return next(length);
+        }
+
+        private boolean fill(final int length) throws IOException {
+            if (length <= 0) {
+                return false;
+            }
+            if (buffer.remaining() >= length) {
+                return true;
+            }
+            bufferPosition += buffer.position();
+            buffer.compact();
+            while (buffer.position() < buffer.capacity() &&
+                    bufferPosition + buffer.position() < limit) {
+                final int maximum = (int) Math.min(buffer.remaining(),
+                        limit - bufferPosition - buffer.position());
+                final ByteBuffer target = buffer.duplicate();
+                target.limit(target.position() + maximum);
+                final int read = file.read(target, bufferPosition + buffer.position());
+                if (read < 0) {
+                    break;
+                }
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+            return buffer.remaining() >= length;
+        }
+    }
+
+    private static int putVarint(final byte[] output, int offset, long value) {
+        while ((value & ~0x7fL) != 0) {
+            output[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int getVarint(final ByteBuffer input) throws IOException {
+        final long value = getVarlong(input);
+        if ((value >>> 32) != 0) {
+            throw new IOException("invalid varint in verification history");
+        }
+        return (int) value;
+    }
+
+    private static long getVarlong(final ByteBuffer input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = input.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid varint in verification history");
+    }
+
+    private static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void write(final StorageFile file, final ByteBuffer buffer,
+            final long position) throws IOException {
+        final long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            file.write(buffer, start + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package app.attestation.auditor.verifier;
+
+/**
+ * Instrumentation hooks for the stages of a verification.
+ *
+ * <p>Implementations are called from every thread doing verification and need to be thread-safe
+ * and cheap. {@link VerificationStatistics} keeps counters and latency histograms in memory.
+ */
+public interface VerificationMetrics {
+    enum Stage {
+        // reading the message framing, OS enforced flags and signature
+        DESERIALIZE,
+        // inflating the compressed certificate chain
+        INFLATE,
+        // decoding the X.509 certificates of the chain
+        CERTIFICATE_PARSE,
+        // certificate signatures, validity and the trust anchor lookup
+        CHAIN_SIGNATURES,
+        // parsing the attestation extension and checking the challenge and Auditor app
+        ATTESTATION_PARSE,
+        // verified boot key lookup in the device tables and the checks depending on the device,
+        // including the attest key attestation
+        DEVICE_LOOKUP,
+        // comparison of the chain and verified properties with the pinned ones
+        PIN_COMPARISON,
+        // signature of the message by the Auditee key
+        OUTER_SIGNATURE,
+        // loading and storing pairing data
+        PERSISTENCE,
+    }
+
+    VerificationMetrics NONE = new VerificationMetrics() {
+        @Override
+        public void recordStage(final Stage stage, final long nanos) {}
+
+        @Override
+        public void recordVerified(final long nanos) {}
+
+        @Override
+        public void recordRejected(final Stage stage, final VerificationException.Reason reason,
+                final long nanos) {}
+    };
+
+    /**
+     * Records the time spent in a stage by one verification that got past it.
+     */
+    void recordStage(Stage stage, long nanos);
+
+    /**
+     * Records a successful verification with its total time.
+     */
+    void recordVerified(long nanos);
+
+    /**
+     * Records a rejected verification with the stage it failed in and its total time.
+     */
+    void recordRejected(Stage stage, VerificationException.Reason reason, long nanos);
+}
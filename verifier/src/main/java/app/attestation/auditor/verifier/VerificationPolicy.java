@@ -0,0 +1,25 @@
+package app.attestation.auditor.verifier;
+
+/**
+ * Minimum versions and patch levels accepted for an Auditee.
+ */
+public class VerificationPolicy {
+    public static final VerificationPolicy DEFAULT =
+            new VerificationPolicy(47, 80000, 201801, 201808, 201809);
+
+    public final int auditorAppMinimumVersion;
+    public final int osVersionMinimum;
+    public final int osPatchLevelMinimum;
+    public final int vendorPatchLevelMinimum;
+    public final int bootPatchLevelMinimum;
+
+    public VerificationPolicy(final int auditorAppMinimumVersion, final int osVersionMinimum,
+            final int osPatchLevelMinimum, final int vendorPatchLevelMinimum,
+            final int bootPatchLevelMinimum) {
+        this.auditorAppMinimumVersion = auditorAppMinimumVersion;
+        this.osVersionMinimum = osVersionMinimum;
+        this.osPatchLevelMinimum = osPatchLevelMinimum;
+        this.vendorPatchLevelMinimum = vendorPatchLevelMinimum;
+        this.bootPatchLevelMinimum = bootPatchLevelMinimum;
+    }
+}
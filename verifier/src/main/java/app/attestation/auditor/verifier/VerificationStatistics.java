@@ -0,0 +1,123 @@
+package app.attestation.auditor.verifier;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import app.attestation.auditor.verifier.VerificationException.Reason;
+
+/**
+ * In-memory {@link VerificationMetrics} with outcome counters and latency histograms.
+ */
+public class VerificationStatistics implements VerificationMetrics {
+    private static final Stage[] STAGES = Stage.values();
+    private static final Reason[] REASONS = Reason.values();
+
+    /**
+     * Latency histogram with power of two buckets in nanoseconds.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = Long.SIZE;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        void record(final long nanos) {
+            final long value = Math.max(nanos, 1);
+            buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            sum.add(value);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMeanNanos() {
+            final long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        /**
+         * Returns an upper bound for the given quantile, which is within a factor of 2.
+         */
+        public long getPercentileNanos(final double quantile) {
+            final long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            final long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen != 0) {
+                    return (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final Histogram[] stageLatency = new Histogram[STAGES.length];
+    private final LongAdder[] stageRejections = new LongAdder[STAGES.length];
+    private final LongAdder[] reasonRejections = new LongAdder[REASONS.length];
+    private final Histogram verifiedLatency = new Histogram();
+    private final Histogram rejectedLatency = new Histogram();
+
+    public VerificationStatistics() {
+        for (int i = 0; i < STAGES.length; i++) {
+            stageLatency[i] = new Histogram();
+            stageRejections[i] = new LongAdder();
+        }
+        for (int i = 0; i < REASONS.length; i++) {
+            reasonRejections[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void recordStage(final Stage stage, final long nanos) {
+        stageLatency[stage.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordVerified(final long nanos) {
+        verifiedLatency.record(nanos);
+    }
+
+    @Override
+    public void recordRejected(final Stage stage, final Reason reason, final long nanos) {
+        stageRejections[stage.ordinal()].increment();
+        reasonRejections[reason.ordinal()].increment();
+        rejectedLatency.record(nanos);
+    }
+
+    public Histogram getStageLatency(final Stage stage) {
+        return stageLatency[stage.ordinal()];
+    }
+
+    public Histogram getVerifiedLatency() {
+        return verifiedLatency;
+    }
+
+    public Histogram getRejectedLatency() {
+        return rejectedLatency;
+    }
+
+    public long getVerified() {
+        return verifiedLatency.getCount();
+    }
+
+    public long getRejected() {
+        return rejectedLatency.getCount();
+    }
+
+    public long getRejected(final Stage stage) {
+        return stageRejections[stage.ordinal()].sum();
+    }
+
+    public long getRejected(final Reason reason) {
+        return reasonRejections[reason.ordinal()].sum();
+    }
+}
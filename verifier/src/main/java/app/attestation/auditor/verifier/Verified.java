@@ -0,0 +1,42 @@
+package app.attestation.auditor.verifier;
+
+/**
+ * Hardware-verified information obtained from a valid attestation certificate chain.
+ */
+public class Verified {
+    public final String device;
+    public final String verifiedBootKey;
+    public final byte[] verifiedBootHash;
+    public final String osName;
+    public final int osVersion;
+    public final int osPatchLevel;
+    public final int vendorPatchLevel;
+    public final int bootPatchLevel;
+    public final int appVersion;
+    public final byte appVariant;
+    public final int securityLevel;
+    public final boolean attestKey;
+    public final boolean perUserEncryption;
+    public final boolean enforceStrongBox;
+
+    Verified(final String device, final String verifiedBootKey, final byte[] verifiedBootHash,
+            final String osName, final int osVersion, final int osPatchLevel,
+            final int vendorPatchLevel, final int bootPatchLevel, final int appVersion, final byte appVariant,
+            final int securityLevel, final boolean attestKey, final boolean perUserEncryption,
+            final boolean enforceStrongBox) {
+        this.device = device;
+        this.verifiedBootKey = verifiedBootKey;
+        this.verifiedBootHash = verifiedBootHash;
+        this.osName = osName;
+        this.osVersion = osVersion;
+        this.osPatchLevel = osPatchLevel;
+        this.vendorPatchLevel = vendorPatchLevel;
+        this.bootPatchLevel = bootPatchLevel;
+        this.appVersion = appVersion;
+        this.appVariant = appVariant;
+        this.securityLevel = securityLevel;
+        this.attestKey = attestKey;
+        this.perUserEncryption = perUserEncryption;
+        this.enforceStrongBox = enforceStrongBox;
+    }
+}
@@ -0,0 +1,442 @@
+package app.attestation.auditor.verifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log with group commit for the writes to the file of {@link FilePairingStore}.
+ *
+ * <p>Writes are queued in memory and made durable together. The first thread waiting for its
+ * write becomes the leader of a commit: after a window for more writes to join, it appends every
+ * queued write to the log as one batch and forces the log once. Then it applies the batch to the
+ * target file without forcing it. Writes queued during a commit go into the next one, so batches
+ * grow with the load, and the latency of a write is bounded by the window plus two forces. The
+ * leader stops waiting once as many writes are queued as the previous batch had, so a lone writer
+ * does not wait at all and a steady set of writers does not wait for the whole window.
+ *
+ * <p>The target file only receives committed writes. Reads of the target go through
+ * {@link #read}, so they see queued writes before those are applied. Once the log passes
+ * CHECKPOINT_BYTES, the target is forced and the log is truncated. On open, the batches in the
+ * log are replayed onto the target up to the first torn one. Instances are thread-safe. Format,
+ * big endian:
+ *
+ * <pre>
+ * file {
+ * int magic = MAGIC
+ * short version = FORMAT_VERSION
+ * Batch[] batches
+ * }
+ *
+ * batch {
+ * int length (of the writes)
+ * int checksum (CRC32 of the writes)
+ * { long offset (in the target file), int length, byte[] data } (until length)
+ * }
+ * </pre>
+ */
+final class WriteAheadLog implements Closeable {
+    private static final Logger logger = Logger.getLogger("WriteAheadLog");
+
+    static final int MAGIC = 0x4155574c; // "AUWL"
+    static final short FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+    private static final int BATCH_HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int WRITE_HEADER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private static final long CHECKPOINT_BYTES = 1024 * 1024;
+    // a leader stops waiting for more writes once a batch reaches this size
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private static final class Write {
+        final long offset;
+        final byte[] data;
+
+        Write(final long offset, final byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    private final StorageFile target;
+    private final StorageFile log;
+    private final long windowNanos;
+    // queued writes not applied to the target yet, oldest first
+    private final ArrayDeque<Write> pending = new ArrayDeque<>();
+    // size in the log of the queued writes not taken by a commit yet
+    private int pendingBytes;
+    // sequence numbers of the last queued and last durable write
+    private long sequence;
+    private long durable;
+    private boolean committing;
+    // writes in the last batch, the leader waits for as many to join the next one
+    private int lastBatchWrites;
+    private IOException failure;
+    // only used by the leader
+    private long logEnd;
+
+    /**
+     * @param target file receiving the writes
+     * @param path file for the log
+     * @param windowNanos longest time the leader of a commit waits for more writes to join it
+     */
+    WriteAheadLog(final StorageFile target, final Path path, final long windowNanos)
+            throws IOException {
+        this.target = target;
+        this.windowNanos = windowNanos;
+        log = StorageFile.open(path);
+        try {
+            recover();
+        } catch (final IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        final long size = log.size();
+        if (size != 0) {
+            final ByteBuffer fileHeader = read(log, 0, FILE_HEADER_LENGTH);
+            if (fileHeader.getInt() != MAGIC) {
+                throw new IOException("not a write-ahead log");
+            }
+            final short version = fileHeader.getShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported write-ahead log version: " + version);
+            }
+            long position = FILE_HEADER_LENGTH;
+            int batches = 0;
+            while (size - position >= BATCH_HEADER_LENGTH) {
+                final ByteBuffer header = read(log, position, BATCH_HEADER_LENGTH);
+                final int length = header.getInt();
+                if (length < 0 || length > size - position - BATCH_HEADER_LENGTH) {
+                    break;
+                }
+                final ByteBuffer batch = read(log, position + BATCH_HEADER_LENGTH, length);
+                if (header.getInt() != checksum(batch.array(), 0, length)) {
+                    break;
+                }
+                while (batch.hasRemaining()) {
+                    final long offset = batch.getLong();
+                    final int dataLength = batch.getInt();
+                    if (offset < 0 || dataLength < 0 || dataLength > batch.remaining()) {
+                        throw new IOException("corrupt write-ahead log batch");
+                    }
+                    final ByteBuffer data = batch.slice();
+                    data.limit(dataLength);
+                    write(target, data, offset);
+                    batch.position(batch.position() + dataLength);
+                }
+                batches++;
+                position += BATCH_HEADER_LENGTH + length;
+            }
+            if (position != size) {
+                logger.warning("discarding torn write-ahead log batch at " + position);
+            }
+            if (batches != 0) {
+                logger.info("replayed " + batches + " write-ahead log batches");
+                target.force();
+            }
+        }
+        truncate();
+    }
+
+    // Empties the log once everything in it has been applied to the target
+    private void truncate() throws IOException {
+        log.truncate(0);
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        fileHeader.putInt(MAGIC);
+        fileHeader.putShort(FORMAT_VERSION);
+        fileHeader.flip();
+        write(log, fileHeader, 0);
+        log.force();
+        logEnd = FILE_HEADER_LENGTH;
+    }
+
+    /**
+     * Queues a write of the data at the offset of the target, which must not be modified
+     * afterwards.
+     *
+     * @return sequence number to wait for with {@link #await}
+     */
+    synchronized long write(final long offset, final byte[] data) throws IOException {
+        checkUsable();
+        queue(offset, data);
+        return ++sequence;
+    }
+
+    /**
+     * Queues two writes that always end up in the same batch, so a crash leaves either both or
+     * neither of them durable.
+     *
+     * @return sequence number to wait for with {@link #await}
+     */
+    synchronized long write(final long offset, final byte[] data, final long secondOffset,
+            final byte[] secondData) throws IOException {
+        checkUsable();
+        queue(offset, data);
+        queue(secondOffset, secondData);
+        sequence += 2;
+        return sequence;
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("pairing store is unusable after a failed write", failure);
+        }
+    }
+
+    private void queue(final long offset, final byte[] data) {
+        pending.add(new Write(offset, data));
+        pendingBytes += WRITE_HEADER_LENGTH + data.length;
+        if (pendingBytes >= MAX_BATCH_BYTES || pending.size() >= lastBatchWrites) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reads a range of the target including the queued writes.
+     */
+    synchronized ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        long end = target.size();
+        final int fileLength = (int) Math.max(0, Math.min(length, end - position));
+        buffer.limit(fileLength);
+        while (buffer.hasRemaining()) {
+            if (target.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        for (final Write write : pending) {
+            final long start = Math.max(position, write.offset);
+            final long stop = Math.min(position + length, write.offset + write.data.length);
+            if (start < stop) {
+                System.arraycopy(write.data, (int) (start - write.offset), buffer.array(),
+                        (int) (start - position), (int) (stop - start));
+            }
+            end = Math.max(end, write.offset + write.data.length);
+        }
+        if (position + length > end) {
+            throw new IOException("unexpected end of pairing store");
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns once the write with the sequence number and all writes before it are durable,
+     * leading a commit if none is in progress.
+     */
+    void await(final long sequence) throws IOException {
+        while (true) {
+            final Write[] batch;
+            final long batchSequence;
+            synchronized (this) {
+                while (true) {
+                    if (durable >= sequence) {
+                        return;
+                    }
+                    if (failure != null) {
+                        throw new IOException("pairing store write failed", failure);
+                    }
+                    if (!committing) {
+                        break;
+                    }
+                    // the write may become durable before the next commit starts, so check again
+                    // after every wake up rather than waiting for no commit to be in progress
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted waiting for pairing store commit");
+                    }
+                }
+                committing = true;
+                final long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while (pendingBytes < MAX_BATCH_BYTES && pending.size() < lastBatchWrites &&
+                        (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (final InterruptedException e) {
+                        // commit what is there, the writes are already queued
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                batch = pending.toArray(new Write[0]);
+                batchSequence = this.sequence;
+                lastBatchWrites = batch.length;
+                pendingBytes = 0;
+            }
+            commit(batch, batchSequence);
+        }
+    }
+
+    private void commit(final Write[] batch, final long batchSequence) throws IOException {
+        IOException error = null;
+        try {
+            int length = 0;
+            for (final Write write : batch) {
+                length += WRITE_HEADER_LENGTH + write.data.length;
+            }
+            final ByteBuffer encoded = ByteBuffer.allocate(BATCH_HEADER_LENGTH + length);
+            encoded.putInt(length);
+            encoded.putInt(0);
+            for (final Write write : batch) {
+                encoded.putLong(write.offset);
+                encoded.putInt(write.data.length);
+                encoded.put(write.data);
+            }
+            encoded.putInt(Integer.BYTES, checksum(encoded.array(), BATCH_HEADER_LENGTH, length));
+            encoded.flip();
+            write(log, encoded, logEnd);
+            log.force();
+            logEnd += encoded.limit();
+        } catch (final IOException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            if (error == null) {
+                try {
+                    for (final Write write : batch) {
+                        write(target, ByteBuffer.wrap(write.data), write.offset);
+                        pending.removeFirst();
+                    }
+                } catch (final IOException e) {
+                    // the batch is durable in the log and is replayed on the next open
+                    error = e;
+                }
+            }
+            if (error != null) {
+                failure = error;
+                committing = false;
+                notifyAll();
+                throw error;
+            }
+            durable = batchSequence;
+            notifyAll();
+        }
+
+        // still leading, so the log is not written while it is truncated
+        try {
+            if (logEnd >= CHECKPOINT_BYTES) {
+                target.force();
+                truncate();
+            }
+        } catch (final IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                committing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns once all queued writes are durable.
+     */
+    void flush() throws IOException {
+        final long last;
+        synchronized (this) {
+            last = sequence;
+        }
+        await(last);
+    }
+
+    /**
+     * Drops the queued writes and closes the empty log, for a target that is being replaced.
+     * Threads waiting for the dropped writes return as if they were durable. The committed writes
+     * are forced to the target first, since a crash before its replacement is durable brings it
+     * back without the log.
+     */
+    void discard() throws IOException {
+        synchronized (this) {
+            awaitCommit();
+            committing = true;
+            pending.clear();
+            pendingBytes = 0;
+        }
+        try {
+            target.force();
+            truncate();
+        } finally {
+            try {
+                log.close();
+            } finally {
+                synchronized (this) {
+                    durable = sequence;
+                    committing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void awaitCommit() throws IOException {
+        while (committing) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for pairing store commit");
+            }
+        }
+    }
+
+    /**
+     * Commits the queued writes, forces the target and closes the empty log, so the next open has
+     * nothing to replay.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            synchronized (this) {
+                awaitCommit();
+                committing = true;
+            }
+            target.force();
+            truncate();
+        } finally {
+            log.close();
+        }
+    }
+
+    private static int checksum(final byte[] data, final int offset, final int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer read(final StorageFile file, final long position,
+            final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of write-ahead log");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write(final StorageFile file, final ByteBuffer buffer,
+            final long position) throws IOException {
+        final long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            file.write(buffer, start + buffer.position());
+        }
+    }
+}